@@ -0,0 +1,18 @@
+package com.training.ai.application.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TtsRequest {
+    private String text;
+    private String voice;
+    private String model;
+    private String format;
+    private Double speed;
+}
@@ -0,0 +1,46 @@
+package com.training.ai.application.job;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量转换的汇总进度
+ */
+@Data
+public class BatchStatus {
+
+    private String batchId;
+    /**
+     * PROCESSING 或 FINISHED
+     */
+    private String status;
+    /**
+     * 去重后实际执行的任务数
+     */
+    private int total;
+    private int completed;
+    private int failed;
+    /**
+     * 所有任务进度的平均值
+     */
+    private int percent;
+    private long createdAt;
+    private List<BatchItem> items = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BatchItem {
+        private String filename;
+        /**
+         * 内容相同的文件共享同一个任务
+         */
+        private String taskId;
+        private String status;
+        private int percent;
+    }
+}
@@ -0,0 +1,148 @@
+package com.training.ai.application.job;
+
+import com.training.ai.application.job.BatchStatus.BatchItem;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量转换状态存储：批次 hash 记录计数，items list 记录每个文件对应的任务
+ */
+@Component
+@RequiredArgsConstructor
+public class BatchStore {
+
+    private static final String KEY_PREFIX = "ppt-video:batch:";
+
+    /**
+     * 记录一个任务结束，所有任务都结束时把批次标记为 FINISHED 并返回 1（只会返回一次）
+     */
+    private static final RedisScript<Long> FINISH_TASK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end "
+                    + "redis.call('HINCRBY', KEYS[1], ARGV[1], 1) "
+                    + "local total = tonumber(redis.call('HGET', KEYS[1], 'total')) "
+                    + "local done = tonumber(redis.call('HGET', KEYS[1], 'completed') or '0') "
+                    + "+ tonumber(redis.call('HGET', KEYS[1], 'failed') or '0') "
+                    + "if done >= total and redis.call('HGET', KEYS[1], 'status') ~= 'FINISHED' then "
+                    + "redis.call('HSET', KEYS[1], 'status', 'FINISHED') return 1 end "
+                    + "return 0", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    @Value("${job.finished-ttl-hours:168}")
+    private long finishedTtlHours;
+
+    public void create(String batchId, String owner, List<BatchItem> items, int total) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("batchId", batchId);
+        fields.put("status", "PROCESSING");
+        fields.put("total", String.valueOf(total));
+        fields.put("completed", "0");
+        fields.put("failed", "0");
+        fields.put("createdAt", String.valueOf(System.currentTimeMillis()));
+        if (owner != null) {
+            fields.put("owner", owner);
+        }
+        redisTemplate.opsForHash().putAll(key(batchId), fields);
+
+        List<String> lines = new ArrayList<>();
+        for (BatchItem item : items) {
+            lines.add(item.getTaskId() + "|" + item.getFilename());
+        }
+        redisTemplate.opsForList().rightPushAll(itemsKey(batchId), lines);
+    }
+
+    /**
+     * 删除批次记录，用于撤销提交失败的批次
+     */
+    public void delete(String batchId) {
+        redisTemplate.delete(List.of(key(batchId), itemsKey(batchId)));
+    }
+
+    public String getOwner(String batchId) {
+        Object owner = redisTemplate.opsForHash().get(key(batchId), "owner");
+        return owner == null ? null : owner.toString();
+    }
+
+    /**
+     * 记录批次中一个任务结束
+     *
+     * @return 批次中所有任务都已结束时返回 true
+     */
+    public boolean recordTaskFinished(String batchId, boolean success) {
+        Long finished = redisTemplate.execute(FINISH_TASK_SCRIPT, List.of(key(batchId)), success ? "completed" : "failed");
+        if (finished != null && finished == 1) {
+            redisTemplate.expire(key(batchId), finishedTtlHours, TimeUnit.HOURS);
+            redisTemplate.expire(itemsKey(batchId), finishedTtlHours, TimeUnit.HOURS);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 读取批次汇总进度，各任务的状态与进度通过 pipeline 一次取回
+     */
+    public BatchStatus get(String batchId) {
+        Map<Object, Object> fields = redisTemplate.opsForHash().entries(key(batchId));
+        if (fields.isEmpty()) {
+            return null;
+        }
+        BatchStatus batch = new BatchStatus();
+        batch.setBatchId(batchId);
+        batch.setStatus((String) fields.get("status"));
+        batch.setTotal(Integer.parseInt((String) fields.get("total")));
+        batch.setCompleted(Integer.parseInt((String) fields.getOrDefault("completed", "0")));
+        batch.setFailed(Integer.parseInt((String) fields.getOrDefault("failed", "0")));
+        batch.setCreatedAt(Long.parseLong((String) fields.getOrDefault("createdAt", "0")));
+
+        List<String> lines = redisTemplate.opsForList().range(itemsKey(batchId), 0, -1);
+        if (lines == null || lines.isEmpty()) {
+            return batch;
+        }
+        List<String[]> entries = new ArrayList<>();
+        for (String line : lines) {
+            entries.add(line.split("\\|", 2));
+        }
+
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String[] entry : entries) {
+                connection.hashCommands().hMGet(JobStore.key(entry[0]).getBytes(StandardCharsets.UTF_8),
+                        "status".getBytes(StandardCharsets.UTF_8), "percent".getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+
+        Map<String, Integer> taskPercents = new HashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            String[] entry = entries.get(i);
+            @SuppressWarnings("unchecked")
+            List<Object> values = (List<Object>) results.get(i);
+            String status = values != null && values.get(0) != null ? values.get(0).toString() : null;
+            int percent = values != null && values.get(1) != null ? Integer.parseInt(values.get(1).toString()) : 0;
+            batch.getItems().add(new BatchItem(entry.length > 1 ? entry[1] : null, entry[0], status, percent));
+            taskPercents.put(entry[0], percent);
+        }
+        int sum = taskPercents.values().stream().mapToInt(Integer::intValue).sum();
+        batch.setPercent(taskPercents.isEmpty() ? 0 : sum / taskPercents.size());
+        return batch;
+    }
+
+    private static String key(String batchId) {
+        return KEY_PREFIX + batchId;
+    }
+
+    private static String itemsKey(String batchId) {
+        return KEY_PREFIX + batchId + ":items";
+    }
+}
@@ -0,0 +1,388 @@
+package com.training.ai.application.job;
+
+import com.training.ai.application.service.NativeResources;
+import com.training.ai.application.service.StorageManager;
+import com.training.ai.infrastructure.webhook.WebhookClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * /ffmpeg 接口的异步转码任务：请求线程只保存上传文件并入队，转码在本节点的有界线程池中执行。
+ * 上传文件只在接收节点上，因此任务不进入 Redis 队列；状态仍写入 {@link JobStore}，任意节点都能查询和订阅进度。
+ * 执行前占用与 PPT 转视频 worker 共用的 {@link TranscodeSlots} 名额，用户并发数与 PPT 任务合并计算。
+ * 取消请求经 Redis 广播到执行节点，中断执行线程，转码循环在下一帧停止并释放原生资源。
+ * 流式上传的任务（{@link #runInline}）在请求线程中边接收边转码，同样记录状态、占用名额、可以取消；
+ * 这类任务不排队等待名额，也不中断容器线程，取消时由输入流在下一次读取时终止
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FFmpegJobService {
+
+    private static final String CANCEL_CHANNEL = "ffmpeg:job-cancel";
+
+    private final JobStore jobStore;
+    private final JobQueue jobQueue;
+    private final TranscodeSlots transcodeSlots;
+    private final StorageManager storageManager;
+    private final WebhookClient webhookClient;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final MeterRegistry meterRegistry;
+    private final NativeResources nativeResources;
+    private final String nodeId = ManagementFactory.getRuntimeMXBean().getName();
+
+    /**
+     * 本节点已提交、尚未结束的任务
+     */
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    @Value("${ffmpeg.jobs.concurrency:2}")
+    private int concurrency;
+
+    @Value("${ffmpeg.jobs.queue-capacity:20}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNo = new AtomicInteger();
+        int threads = Math.max(1, concurrency);
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+            Thread thread = new Thread(r, "ffmpeg-job-" + threadNo.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        // 只注册指标、不包装任务，取消排队中的任务时需要从队列中移除原始对象
+        new ExecutorServiceMetrics(executor, "ffmpeg-job", Tags.empty()).bindTo(meterRegistry);
+        listenerContainer.addMessageListener((message, pattern) ->
+                cancelLocal(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(CANCEL_CHANNEL));
+    }
+
+    @PreDestroy
+    public void stop() {
+        for (Runnable pending : executor.shutdownNow()) {
+            if (pending instanceof Job job) {
+                job.finish(TaskStatus.FAILED, null, "节点停止，任务未执行");
+            }
+        }
+    }
+
+    /**
+     * 提交任务，调用方已通过 {@link JobQueue#tryAcquire} 占用了 owner 的名额，任务结束时归还
+     *
+     * @param type        任务类型（convert、compress 等），写入回调内容
+     * @param input       上传文件或目录（多个上传文件），执行期间不会被存储清理回收，任务结束后删除
+     * @param callbackUrl 任务结束时的回调地址，可为 null
+     * @param work        转码逻辑，返回的结果中 outputPath 为产物 key
+     * @return 任务 ID
+     * @throws RejectedExecutionException 本节点排队任务已满
+     */
+    public String submit(String type, File input, String originalFilename, String owner, String callbackUrl, Work work) {
+        if (callbackUrl != null) {
+            webhookClient.validate(callbackUrl);
+        }
+        String jobId = UUID.randomUUID().toString();
+        jobStore.create(jobId, originalFilename, owner, JobPriority.INTERACTIVE, null);
+        Job job = new Job(jobId, type, input, owner, callbackUrl, work, false);
+        jobs.put(jobId, job);
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(jobId);
+            jobStore.markFailed(jobId, "转码队列已满");
+            throw e;
+        }
+        log.info("转码任务已提交: jobId={}, type={}, owner={}", jobId, type, owner);
+        return jobId;
+    }
+
+    /**
+     * 在当前线程中执行任务（流式上传：输入来自请求体，只能在请求线程中读取）。
+     * 请求线程不等待编码名额，没有空闲名额时直接拒绝。调用方已通过 {@link JobQueue#tryAcquire} 占用了 owner 的名额
+     *
+     * @param input 请求体，取消任务后的下一次读取抛出 {@link InterruptedIOException}
+     * @return 任务结束时的状态
+     * @throws RejectedExecutionException 本节点没有空闲的编码名额
+     */
+    public Outcome runInline(String type, String originalFilename, String owner, String callbackUrl,
+                             InputStream input, StreamWork work) {
+        if (callbackUrl != null) {
+            webhookClient.validate(callbackUrl);
+        }
+        if (!transcodeSlots.tryAcquire(JobPriority.INTERACTIVE)) {
+            throw new RejectedExecutionException("本节点没有空闲的编码名额");
+        }
+        String jobId = UUID.randomUUID().toString();
+        Job[] holder = new Job[1];
+        InputStream cancellable = new FilterInputStream(input) {
+            @Override
+            public int read() throws IOException {
+                checkCancelled();
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                checkCancelled();
+                return super.read(b, off, len);
+            }
+
+            private void checkCancelled() throws InterruptedIOException {
+                if (holder[0].cancelled) {
+                    throw new InterruptedIOException("任务已取消");
+                }
+            }
+        };
+        Job job = new Job(jobId, type, null, owner, callbackUrl, () -> work.run(cancellable), true);
+        holder[0] = job;
+        try {
+            jobStore.create(jobId, originalFilename, owner, JobPriority.INTERACTIVE, null);
+        } catch (RuntimeException e) {
+            transcodeSlots.release(JobPriority.INTERACTIVE);
+            throw e;
+        }
+        jobs.put(jobId, job);
+        log.info("流式转码任务开始: jobId={}, type={}, owner={}", jobId, type, owner);
+        job.run();
+        return job.outcome;
+    }
+
+    /**
+     * 取消任务：本节点的任务直接取消，否则广播给执行节点
+     *
+     * @return 任务不存在或已结束时返回 false
+     */
+    public boolean cancel(String jobId) {
+        String status = jobStore.getStatus(jobId);
+        if (status == null || TaskStatus.isFinished(status)) {
+            return false;
+        }
+        if (!cancelLocal(jobId)) {
+            redisTemplate.convertAndSend(CANCEL_CHANNEL, jobId);
+        }
+        return true;
+    }
+
+    private boolean cancelLocal(String jobId) {
+        Job job = jobs.get(jobId);
+        if (job == null) {
+            return false;
+        }
+        job.cancel();
+        return true;
+    }
+
+    /**
+     * 转码逻辑，在任务线程中执行
+     */
+    @FunctionalInterface
+    public interface Work {
+        Map<String, String> run() throws Exception;
+    }
+
+    /**
+     * 流式任务的转码逻辑，读取请求体
+     */
+    @FunctionalInterface
+    public interface StreamWork {
+        Map<String, String> run(InputStream input) throws Exception;
+    }
+
+    /**
+     * 任务的最终状态
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Outcome {
+        private final String jobId;
+        private final String status;
+        private final Map<String, String> result;
+        private final String message;
+    }
+
+    private class Job implements Runnable {
+        private final String jobId;
+        private final String type;
+        private final File input;
+        private final String owner;
+        private final String callbackUrl;
+        private final Work work;
+        /**
+         * 在请求线程中执行：名额在创建时已占用，取消时不中断线程
+         */
+        private final boolean inline;
+        /**
+         * 占用编码名额的通道：请求线程中的任务按交互任务计，可以使用预留名额；排队任务按普通任务计
+         */
+        private final JobPriority lane;
+        private final long submittedAt = System.nanoTime();
+
+        private volatile boolean cancelled;
+        private Thread runner;
+        private boolean finished;
+        private Outcome outcome;
+
+        Job(String jobId, String type, File input, String owner, String callbackUrl, Work work, boolean inline) {
+            this.jobId = jobId;
+            this.type = type;
+            this.input = input;
+            this.owner = owner;
+            this.callbackUrl = callbackUrl;
+            this.work = work;
+            this.inline = inline;
+            this.lane = inline ? JobPriority.INTERACTIVE : JobPriority.NORMAL;
+        }
+
+        void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                if (inline) {
+                    return;
+                }
+                if (runner != null) {
+                    runner.interrupt();
+                    return;
+                }
+            }
+            // 还在排队：移出线程池队列后直接结束
+            if (executor.remove(this)) {
+                finish(TaskStatus.CANCELLED, null, "任务已取消");
+            }
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (cancelled) {
+                    finish(TaskStatus.CANCELLED, null, "任务已取消");
+                    return;
+                }
+                runner = Thread.currentThread();
+            }
+            boolean slot = inline;
+            if (input != null) {
+                storageManager.acquire(input);
+            }
+            try {
+                if (!slot && !transcodeSlots.tryAcquire(lane)) {
+                    jobStore.updateProgress(jobId, TaskLogEntry.STAGE_QUEUE, -1, "等待本节点的编码名额");
+                    transcodeSlots.acquire(lane);
+                }
+                slot = true;
+                jobStore.markProcessing(jobId, nodeId);
+                jobStore.updateProgress(jobId, TaskLogEntry.STAGE_ENCODE, -1, "开始转码");
+                Map<String, String> result;
+                // 取消或失败时转码逻辑未关闭的 grabber/recorder 在这里强制释放
+                try (NativeResources.Scope ignored = nativeResources.openScope("ffmpeg-job:" + jobId)) {
+                    result = work.run();
+                }
+                if (cancelled) {
+                    // 流式任务取消时输入可能恰好读完，结果不完整
+                    throw new CancellationException("任务已取消");
+                }
+                finish(TaskStatus.COMPLETED, result, null);
+            } catch (Throwable e) {
+                // 原生库抛出的 Error 也要结束任务，否则任务一直停在处理中，用户名额也不会归还
+                if (cancelled) {
+                    log.info("转码任务已取消: jobId={}", jobId);
+                    finish(TaskStatus.CANCELLED, null, "任务已取消");
+                } else {
+                    log.error("转码任务失败: jobId={}", jobId, e);
+                    finish(TaskStatus.FAILED, null, e.getMessage());
+                }
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                }
+                // 清除中断标记，避免影响线程池中的下一个任务
+                if (!inline) {
+                    Thread.interrupted();
+                }
+                if (slot) {
+                    transcodeSlots.release(lane);
+                }
+                if (input != null) {
+                    storageManager.release(input);
+                }
+            }
+        }
+
+        /**
+         * 记录最终状态、删除上传文件、归还用户名额并发送回调，每个任务只执行一次
+         */
+        synchronized void finish(String status, Map<String, String> result, String message) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            outcome = new Outcome(jobId, status, result, message);
+            jobs.remove(jobId);
+            if (input != null && input.exists() && !FileSystemUtils.deleteRecursively(input)) {
+                log.warn("删除上传文件失败，由存储清理回收: {}", input);
+            }
+            try {
+                switch (status) {
+                    case TaskStatus.COMPLETED -> jobStore.markCompleted(jobId, result.get("outputPath"));
+                    case TaskStatus.CANCELLED -> jobStore.markCancelled(jobId, message);
+                    default -> jobStore.markFailed(jobId, message);
+                }
+            } finally {
+                jobQueue.release(owner);
+                Timer.builder("ffmpeg.job.time")
+                        .description("转码任务从提交到结束的耗时")
+                        .tag("type", type)
+                        .tag("outcome", status.toLowerCase())
+                        .register(meterRegistry)
+                        .record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+            }
+            if (callbackUrl != null) {
+                Map<String, Object> payload = new HashMap<>();
+                payload.put("jobId", jobId);
+                payload.put("type", type);
+                payload.put("status", status);
+                if (result != null) {
+                    payload.putAll(result);
+                }
+                if (message != null && !TaskStatus.COMPLETED.equals(status)) {
+                    payload.put("error", message);
+                }
+                webhookClient.post(callbackUrl, payload);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.training.ai.application.job;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 通过 SSE 向客户端推送任务进度。
+ * worker 所在节点写入状态后经 Redis 发布任务 ID，持有连接的节点收到后只推送游标之后的增量日志
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class JobEventBroadcaster implements MessageListener {
+
+    private final JobStore jobStore;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final Map<String, List<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    @Value("${job.sse.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(JobStore.EVENTS_CHANNEL));
+    }
+
+    /**
+     * 订阅任务进度，连接建立后立即推送 since 之后的日志，任务结束后关闭连接
+     *
+     * @return 任务不存在时返回 null
+     */
+    public SseEmitter subscribe(String taskId, long since) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, since);
+        emitter.onCompletion(() -> remove(taskId, subscriber));
+        emitter.onTimeout(() -> remove(taskId, subscriber));
+        emitter.onError(e -> remove(taskId, subscriber));
+        // 先登记再读取快照：两步之间发布的进度和结束通知也会推送到这个连接，不会丢失
+        subscribers.computeIfAbsent(taskId, k -> new CopyOnWriteArrayList<>()).add(subscriber);
+
+        TaskStatus task = jobStore.get(taskId, since);
+        if (task == null) {
+            remove(taskId, subscriber);
+            return null;
+        }
+        push(taskId, subscriber, task);
+        return emitter;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String taskId = new String(message.getBody(), StandardCharsets.UTF_8);
+        List<Subscriber> list = subscribers.get(taskId);
+        if (list == null) {
+            return;
+        }
+        for (Subscriber subscriber : list) {
+            push(taskId, subscriber, null);
+        }
+    }
+
+    /**
+     * 定期发送注释行保活，同时及时发现已断开的连接
+     */
+    @Scheduled(fixedDelayString = "${job.sse.heartbeat-ms:15000}")
+    public void heartbeat() {
+        subscribers.forEach((taskId, list) -> {
+            for (Subscriber subscriber : list) {
+                synchronized (subscriber) {
+                    try {
+                        subscriber.emitter.send(SseEmitter.event().comment("ping"));
+                    } catch (IOException | IllegalStateException e) {
+                        remove(taskId, subscriber);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 推送游标之后的增量，同一连接的推送串行执行以保证日志顺序
+     */
+    private void push(String taskId, Subscriber subscriber, TaskStatus snapshot) {
+        synchronized (subscriber) {
+            if (subscriber.closed) {
+                return;
+            }
+            if (snapshot != null && snapshot.getCursor() < subscriber.cursor) {
+                // 读取快照后已有通知推送了更新的内容
+                return;
+            }
+            try {
+                TaskStatus delta = snapshot != null ? snapshot : jobStore.get(taskId, subscriber.cursor);
+                if (delta == null) {
+                    // 状态已过期
+                    subscriber.closed = true;
+                    subscriber.emitter.complete();
+                    return;
+                }
+                if (snapshot != null || delta.getCursor() > subscriber.cursor || delta.isFinished()) {
+                    subscriber.emitter.send(SseEmitter.event()
+                            .id(String.valueOf(delta.getCursor()))
+                            .name("progress")
+                            .data(delta));
+                    subscriber.cursor = delta.getCursor();
+                }
+                if (delta.isFinished()) {
+                    subscriber.closed = true;
+                    subscriber.emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.debug("SSE 连接已断开: taskId={}", taskId);
+                subscriber.closed = true;
+                remove(taskId, subscriber);
+            } catch (Exception e) {
+                log.warn("推送任务进度失败: taskId={}, error={}", taskId, e.getMessage());
+            }
+        }
+    }
+
+    private void remove(String taskId, Subscriber subscriber) {
+        subscriber.closed = true;
+        subscribers.computeIfPresent(taskId, (k, list) -> {
+            list.remove(subscriber);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    private static class Subscriber {
+        private final SseEmitter emitter;
+        private long cursor;
+        private volatile boolean closed;
+
+        private Subscriber(SseEmitter emitter, long cursor) {
+            this.emitter = emitter;
+            this.cursor = cursor;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.training.ai.application.job;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.training.ai.application.service.NarrationService.NarrationCheckpoint;
+import com.training.ai.application.service.NarrationService.NarrationSegment;
+import com.training.ai.application.service.PptService.PptPage;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * PPT 转视频任务的检查点清单，保存在任务目录下的 manifest.json 中。
+ * 每个阶段的产物（PDF、每页图片、每段语音、最终视频）完成后记录，
+ * 任务重试或节点重启后从最后完成的产物继续执行。
+ * 每页图片、每段语音数量多，记录时最多每 {@link #RECORD_SAVE_INTERVAL_MS} 写一次文件，由 {@link #flush()} 写入剩余的记录；
+ * 进程退出时最多丢失这段时间内的记录，重试时重新生成
+ */
+@Slf4j
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class JobManifest implements NarrationCheckpoint {
+
+    public static final String FILE_NAME = "manifest.json";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * 逐页、逐段记录的最短写入间隔。每次写入都会重写整个清单，逐条写入时总写入量与页数的平方成正比
+     */
+    private static final long RECORD_SAVE_INTERVAL_MS = 2000;
+
+    private String taskId;
+    private String originalFilename;
+    /**
+     * 源文件在任务目录中的文件名
+     */
+    private String sourceFile;
+    private List<String> pageTexts;
+    private boolean pdfConverted;
+    private Integer pageCount;
+    /**
+     * 已渲染的页面，key 为页序号（从 1 开始）
+     */
+    private Map<Integer, PptPage> pages = new TreeMap<>();
+    /**
+     * 已合成的语音片段，key 为 "页下标:段下标"
+     */
+    private Map<String, NarrationSegment> narrations = new TreeMap<>();
+    private String videoPath;
+    private long updatedAt;
+
+    @JsonIgnore
+    private File file;
+
+    /**
+     * 是否有尚未写入文件的记录
+     */
+    @JsonIgnore
+    private boolean dirty;
+
+    @JsonIgnore
+    private long savedAt;
+
+    /**
+     * 读取任务目录中的清单，不存在时创建新清单
+     */
+    public static JobManifest loadOrCreate(File taskDir, String taskId, String originalFilename, String sourceFile) {
+        JobManifest manifest = load(taskDir);
+        if (manifest == null) {
+            manifest = new JobManifest();
+            manifest.setTaskId(taskId);
+            manifest.setOriginalFilename(originalFilename);
+            manifest.setSourceFile(sourceFile);
+            manifest.setFile(new File(taskDir, FILE_NAME));
+            manifest.save();
+        }
+        return manifest;
+    }
+
+    /**
+     * 读取任务目录中的清单，不存在或已损坏时返回 null
+     */
+    public static JobManifest load(File taskDir) {
+        File file = new File(taskDir, FILE_NAME);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            JobManifest manifest = OBJECT_MAPPER.readValue(file, JobManifest.class);
+            manifest.setFile(file);
+            return manifest;
+        } catch (IOException e) {
+            log.warn("任务清单已损坏，将重新执行: {}", file, e);
+            return null;
+        }
+    }
+
+    public synchronized void recordPageTexts(List<String> texts) {
+        this.pageTexts = texts;
+        save();
+    }
+
+    public synchronized void markPdfConverted() {
+        this.pdfConverted = true;
+        save();
+    }
+
+    public synchronized boolean isPageRendered(int pageIndex) {
+        PptPage page = pages.get(pageIndex);
+        return page != null && new File(page.getImagePath()).exists();
+    }
+
+    public synchronized void recordPage(PptPage page) {
+        pages.put(page.getPageIndex(), page);
+        saveThrottled();
+    }
+
+    public synchronized void recordPageCount(int count) {
+        this.pageCount = count;
+        save();
+    }
+
+    /**
+     * 所有页面图片都已渲染且仍在磁盘上时，可以跳过 PDF 转换与渲染
+     */
+    public synchronized boolean hasAllPages() {
+        if (pageCount == null || pages.size() < pageCount) {
+            return false;
+        }
+        for (int i = 1; i <= pageCount; i++) {
+            if (!isPageRendered(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @JsonIgnore
+    public synchronized List<PptPage> getRenderedPages() {
+        return List.copyOf(pages.values());
+    }
+
+    @Override
+    public synchronized NarrationSegment lookup(int pageIndex, int partIndex, String text) {
+        NarrationSegment segment = narrations.get(pageIndex + ":" + partIndex);
+        if (segment == null || !text.equals(segment.getText())) {
+            return null;
+        }
+        // 语音片段可能在内存盘上，节点重启或任务换到其他节点后需要重新合成
+        return segment.getAudioPath() == null || new File(segment.getAudioPath()).exists() ? segment : null;
+    }
+
+    @Override
+    public synchronized void record(int pageIndex, int partIndex, NarrationSegment segment) {
+        narrations.put(pageIndex + ":" + partIndex, segment);
+        saveThrottled();
+    }
+
+    public synchronized void recordVideo(String path) {
+        this.videoPath = path;
+        save();
+    }
+
+    /**
+     * 写入尚未保存的页面、语音记录，在阶段结束和任务结束时调用
+     */
+    public synchronized void flush() {
+        if (dirty) {
+            save();
+        }
+    }
+
+    private void saveThrottled() {
+        dirty = true;
+        if (System.currentTimeMillis() - savedAt >= RECORD_SAVE_INTERVAL_MS) {
+            save();
+        }
+    }
+
+    /**
+     * 先写临时文件再原子替换，避免进程在写入过程中退出导致清单损坏
+     */
+    public synchronized void save() {
+        updatedAt = System.currentTimeMillis();
+        Path target = file.toPath();
+        Path tmp = target.resolveSibling(FILE_NAME + ".tmp");
+        try {
+            OBJECT_MAPPER.writeValue(tmp.toFile(), this);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+            savedAt = updatedAt;
+        } catch (IOException e) {
+            throw new UncheckedIOException("保存任务清单失败: " + target, e);
+        }
+    }
+}
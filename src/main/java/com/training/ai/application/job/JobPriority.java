@@ -0,0 +1,33 @@
+package com.training.ai.application.job;
+
+/**
+ * 任务优先级，每个优先级对应一条独立的队列
+ */
+public enum JobPriority {
+
+    /**
+     * 讲师等待预览的单个任务，优先领取，并有专用 worker 线程
+     */
+    INTERACTIVE,
+
+    /**
+     * 普通异步提交
+     */
+    NORMAL,
+
+    /**
+     * 批量导入，空闲时执行，交互任务排队时在阶段之间暂停
+     */
+    BULK;
+
+    public static JobPriority from(String value) {
+        if (value == null || value.isBlank()) {
+            return NORMAL;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("不支持的优先级: " + value);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.training.ai.application.job;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于 Redis 的可靠任务队列。
+ * 待执行任务按优先级放在不同的 list 中，被 worker 领取后原子地移入 processing zset，分数为可见性超时的截止时间；
+ * worker 定期续期，节点宕机导致截止时间过期的任务会被重新投递回原队列的队首。
+ * 领取顺序为 交互 > 普通 > 批量；批量任务各自放在批次队列中按批次轮转领取，批次之间互不饿死
+ */
+@Slf4j
+@Component
+public class JobQueue {
+
+    private static final String INTERACTIVE_KEY = "ppt-video:queue:pending:interactive";
+    private static final String PENDING_KEY = "ppt-video:queue:pending";
+    private static final String PROCESSING_KEY = "ppt-video:queue:processing";
+    private static final String OWNER_ACTIVE_KEY = "ppt-video:queue:owner-active";
+    private static final String BATCHES_KEY = "ppt-video:queue:batches";
+    private static final String BATCH_PENDING_PREFIX = "ppt-video:queue:batch:";
+    /**
+     * 任务 ID 到所属队列的映射，重试和超时回收时放回原队列
+     */
+    private static final String ROUTES_KEY = "ppt-video:queue:routes";
+
+    /**
+     * 准入检查：交互与普通队列排队总数达到上限时拒绝（-1），同一用户未结束的任务数达到上限时拒绝（-2），否则占用一个用户名额
+     */
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "if tonumber(ARGV[2]) > 0 and redis.call('LLEN', KEYS[1]) + redis.call('LLEN', KEYS[3]) >= tonumber(ARGV[2]) then return -1 end "
+                    + "if tonumber(ARGV[3]) > 0 and tonumber(redis.call('HGET', KEYS[2], ARGV[1]) or '0') >= tonumber(ARGV[3]) then return -2 end "
+                    + "redis.call('HINCRBY', KEYS[2], ARGV[1], 1) "
+                    + "return 1", Long.class);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "local n = redis.call('HINCRBY', KEYS[1], ARGV[1], -1) "
+                    + "if n <= 0 then redis.call('HDEL', KEYS[1], ARGV[1]) end "
+                    + "return n", Long.class);
+
+    /**
+     * ARGV[3]/ARGV[4] 为 1 时才领取普通/批量任务
+     */
+    private static final RedisScript<String> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "local id = redis.call('RPOP', KEYS[2]) "
+                    + "if not id and ARGV[3] == '1' then id = redis.call('RPOP', KEYS[3]) end "
+                    + "if not id and ARGV[4] == '1' then "
+                    + "local n = redis.call('LLEN', KEYS[4]) "
+                    + "for i = 1, n do "
+                    + "local batch = redis.call('RPOPLPUSH', KEYS[4], KEYS[4]) "
+                    + "if not batch then break end "
+                    + "id = redis.call('RPOP', ARGV[2] .. batch) "
+                    + "if id then break end "
+                    + "redis.call('LREM', KEYS[4], 0, batch) "
+                    + "end "
+                    + "end "
+                    + "if not id then return false end "
+                    + "redis.call('ZADD', KEYS[1], ARGV[1], id) "
+                    + "return id", String.class);
+
+    private static final RedisScript<Long> EXTEND_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('ZSCORE', KEYS[1], ARGV[1]) then "
+                    + "redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1]) return 1 end "
+                    + "return 0", Long.class);
+
+    /**
+     * 按路由把任务放回原队列，front 为 true 时放在队首（下一个被领取）
+     * KEYS: processing, routes, interactive, normal, batches; ARGV[1]: 批次队列前缀
+     */
+    private static final String REQUEUE_FUNCTION =
+            "local function requeue(id, front) "
+                    + "local route = redis.call('HGET', KEYS[2], id) or 'normal' "
+                    + "local key = KEYS[4] "
+                    + "if route == 'interactive' then key = KEYS[3] "
+                    + "elseif string.sub(route, 1, 5) == 'bulk:' then "
+                    + "local batch = string.sub(route, 6) "
+                    + "key = ARGV[1] .. batch "
+                    + "redis.call('LREM', KEYS[5], 0, batch) "
+                    + "redis.call('LPUSH', KEYS[5], batch) "
+                    + "end "
+                    + "if front then redis.call('RPUSH', key, id) else redis.call('LPUSH', key, id) end "
+                    + "end ";
+
+    private static final RedisScript<Long> RETRY_SCRIPT = new DefaultRedisScript<>(
+            REQUEUE_FUNCTION
+                    + "redis.call('ZREM', KEYS[1], ARGV[2]) "
+                    + "requeue(ARGV[2], false) "
+                    + "return 1", Long.class);
+
+    private static final RedisScript<Long> REAP_SCRIPT = new DefaultRedisScript<>(
+            REQUEUE_FUNCTION
+                    + "local ids = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[2], 'LIMIT', 0, 100) "
+                    + "for _, id in ipairs(ids) do "
+                    + "redis.call('ZREM', KEYS[1], id) "
+                    + "requeue(id, true) "
+                    + "end "
+                    + "return #ids", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${job.visibility-timeout-ms:120000}")
+    private long visibilityTimeoutMs;
+
+    @Value("${job.queue.max-pending:200}")
+    private int maxPending;
+
+    @Value("${job.queue.max-active-per-user:3}")
+    private int maxActivePerUser;
+
+    public JobQueue(StringRedisTemplate redisTemplate, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("job.queue.pending", this, q -> q.pendingSize(JobPriority.INTERACTIVE))
+                .description("等待执行的任务数")
+                .tag("priority", "interactive")
+                .register(meterRegistry);
+        Gauge.builder("job.queue.pending", this, q -> q.pendingSize(JobPriority.NORMAL))
+                .description("等待执行的任务数")
+                .tag("priority", "normal")
+                .register(meterRegistry);
+        Gauge.builder("job.queue.processing", this, JobQueue::processingSize)
+                .description("正在执行的任务数")
+                .register(meterRegistry);
+    }
+
+    public long getVisibilityTimeoutMs() {
+        return visibilityTimeoutMs;
+    }
+
+    /**
+     * 提交前的准入检查，通过后占用该用户的一个名额，任务结束时需调用 {@link #release(String)} 归还
+     *
+     * @param owner 提交者标识（用户 ID 或客户端 IP）
+     */
+    public Admission tryAcquire(String owner) {
+        Long result = redisTemplate.execute(ACQUIRE_SCRIPT, List.of(INTERACTIVE_KEY, OWNER_ACTIVE_KEY, PENDING_KEY),
+                owner, String.valueOf(maxPending), String.valueOf(maxActivePerUser));
+        Admission admission = result == null || result == 1 ? Admission.ACCEPTED
+                : result == -1 ? Admission.QUEUE_FULL : Admission.USER_LIMIT;
+        if (admission != Admission.ACCEPTED) {
+            meterRegistry.counter("job.rejected", "reason", admission.name().toLowerCase()).increment();
+            log.warn("拒绝提交任务: owner={}, reason={}", owner, admission);
+        }
+        return admission;
+    }
+
+    /**
+     * 归还用户名额
+     */
+    public void release(String owner) {
+        if (owner != null) {
+            redisTemplate.execute(RELEASE_SCRIPT, List.of(OWNER_ACTIVE_KEY), owner);
+        }
+    }
+
+    /**
+     * 提交单个任务到交互或普通队列
+     */
+    public void submit(String taskId, JobPriority priority) {
+        if (priority == JobPriority.BULK) {
+            throw new IllegalArgumentException("批量任务需通过批次提交");
+        }
+        boolean interactive = priority == JobPriority.INTERACTIVE;
+        redisTemplate.opsForHash().put(ROUTES_KEY, taskId, interactive ? "interactive" : "normal");
+        redisTemplate.opsForList().leftPush(interactive ? INTERACTIVE_KEY : PENDING_KEY, taskId);
+    }
+
+    /**
+     * 提交一个批次的任务，按列表顺序执行
+     */
+    public void submitBatch(String batchId, List<String> taskIds) {
+        if (taskIds.isEmpty()) {
+            return;
+        }
+        Map<String, String> routes = new HashMap<>();
+        for (String taskId : taskIds) {
+            routes.put(taskId, "bulk:" + batchId);
+        }
+        redisTemplate.opsForHash().putAll(ROUTES_KEY, routes);
+        redisTemplate.opsForList().leftPushAll(BATCH_PENDING_PREFIX + batchId, taskIds);
+        redisTemplate.opsForList().leftPush(BATCHES_KEY, batchId);
+    }
+
+    /**
+     * 领取一个任务，总是优先领取交互任务，队列为空时返回 null
+     *
+     * @param includeNormal 是否领取普通任务
+     * @param includeBulk   是否领取批量任务
+     */
+    public String claim(boolean includeNormal, boolean includeBulk) {
+        return redisTemplate.execute(CLAIM_SCRIPT, List.of(PROCESSING_KEY, INTERACTIVE_KEY, PENDING_KEY, BATCHES_KEY),
+                String.valueOf(deadline()), BATCH_PENDING_PREFIX, includeNormal ? "1" : "0", includeBulk ? "1" : "0");
+    }
+
+    /**
+     * 延长任务的可见性超时，任务已被回收（例如续期不及时）时返回 false
+     */
+    public boolean extend(String taskId) {
+        Long extended = redisTemplate.execute(EXTEND_SCRIPT, List.of(PROCESSING_KEY), taskId, String.valueOf(deadline()));
+        return extended != null && extended == 1;
+    }
+
+    /**
+     * 任务执行结束（成功或最终失败），从 processing 中移除
+     */
+    public void ack(String taskId) {
+        redisTemplate.opsForZSet().remove(PROCESSING_KEY, taskId);
+        redisTemplate.opsForHash().delete(ROUTES_KEY, taskId);
+    }
+
+    /**
+     * 任务执行失败，原子地从 processing 移回原队列的队尾等待重试
+     */
+    public void retry(String taskId) {
+        redisTemplate.execute(RETRY_SCRIPT, requeueKeys(), BATCH_PENDING_PREFIX, taskId);
+    }
+
+    /**
+     * 把可见性超时已过期的任务重新投递到原队列的队首，返回回收数量
+     */
+    public long requeueExpired() {
+        Long count = redisTemplate.execute(REAP_SCRIPT, requeueKeys(), BATCH_PENDING_PREFIX, String.valueOf(System.currentTimeMillis()));
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * 交互或普通队列中等待的任务数
+     */
+    public long pendingSize(JobPriority priority) {
+        Long size = redisTemplate.opsForList().size(priority == JobPriority.INTERACTIVE ? INTERACTIVE_KEY : PENDING_KEY);
+        return size == null ? 0 : size;
+    }
+
+    public long processingSize() {
+        Long size = redisTemplate.opsForZSet().zCard(PROCESSING_KEY);
+        return size == null ? 0 : size;
+    }
+
+    private static List<String> requeueKeys() {
+        return List.of(PROCESSING_KEY, ROUTES_KEY, INTERACTIVE_KEY, PENDING_KEY, BATCHES_KEY);
+    }
+
+    private long deadline() {
+        return System.currentTimeMillis() + visibilityTimeoutMs;
+    }
+
+    public enum Admission {
+        ACCEPTED,
+        /**
+         * 全局排队任务已满，对应 503
+         */
+        QUEUE_FULL,
+        /**
+         * 该用户未结束的任务数已达上限，对应 429
+         */
+        USER_LIMIT
+    }
+}
@@ -0,0 +1,288 @@
+package com.training.ai.application.job;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务状态存储：每个任务一个 Redis hash 加一个日志 list。
+ * 日志 list 是定长环形缓冲，只保留最近的条目；任务结束后设置过期时间，避免状态无限累积
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class JobStore {
+
+    private static final String KEY_PREFIX = "ppt-video:job:";
+
+    /**
+     * 任务状态变化时发布任务 ID，各节点据此向订阅的客户端推送增量
+     */
+    public static final String EVENTS_CHANNEL = "ppt-video:job-events";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * 追加一条结构化日志并裁剪到容量上限，同时更新进度并发布变更通知，一次往返完成。
+     * percent 为负数时沿用当前进度
+     */
+    private static final RedisScript<Long> APPEND_LOG_SCRIPT = new DefaultRedisScript<>(
+            "local seq = redis.call('HINCRBY', KEYS[1], 'logSeq', 1) - 1 "
+                    + "local percent = tonumber(ARGV[3]) "
+                    + "if percent >= 0 then redis.call('HSET', KEYS[1], 'percent', ARGV[3]) "
+                    + "else percent = tonumber(redis.call('HGET', KEYS[1], 'percent') or '0') end "
+                    + "redis.call('HSET', KEYS[1], 'updatedAt', ARGV[1]) "
+                    + "redis.call('RPUSH', KEYS[2], cjson.encode({seq = seq, timestamp = tonumber(ARGV[1]), "
+                    + "stage = ARGV[2], percent = percent, message = ARGV[4]})) "
+                    + "redis.call('LTRIM', KEYS[2], -tonumber(ARGV[5]), -1) "
+                    + "redis.call('PUBLISH', ARGV[6], ARGV[7]) "
+                    + "return seq", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    @Value("${job.finished-ttl-hours:168}")
+    private long finishedTtlHours;
+
+    @Value("${job.log.capacity:200}")
+    private int logCapacity;
+
+    /**
+     * 创建任务状态
+     *
+     * @param owner    提交者标识，批量任务为 null（名额按批次占用）
+     * @param priority 任务优先级
+     * @param batchId  所属批次，单个提交时为 null
+     */
+    public void create(String taskId, String originalFilename, String owner, JobPriority priority, String batchId) {
+        long now = System.currentTimeMillis();
+        Map<String, String> fields = new HashMap<>();
+        fields.put("taskId", taskId);
+        fields.put("status", TaskStatus.QUEUED);
+        fields.put("percent", "0");
+        fields.put("attempts", "0");
+        fields.put("priority", priority.name());
+        fields.put("createdAt", String.valueOf(now));
+        fields.put("enqueuedAt", String.valueOf(now));
+        fields.put("updatedAt", String.valueOf(now));
+        if (owner != null) {
+            fields.put("owner", owner);
+        }
+        if (originalFilename != null) {
+            fields.put("originalFilename", originalFilename);
+        }
+        if (batchId != null) {
+            fields.put("batchId", batchId);
+        }
+        redisTemplate.opsForHash().putAll(key(taskId), fields);
+        addLog(taskId, TaskLogEntry.STAGE_QUEUE, 0, "任务已加入队列");
+    }
+
+    /**
+     * 重新排队一个已结束的任务，执行次数清零并取消过期时间。
+     * 重试后的任务作为独立任务执行，不再计入原批次
+     */
+    public void requeue(String taskId, String originalFilename, String owner, JobPriority priority) {
+        if (get(taskId) == null) {
+            create(taskId, originalFilename, owner, priority, null);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Map<String, String> fields = new HashMap<>();
+        fields.put("status", TaskStatus.QUEUED);
+        fields.put("attempts", "0");
+        fields.put("error", "");
+        fields.put("priority", priority.name());
+        if (owner != null) {
+            fields.put("owner", owner);
+        }
+        fields.put("enqueuedAt", String.valueOf(now));
+        fields.put("updatedAt", String.valueOf(now));
+        redisTemplate.opsForHash().putAll(key(taskId), fields);
+        redisTemplate.opsForHash().delete(key(taskId), "batchId");
+        redisTemplate.persist(key(taskId));
+        redisTemplate.persist(logsKey(taskId));
+        addLog(taskId, TaskLogEntry.STAGE_QUEUE, -1, "任务已重新加入队列");
+    }
+
+    /**
+     * 只读取任务状态字段，任务不存在时返回 null
+     */
+    public String getStatus(String taskId) {
+        Object status = redisTemplate.opsForHash().get(key(taskId), "status");
+        return status == null ? null : status.toString();
+    }
+
+    public TaskStatus get(String taskId) {
+        return get(taskId, 0);
+    }
+
+    /**
+     * 读取任务状态，只返回序号不小于 since 的日志
+     */
+    public TaskStatus get(String taskId, long since) {
+        Map<Object, Object> fields = redisTemplate.opsForHash().entries(key(taskId));
+        if (fields.isEmpty()) {
+            return null;
+        }
+        TaskStatus task = new TaskStatus();
+        task.setTaskId(taskId);
+        task.setStatus((String) fields.get("status"));
+        task.setPercent(parseInt(fields.get("percent")));
+        task.setAttempts(parseInt(fields.get("attempts")));
+        task.setResultPath(emptyToNull(fields.get("resultPath")));
+        task.setError(emptyToNull(fields.get("error")));
+        task.setOriginalFilename(emptyToNull(fields.get("originalFilename")));
+        task.setWorkerNode(emptyToNull(fields.get("workerNode")));
+        task.setPriority(emptyToNull(fields.get("priority")));
+        task.setCreatedAt(parseLong(fields.get("createdAt")));
+        task.setUpdatedAt(parseLong(fields.get("updatedAt")));
+        task.setCursor(parseLong(fields.get("logSeq")));
+        // 缓冲区容量固定，整体读取后按序号过滤
+        List<String> lines = redisTemplate.opsForList().range(logsKey(taskId), 0, -1);
+        List<TaskLogEntry> logs = new ArrayList<>();
+        if (lines != null) {
+            for (String line : lines) {
+                TaskLogEntry entry = parseEntry(line);
+                if (entry != null && entry.getSeq() >= since) {
+                    logs.add(entry);
+                }
+            }
+        }
+        task.setLogs(logs);
+        return task;
+    }
+
+    /**
+     * 提交者标识，用于归还该用户的并发名额
+     */
+    public String getOwner(String taskId) {
+        return emptyToNull(redisTemplate.opsForHash().get(key(taskId), "owner"));
+    }
+
+    public String getBatchId(String taskId) {
+        return emptyToNull(redisTemplate.opsForHash().get(key(taskId), "batchId"));
+    }
+
+    /**
+     * 最近一次进入队列的时间，用于统计排队耗时
+     */
+    public long getEnqueuedAt(String taskId) {
+        return parseLong(redisTemplate.opsForHash().get(key(taskId), "enqueuedAt"));
+    }
+
+    /**
+     * 标记任务开始执行，返回累计执行次数
+     */
+    public int markProcessing(String taskId, String workerNode) {
+        Long attempts = redisTemplate.opsForHash().increment(key(taskId), "attempts", 1);
+        Map<String, String> fields = new HashMap<>();
+        fields.put("status", TaskStatus.PROCESSING);
+        fields.put("workerNode", workerNode);
+        fields.put("updatedAt", String.valueOf(System.currentTimeMillis()));
+        redisTemplate.opsForHash().putAll(key(taskId), fields);
+        addLog(taskId, TaskLogEntry.STAGE_QUEUE, -1, "节点 " + workerNode + " 开始执行 (第 " + attempts + " 次)");
+        return attempts == null ? 1 : attempts.intValue();
+    }
+
+    public void updateProgress(String taskId, String stage, int percent, String message) {
+        addLog(taskId, stage, percent, message);
+    }
+
+    /**
+     * 执行失败但还可以重试，状态回到排队中
+     */
+    public void markRetrying(String taskId, String message) {
+        redisTemplate.opsForHash().put(key(taskId), "status", TaskStatus.QUEUED);
+        redisTemplate.opsForHash().put(key(taskId), "enqueuedAt", String.valueOf(System.currentTimeMillis()));
+        addLog(taskId, TaskLogEntry.STAGE_QUEUE, -1, message);
+    }
+
+    public void markCompleted(String taskId, String resultPath) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("status", TaskStatus.COMPLETED);
+        fields.put("percent", "100");
+        fields.put("resultPath", resultPath);
+        fields.put("updatedAt", String.valueOf(System.currentTimeMillis()));
+        redisTemplate.opsForHash().putAll(key(taskId), fields);
+        addLog(taskId, TaskLogEntry.STAGE_DONE, 100, "任务完成");
+        expireFinished(taskId);
+    }
+
+    public void markFailed(String taskId, String error) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("status", TaskStatus.FAILED);
+        fields.put("error", error == null ? "未知错误" : error);
+        fields.put("updatedAt", String.valueOf(System.currentTimeMillis()));
+        redisTemplate.opsForHash().putAll(key(taskId), fields);
+        addLog(taskId, TaskLogEntry.STAGE_ERROR, -1, "错误: " + error);
+        expireFinished(taskId);
+    }
+
+    /**
+     * 删除任务状态和日志，用于撤销提交失败、从未进入队列的任务
+     */
+    public void delete(String taskId) {
+        redisTemplate.delete(List.of(key(taskId), logsKey(taskId)));
+    }
+
+    public void markCancelled(String taskId, String message) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("status", TaskStatus.CANCELLED);
+        fields.put("updatedAt", String.valueOf(System.currentTimeMillis()));
+        redisTemplate.opsForHash().putAll(key(taskId), fields);
+        addLog(taskId, TaskLogEntry.STAGE_DONE, -1, message);
+        expireFinished(taskId);
+    }
+
+    private void addLog(String taskId, String stage, int percent, String message) {
+        redisTemplate.execute(APPEND_LOG_SCRIPT, List.of(key(taskId), logsKey(taskId)),
+                String.valueOf(System.currentTimeMillis()), stage, String.valueOf(percent),
+                message == null ? "" : message, String.valueOf(logCapacity), EVENTS_CHANNEL, taskId);
+    }
+
+    private static TaskLogEntry parseEntry(String line) {
+        try {
+            return OBJECT_MAPPER.readValue(line, TaskLogEntry.class);
+        } catch (IOException e) {
+            log.warn("无法解析任务日志: {}", line);
+            return null;
+        }
+    }
+
+    private void expireFinished(String taskId) {
+        redisTemplate.expire(key(taskId), finishedTtlHours, TimeUnit.HOURS);
+        redisTemplate.expire(logsKey(taskId), finishedTtlHours, TimeUnit.HOURS);
+    }
+
+    static String key(String taskId) {
+        return KEY_PREFIX + taskId;
+    }
+
+    private static String logsKey(String taskId) {
+        return KEY_PREFIX + taskId + ":logs";
+    }
+
+    private static int parseInt(Object value) {
+        return value == null || value.toString().isEmpty() ? 0 : Integer.parseInt(value.toString());
+    }
+
+    private static long parseLong(Object value) {
+        return value == null || value.toString().isEmpty() ? 0 : Long.parseLong(value.toString());
+    }
+
+    private static String emptyToNull(Object value) {
+        return value == null || value.toString().isEmpty() ? null : value.toString();
+    }
+}
@@ -0,0 +1,345 @@
+package com.training.ai.application.job;
+
+import com.training.ai.application.service.NativeResources;
+import com.training.ai.application.service.PptToVideoService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PPT 转视频 worker：每个节点启动若干线程从 Redis 队列拉取任务执行。
+ * 执行期间定期续期可见性超时；失败的任务在达到最大次数前重新排队，
+ * 并借助任务目录中的检查点从上次完成的阶段继续。续期失败说明任务已被回收并可能由其他节点执行，
+ * 此时中断本节点的执行，不再更新任务状态。
+ * 部分线程只执行交互任务；批量任务的并发数单独限制，且在有交互任务排队时于阶段之间暂停。
+ * 编码名额（{@link TranscodeSlots}）只在视频编码阶段占用，等待名额期间心跳照常续期
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PptVideoJobWorker {
+
+    private final JobQueue jobQueue;
+    private final JobStore jobStore;
+    private final BatchStore batchStore;
+    private final PptToVideoService pptToVideoService;
+    private final TranscodeSlots transcodeSlots;
+    private final MeterRegistry meterRegistry;
+    private final NativeResources nativeResources;
+    private final String nodeId = ManagementFactory.getRuntimeMXBean().getName();
+
+    @Value("${job.worker.enabled:true}")
+    private boolean enabled;
+
+    @Value("${job.worker.concurrency:2}")
+    private int concurrency;
+
+    @Value("${job.worker.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${job.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${job.lanes.interactive-reserved:1}")
+    private int interactiveReserved;
+
+    @Value("${job.lanes.bulk-max-concurrency:1}")
+    private int bulkMaxConcurrency;
+
+    @Value("${job.lanes.bulk-max-pause-ms:600000}")
+    private long bulkMaxPauseMs;
+
+    private Semaphore bulkPermits;
+
+    private ExecutorService workers;
+    private ScheduledExecutorService heartbeats;
+    private volatile boolean running;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info("PPT 转视频 worker 未启用，本节点只接收任务");
+            return;
+        }
+        running = true;
+        bulkPermits = new Semaphore(Math.max(1, bulkMaxConcurrency));
+        int threads = concurrency + interactiveReserved;
+        AtomicInteger threadNo = new AtomicInteger();
+        // 独立的固定大小线程池，阻塞的转换/编码工作不占用 ForkJoinPool.commonPool()；
+        // 排队发生在 Redis 中，本地线程只会领取自己能立即执行的任务
+        workers = ExecutorServiceMetrics.monitor(meterRegistry, Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "ppt-video-worker-" + threadNo.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }), "ppt-video-worker");
+        heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ppt-video-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < interactiveReserved; i++) {
+            workers.execute(() -> pollLoop(true));
+        }
+        for (int i = 0; i < concurrency; i++) {
+            workers.execute(() -> pollLoop(false));
+        }
+        log.info("PPT 转视频 worker 已启动: node={}, concurrency={}, interactiveReserved={}, bulkMaxConcurrency={}",
+                nodeId, concurrency, interactiveReserved, bulkMaxConcurrency);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (workers != null) {
+            // 正在执行的任务不再续期，可见性超时后由其他节点接手
+            workers.shutdownNow();
+            heartbeats.shutdownNow();
+        }
+    }
+
+    /**
+     * 回收可见性超时已过期的任务（执行节点宕机或失联），所有节点都会执行，脚本保证原子性
+     */
+    @Scheduled(fixedDelayString = "${job.reaper.interval-ms:30000}")
+    public void reapExpired() {
+        try {
+            long count = jobQueue.requeueExpired();
+            if (count > 0) {
+                log.warn("回收了 {} 个执行超时的任务，重新排队", count);
+            }
+        } catch (Exception e) {
+            log.warn("回收超时任务失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @param interactiveOnly 预留给交互任务的线程只领取交互任务
+     */
+    private void pollLoop(boolean interactiveOnly) {
+        while (running && !Thread.currentThread().isInterrupted()) {
+            boolean bulkPermit = !interactiveOnly && bulkPermits.tryAcquire();
+            try {
+                String taskId = jobQueue.claim(!interactiveOnly, bulkPermit);
+                if (taskId == null) {
+                    if (bulkPermit) {
+                        bulkPermits.release();
+                        bulkPermit = false;
+                    }
+                    Thread.sleep(pollIntervalMs);
+                    continue;
+                }
+                TaskStatus task = jobStore.get(taskId);
+                if (bulkPermit && (task == null || task.priorityOrDefault() != JobPriority.BULK)) {
+                    // 领到的不是批量任务，名额留给其他线程
+                    bulkPermits.release();
+                    bulkPermit = false;
+                }
+                process(taskId, task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable e) {
+                // 包括原生库抛出的 Error：worker 线程不会被替换，退出循环会让本节点永久少一个 worker
+                log.error("拉取任务失败", e);
+                try {
+                    Thread.sleep(pollIntervalMs * 5);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            } finally {
+                if (bulkPermit) {
+                    bulkPermits.release();
+                }
+            }
+        }
+    }
+
+    private void process(String taskId, TaskStatus task) {
+        if (task == null || task.isFinished()) {
+            // 状态已过期或任务已经结束（例如超时回收后被原节点完成），直接丢弃
+            jobQueue.ack(taskId);
+            return;
+        }
+
+        String owner = jobStore.getOwner(taskId);
+        String batchId = jobStore.getBatchId(taskId);
+        JobPriority priority = task.priorityOrDefault();
+        long enqueuedAt = jobStore.getEnqueuedAt(taskId);
+        if (enqueuedAt > 0) {
+            Timer.builder("job.queue.wait")
+                    .description("任务从入队到开始执行的等待时间")
+                    .tag("priority", priority.name().toLowerCase())
+                    .register(meterRegistry)
+                    .record(Math.max(0, System.currentTimeMillis() - enqueuedAt), TimeUnit.MILLISECONDS);
+        }
+
+        int attempt = jobStore.markProcessing(taskId, nodeId);
+        if (attempt > maxAttempts) {
+            jobStore.markFailed(taskId, "超过最大执行次数 " + maxAttempts);
+            finish(taskId, owner, batchId, false);
+            return;
+        }
+
+        Thread runner = Thread.currentThread();
+        AtomicBoolean leaseLost = new AtomicBoolean();
+        AtomicBoolean ended = new AtomicBoolean();
+        long heartbeatMs = Math.max(1000, jobQueue.getVisibilityTimeoutMs() / 3);
+        ScheduledFuture<?> heartbeat = heartbeats.scheduleAtFixedRate(() -> {
+            if (leaseLost.get()) {
+                return;
+            }
+            try {
+                if (!jobQueue.extend(taskId)) {
+                    synchronized (leaseLost) {
+                        if (!ended.get()) {
+                            leaseLost.set(true);
+                            log.warn("任务 {} 的可见性超时已过期并被回收，停止本节点的执行", taskId);
+                            runner.interrupt();
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("任务 {} 续期失败: {}", taskId, e.getMessage());
+            }
+        }, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        String outcome = "success";
+        try (NativeResources.Scope ignored = nativeResources.openScope("ppt-video:" + taskId)) {
+            PptToVideoService.StageGate gate = new WorkerGate(taskId, priority);
+            String videoPath = pptToVideoService.resumeTask(taskId, (percent, msg) ->
+                    jobStore.updateProgress(taskId, PptToVideoService.stageOf(percent), percent, msg), gate);
+            if (leaseLost.get()) {
+                // 结果已保存到检查点，接手的节点会直接使用
+                outcome = "lease-lost";
+                log.warn("任务 {} 在租约丢失后完成，由接手的节点更新状态", taskId);
+                return;
+            }
+            jobStore.markCompleted(taskId, videoPath);
+            finish(taskId, owner, batchId, true);
+        } catch (Throwable e) {
+            // Error（UnsatisfiedLinkError、OutOfMemoryError 等）同样按失败处理，任务重试或标记失败
+            if (leaseLost.get()) {
+                // 任务已重新排队，由接手的节点继续，本节点不修改状态、不归还名额
+                outcome = "lease-lost";
+                log.warn("任务 {} 因租约丢失停止执行: {}", taskId, e.getMessage());
+                return;
+            }
+            fail(taskId, owner, batchId, attempt, e);
+            outcome = e instanceof IllegalArgumentException || attempt >= maxAttempts ? "failure" : "retry";
+        } finally {
+            synchronized (leaseLost) {
+                ended.set(true);
+            }
+            heartbeat.cancel(false);
+            if (leaseLost.get()) {
+                // 清除续期线程设置的中断标记，worker 线程继续领取任务
+                Thread.interrupted();
+            }
+            Timer.builder("job.run.time")
+                    .description("单次任务执行耗时")
+                    .tag("priority", priority.name().toLowerCase())
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void fail(String taskId, String owner, String batchId, int attempt, Throwable e) {
+        if (e instanceof IllegalArgumentException) {
+            // 文件损坏、源文件缺失等重试也无法恢复的错误
+            log.error("任务 {} 失败", taskId, e);
+            jobStore.markFailed(taskId, e.getMessage());
+            finish(taskId, owner, batchId, false);
+        } else if (attempt < maxAttempts) {
+            log.error("任务 {} 第 {} 次执行失败", taskId, attempt, e);
+            jobStore.markRetrying(taskId, "第 " + attempt + " 次执行失败，等待重试: " + e.getMessage());
+            jobQueue.retry(taskId);
+        } else {
+            log.error("任务 {} 第 {} 次执行失败", taskId, attempt, e);
+            jobStore.markFailed(taskId, e.getMessage());
+            finish(taskId, owner, batchId, false);
+        }
+    }
+
+    /**
+     * worker 的阶段闸门：编码阶段按任务优先级占用编码名额（交互任务可以使用预留名额）；
+     * 批量任务在有交互任务排队时暂停，直到交互队列清空或达到最长暂停时间（避免批量任务饿死）。
+     * 等待和暂停期间心跳照常续期
+     */
+    private class WorkerGate implements PptToVideoService.StageGate {
+        private final String taskId;
+        private final JobPriority priority;
+        private boolean slot;
+
+        private WorkerGate(String taskId, JobPriority priority) {
+            this.taskId = taskId;
+            this.priority = priority;
+        }
+
+        @Override
+        public void await(String stage) throws InterruptedException {
+            if (priority != JobPriority.BULK) {
+                return;
+            }
+            long deadline = System.currentTimeMillis() + bulkMaxPauseMs;
+            boolean paused = false;
+            while (jobQueue.pendingSize(JobPriority.INTERACTIVE) > 0 && System.currentTimeMillis() < deadline) {
+                if (!paused) {
+                    paused = true;
+                    jobStore.updateProgress(taskId, stage, -1, "有交互任务排队，批量任务暂停");
+                }
+                Thread.sleep(pollIntervalMs);
+            }
+            if (paused) {
+                jobStore.updateProgress(taskId, stage, -1, "批量任务继续执行");
+            }
+        }
+
+        @Override
+        public void beforeEncode() throws InterruptedException {
+            if (!transcodeSlots.tryAcquire(priority)) {
+                jobStore.updateProgress(taskId, TaskLogEntry.STAGE_ENCODE, -1, "等待本节点的编码名额");
+                transcodeSlots.acquire(priority);
+            }
+            slot = true;
+        }
+
+        @Override
+        public void afterEncode() {
+            if (slot) {
+                slot = false;
+                transcodeSlots.release(priority);
+            }
+        }
+    }
+
+    /**
+     * 任务最终结束：移出 processing 并归还提交者名额；批量任务在整个批次结束时才归还批次的名额
+     */
+    private void finish(String taskId, String owner, String batchId, boolean success) {
+        jobQueue.ack(taskId);
+        jobQueue.release(owner);
+        if (batchId != null && batchStore.recordTaskFinished(batchId, success)) {
+            log.info("批次 {} 的所有任务已结束", batchId);
+            jobQueue.release(batchStore.getOwner(batchId));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.training.ai.application.job;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 任务日志条目，seq 在任务内单调递增，日志被环形缓冲淘汰后序号也不会复用
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class TaskLogEntry {
+
+    public static final String STAGE_QUEUE = "queue";
+    public static final String STAGE_EXTRACT = "extract";
+    public static final String STAGE_CONVERT = "convert";
+    public static final String STAGE_ENCODE = "encode";
+    public static final String STAGE_DONE = "done";
+    public static final String STAGE_ERROR = "error";
+
+    private long seq;
+    private long timestamp;
+    private String stage;
+    private int percent;
+    private String message;
+}
@@ -0,0 +1,60 @@
+package com.training.ai.application.job;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 异步 PPT 转视频任务的状态快照，从 Redis 读取，任意节点都能查询
+ */
+@Data
+public class TaskStatus {
+
+    public static final String QUEUED = "QUEUED";
+    public static final String PROCESSING = "PROCESSING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+    public static final String CANCELLED = "CANCELLED";
+
+    private String taskId;
+    private String status;
+    private int percent;
+    /**
+     * 最近的日志，最多保留 job.log.capacity 条
+     */
+    private List<TaskLogEntry> logs = new ArrayList<>();
+    /**
+     * 下一条日志的序号，客户端下次用它作为 since 参数只获取新增日志
+     */
+    private long cursor;
+    private String resultPath;
+    private String error;
+    private String originalFilename;
+    /**
+     * INTERACTIVE / NORMAL / BULK
+     */
+    private String priority;
+    /**
+     * 已执行次数，包括因节点宕机被重新投递的次数
+     */
+    private int attempts;
+    /**
+     * 正在（或最后一次）执行该任务的节点
+     */
+    private String workerNode;
+    private long createdAt;
+    private long updatedAt;
+
+    public JobPriority priorityOrDefault() {
+        return priority == null ? JobPriority.NORMAL : JobPriority.valueOf(priority);
+    }
+
+    public boolean isFinished() {
+        return isFinished(status);
+    }
+
+    public static boolean isFinished(String status) {
+        return COMPLETED.equals(status) || FAILED.equals(status) || CANCELLED.equals(status);
+    }
+}
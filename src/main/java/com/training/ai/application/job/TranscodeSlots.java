@@ -0,0 +1,122 @@
+package com.training.ai.application.job;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 本节点的编码名额：PPT 转视频 worker 和 /ffmpeg 转码任务共用同一组名额，
+ * 两类任务同时繁忙时 CPU 占用不会叠加超出上限。
+ * 其中 interactive-reserved 个名额只有交互任务可以占用，普通和批量任务最多占用其余名额
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TranscodeSlots {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${transcode.node-max-concurrency:3}")
+    private int maxConcurrency;
+
+    @Value("${job.lanes.interactive-reserved:1}")
+    private int interactiveReserved;
+
+    /**
+     * 公平锁，等待中的任务按到达顺序获得名额
+     */
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition released = lock.newCondition();
+    private int inUse;
+    private int inUseShared;
+    private int sharedLimit;
+
+    @PostConstruct
+    public void init() {
+        maxConcurrency = Math.max(1, maxConcurrency);
+        // 至少留一个名额给非交互任务，否则普通和批量任务永远无法编码
+        int reserved = Math.max(0, Math.min(interactiveReserved, maxConcurrency - 1));
+        if (reserved != interactiveReserved) {
+            log.warn("交互任务预留的编码名额 {} 超出上限，调整为 {} (node-max-concurrency={})",
+                    interactiveReserved, reserved, maxConcurrency);
+        }
+        sharedLimit = maxConcurrency - reserved;
+        Gauge.builder("transcode.slots.in-use", this, s -> s.inUse)
+                .description("本节点正在使用的编码名额")
+                .register(meterRegistry);
+        Gauge.builder("transcode.slots.max", this, s -> s.maxConcurrency)
+                .description("本节点的编码名额上限")
+                .register(meterRegistry);
+        Gauge.builder("transcode.slots.reserved", this, s -> s.maxConcurrency - s.sharedLimit)
+                .description("只供交互任务使用的编码名额")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 有该优先级可用的空闲名额时占用一个，不等待
+     */
+    public boolean tryAcquire(JobPriority priority) {
+        lock.lock();
+        try {
+            if (!available(priority)) {
+                return false;
+            }
+            take(priority);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待该优先级可用的空闲名额，等待期间可被中断（任务取消）
+     */
+    public void acquire(JobPriority priority) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (!available(priority)) {
+                released.await();
+            }
+            take(priority);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 归还名额，priority 与占用时相同
+     */
+    public void release(JobPriority priority) {
+        lock.lock();
+        try {
+            inUse--;
+            if (priority != JobPriority.INTERACTIVE) {
+                inUseShared--;
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean available(JobPriority priority) {
+        if (inUse >= maxConcurrency) {
+            return false;
+        }
+        return priority == JobPriority.INTERACTIVE || inUseShared < sharedLimit;
+    }
+
+    private void take(JobPriority priority) {
+        inUse++;
+        if (priority != JobPriority.INTERACTIVE) {
+            inUseShared++;
+        }
+    }
+}
@@ -1,71 +1,520 @@
 package com.training.ai.application.service;
 
+import com.training.ai.application.service.TranscodeEngine.TranscodeOptions;
+import com.training.ai.application.util.H264Headers;
+import com.training.ai.application.util.MediaStreams;
 import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.ffmpeg.avcodec.AVCodecParameters;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avformat.AVOutputFormat;
+import org.bytedeco.ffmpeg.avformat.AVStream;
+import org.bytedeco.ffmpeg.avutil.AVRational;
 import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avformat;
+import org.bytedeco.ffmpeg.global.avutil;
 import org.bytedeco.javacv.FFmpegFrameGrabber;
 import org.bytedeco.javacv.FFmpegFrameRecorder;
 import org.bytedeco.javacv.FFmpegLogCallback;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
 
+import javax.imageio.ImageIO;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 
 @Slf4j
 @Service
 public class FFmpegService {
 
-    public FFmpegService() {
+    /**
+     * 容器（mp4 索引等）占用的比例
+     */
+    private static final double CONTAINER_OVERHEAD = 0.03;
+    private static final int MIN_VIDEO_BITRATE = 100_000;
+    private static final int[] DOWNSCALE_HEIGHTS = {1080, 720, 540, 480, 360};
+    /**
+     * 要求两遍编码时，结果小于目标的这个比例会按实际结果修正码率
+     */
+    private static final double UNDERSHOOT_RATIO = 0.85;
+    /**
+     * 结果超过目标大小时最多重新编码的次数，每次码率至少降低到上次的 OVERSHOOT_STEP
+     */
+    private static final int MAX_SIZE_ATTEMPTS = 3;
+    private static final double OVERSHOOT_STEP = 0.9;
+
+    private final TranscodeEngine transcodeEngine;
+    private final MediaProbe mediaProbe;
+    private final NativeResources nativeResources;
+
+    @Value("${ffmpeg.compress.default-crf:26}")
+    private int defaultCrf;
+
+    @Value("${ffmpeg.compress.audio-bitrate:96000}")
+    private int compressAudioBitrate;
+
+    @Value("${ffmpeg.compress.min-bits-per-pixel:0.04}")
+    private double minBitsPerPixel;
+
+    /**
+     * 拼接时片段按正片参数转码所用的 libx264 preset，应与生成正片的 preset 一致（PPT 视频为 ultrafast）
+     */
+    @Value("${ffmpeg.concat.x264-preset:ultrafast}")
+    private String concatPreset;
+
+    public FFmpegService(TranscodeEngine transcodeEngine, MediaProbe mediaProbe, NativeResources nativeResources) {
+        this.transcodeEngine = transcodeEngine;
+        this.mediaProbe = mediaProbe;
+        this.nativeResources = nativeResources;
         FFmpegLogCallback.set();
     }
 
     public String convertVideo(String inputPath, String outputPath, String format) {
+        return convertVideo(inputPath, outputPath, format, true);
+    }
+
+    /**
+     * 转换视频容器格式
+     *
+     * @param allowRemux 为 true 时，如果输入的音视频编码都能直接放入目标容器（例如 mov → mp4、mp4 → mkv），
+     *                   只复制数据包、不解码也不重新编码；否则转码为 H.264
+     */
+    public String convertVideo(String inputPath, String outputPath, String format, boolean allowRemux) {
         log.info("开始转换视频: input={}, output={}, format={}", inputPath, outputPath, format);
-        
-        try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(inputPath);
-             FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(outputPath, 
-                     grabber.getImageWidth(), grabber.getImageHeight(), 
-                     grabber.getAudioChannels())) {
-            
+        return convertVideo(transcodeEngine.open(inputPath), outputPath, format, allowRemux);
+    }
+
+    /**
+     * 边接收边转换，输入必须能按顺序解码（见 {@link MediaStreams#isStreamable}），结束后关闭输入流
+     */
+    public String convertVideo(InputStream input, String outputPath, String format, boolean allowRemux) {
+        log.info("开始流式转换视频: output={}, format={}", outputPath, format);
+        return convertVideo(transcodeEngine.open(input), outputPath, format, allowRemux);
+    }
+
+    private String convertVideo(FFmpegFrameGrabber source, String outputPath, String format, boolean allowRemux) {
+        try (FFmpegFrameGrabber grabber = source) {
             grabber.start();
-            
-            recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
-            recorder.setFormat(format);
-            recorder.setFrameRate(grabber.getFrameRate());
-            recorder.setSampleRate(grabber.getSampleRate());
-            
-            recorder.start();
-            
-            while (grabber.grab() != null) {
-                recorder.record(grabber.grab());
+            if (allowRemux && canRemux(grabber, format, outputPath)) {
+                remux(grabber, outputPath, format);
+                log.info("视频转封装成功 (复制数据包): {}", outputPath);
+                return outputPath;
             }
-            
+
+            transcodeEngine.transcode(grabber, outputPath, TranscodeOptions.builder()
+                    .format(format)
+                    .build());
+
             log.info("视频转换成功: {}", outputPath);
             return outputPath;
-            
+
         } catch (Exception e) {
             log.error("视频转换失败", e);
             throw new RuntimeException("视频转换失败: " + e.getMessage(), e);
         }
     }
 
-    public String extractAudio(String inputPath, String outputPath) {
-        log.info("开始提取音频: input={}, output={}", inputPath, outputPath);
-        
-        try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(inputPath);
-             FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(outputPath, 0)) {
-            
+    /**
+     * 判断输入能否直接转封装：至多一路视频和一路音频（字幕、数据流会被丢弃），且编码都被目标容器支持
+     */
+    private boolean canRemux(FFmpegFrameGrabber grabber, String format, String outputPath) {
+        // 与 FFmpegFrameRecorder 相同，按格式名和输出文件扩展名推断（mkv 不是格式名，需要按扩展名识别为 matroska）
+        AVOutputFormat outputFormat = avformat.av_guess_format(format, outputPath, null);
+        if (outputFormat == null) {
+            return false;
+        }
+        AVFormatContext context = grabber.getFormatContext();
+        int videoStreams = 0;
+        int audioStreams = 0;
+        for (int i = 0; i < context.nb_streams(); i++) {
+            AVStream stream = context.streams(i);
+            AVCodecParameters parameters = stream.codecpar();
+            int type = parameters.codec_type();
+            if (type == avutil.AVMEDIA_TYPE_VIDEO) {
+                videoStreams++;
+            } else if (type == avutil.AVMEDIA_TYPE_AUDIO) {
+                audioStreams++;
+            } else {
+                continue;
+            }
+            if (avformat.avformat_query_codec(outputFormat, parameters.codec_id(), avcodec.FF_COMPLIANCE_NORMAL) != 1) {
+                log.info("{} 容器不支持编码 {}，需要转码", format, avcodec.avcodec_get_name(parameters.codec_id()).getString());
+                return false;
+            }
+        }
+        return videoStreams <= 1 && audioStreams <= 1 && videoStreams + audioStreams > 0;
+    }
+
+    private void remux(FFmpegFrameGrabber grabber, String outputPath, String format) throws Exception {
+        try (FFmpegFrameRecorder recorder = nativeResources.recorder(outputPath,
+                grabber.getImageWidth(), grabber.getImageHeight(), grabber.getAudioChannels())) {
+            recorder.setFormat(format);
+            // 源容器的 codec tag（如 mp4 的 mp4a/avc1）在其他容器中可能无效，清零后由目标容器自行选择
+            AVFormatContext context = grabber.getFormatContext();
+            for (int i = 0; i < context.nb_streams(); i++) {
+                context.streams(i).codecpar().codec_tag(0);
+            }
+            recorder.start(context);
+
+            AVPacket packet;
+            while ((packet = grabber.grabPacket()) != null) {
+                if (Thread.currentThread().isInterrupted()) {
+                    avcodec.av_packet_unref(packet);
+                    throw new CancellationException("转封装已取消");
+                }
+                try {
+                    recorder.recordPacket(packet);
+                } finally {
+                    // 未写出的数据包（字幕、数据流）需要手动释放
+                    avcodec.av_packet_unref(packet);
+                }
+            }
+        }
+    }
+
+    /**
+     * 为视频加上片头、片尾，introPath、outroPath 可为 null。规则见 {@link #concatVideos(List, String, boolean)}
+     */
+    public String addBumpers(String inputPath, String introPath, String outroPath, String outputPath) {
+        List<String> segments = new ArrayList<>();
+        if (introPath != null) {
+            segments.add(introPath);
+        }
+        segments.add(inputPath);
+        if (outroPath != null) {
+            segments.add(outroPath);
+        }
+        return concatVideos(segments, outputPath, false);
+    }
+
+    public String concatVideos(List<String> inputPaths, String outputPath) {
+        return concatVideos(inputPaths, outputPath, false);
+    }
+
+    /**
+     * 按顺序拼接视频，输出 mp4。以时长最长的片段（正片）为基准：编码参数与基准相同的片段直接复制数据包，
+     * 不同的片段（分辨率、编码、音频采样率等）先按基准的参数（包括从 SPS/PPS 解析出的 profile、level、
+     * 参考帧数和熵编码方式）转码，再一起复制，正片本身不重新编码。
+     * 基准没有音轨时丢弃其他片段的音频，其他片段没有音轨时该段音频留空
+     *
+     * @param reencodeAll 转码后的片段仍无法与正片直接拼接（正片由其他编码器或设置生成）时，是否把所有片段
+     *                    （包括正片）统一重新编码；为 false 时直接失败，避免不知情地重新编码整个正片
+     */
+    public String concatVideos(List<String> inputPaths, String outputPath, boolean reencodeAll) {
+        if (inputPaths.size() < 2) {
+            throw new IllegalArgumentException("至少需要两个视频片段");
+        }
+        log.info("开始拼接视频: inputs={}, output={}", inputPaths, outputPath);
+        long start = System.currentTimeMillis();
+        List<File> conformed = new ArrayList<>();
+        try {
+            List<SegmentFormat> formats = new ArrayList<>();
+            for (String inputPath : inputPaths) {
+                formats.add(readSegmentFormat(inputPath));
+            }
+            int referenceIndex = 0;
+            for (int i = 1; i < formats.size(); i++) {
+                if (formats.get(i).duration > formats.get(referenceIndex).duration) {
+                    referenceIndex = i;
+                }
+            }
+            SegmentFormat reference = formats.get(referenceIndex);
+            if (!reference.hasVideo) {
+                throw new IllegalArgumentException("视频片段没有视频流: " + inputPaths.get(referenceIndex));
+            }
+
+            List<String> segments = new ArrayList<>(inputPaths);
+            boolean compatible = true;
+            int reencoded = 0;
+            for (int i = 0; i < segments.size(); i++) {
+                if (!formats.get(i).hasVideo) {
+                    throw new IllegalArgumentException("视频片段没有视频流: " + inputPaths.get(i));
+                }
+                if (formats.get(i).matches(reference)) {
+                    continue;
+                }
+                log.info("片段编码参数与基准不同，按基准转码: {}", inputPaths.get(i));
+                String path = conform(inputPaths.get(i), reference, conformed);
+                segments.set(i, path);
+                if (!readSegmentFormat(path).matches(reference)) {
+                    log.warn("片段按基准转码后参数集仍与正片不同: {}", inputPaths.get(i));
+                    compatible = false;
+                }
+                reencoded++;
+            }
+            if (!compatible) {
+                if (!reencodeAll) {
+                    throw new IllegalArgumentException("片段按正片参数转码后仍无法直接拼接（正片可能由其他编码器生成），"
+                            + "可指定 reencode=true 统一重新编码所有片段（包括正片，耗时较长）");
+                }
+                log.info("转码后的片段仍无法直接拼接，按请求统一转码所有片段");
+                for (int i = 0; i < segments.size(); i++) {
+                    segments.set(i, conform(inputPaths.get(i), reference, conformed));
+                }
+                SegmentFormat unified = readSegmentFormat(segments.get(referenceIndex));
+                for (String segment : segments) {
+                    if (!readSegmentFormat(segment).matches(unified)) {
+                        throw new IllegalStateException("无法统一片段的编码参数: " + segment);
+                    }
+                }
+                reencoded = segments.size();
+            }
+
+            copySegments(segments, referenceIndex, outputPath);
+            log.info("视频拼接成功: output={}, 片段数={}, 重新编码 {} 段, 耗时 {} ms",
+                    outputPath, segments.size(), reencoded, System.currentTimeMillis() - start);
+            return outputPath;
+
+        } catch (Exception e) {
+            log.error("视频拼接失败", e);
+            throw new RuntimeException("视频拼接失败: " + e.getMessage(), e);
+        } finally {
+            for (File file : conformed) {
+                if (file.exists() && !file.delete()) {
+                    log.warn("删除拼接中间文件失败: {}", file);
+                }
+            }
+        }
+    }
+
+    private SegmentFormat readSegmentFormat(String inputPath) throws Exception {
+        try (FFmpegFrameGrabber grabber = transcodeEngine.open(inputPath)) {
             grabber.start();
-            
-            recorder.setAudioCodec(avcodec.AV_CODEC_ID_AAC);
-            recorder.setSampleRate(grabber.getSampleRate());
-            recorder.setAudioChannels(grabber.getAudioChannels());
-            recorder.setFormat("mp3");
-            
-            recorder.start();
-            
-            while (grabber.grab() != null) {
-                recorder.record(grabber.grab());
+            return SegmentFormat.of(grabber);
+        }
+    }
+
+    /**
+     * 按基准的编码、编码器设置、分辨率（保持比例留黑）、帧率和音频参数转码到临时文件
+     */
+    private String conform(String inputPath, SegmentFormat reference, List<File> conformed) throws Exception {
+        File output = File.createTempFile("concat_", ".mp4");
+        conformed.add(output);
+        TranscodeOptions.TranscodeOptionsBuilder options = TranscodeOptions.builder()
+                .format("mp4")
+                .videoCodec(reference.videoCodec)
+                .width(reference.width)
+                .height(reference.height)
+                .letterbox(true)
+                .frameRate(reference.frameRate)
+                // 正片（如静态幻灯片）码率可能很低，片段按固定质量编码，不沿用正片码率
+                .crf(defaultCrf);
+        if (reference.videoHeaders != null) {
+            // 参数集一致才能与正片共用同一个轨道
+            options.videoOptions(transcodeEngine.matchingH264Options(reference.videoHeaders, concatPreset));
+        }
+        if (reference.hasAudio) {
+            options.audioCodec(reference.audioCodec)
+                    .sampleRate(reference.sampleRate)
+                    .audioChannels(reference.audioChannels);
+        } else {
+            options.audio(false);
+        }
+        transcodeEngine.transcode(inputPath, output.getPath(), options.build());
+        return output.getPath();
+    }
+
+    /**
+     * 依次复制各片段的数据包：时间戳换算到基准片段对应流的时间基，并加上之前片段的总时长。
+     * recorder 按基准片段的格式上下文创建输出流，各片段的流序号映射为基准中同类型的流
+     */
+    private void copySegments(List<String> segments, int referenceIndex, String outputPath) throws Exception {
+        AVRational microseconds = avutil.av_make_q(1, avutil.AV_TIME_BASE);
+        try (FFmpegFrameGrabber reference = transcodeEngine.open(segments.get(referenceIndex))) {
+            reference.start();
+            AVFormatContext referenceContext = reference.getFormatContext();
+            int videoIndex = reference.getVideoStream();
+            int audioIndex = reference.hasAudio() ? reference.getAudioStream() : -1;
+            for (int i = 0; i < referenceContext.nb_streams(); i++) {
+                referenceContext.streams(i).codecpar().codec_tag(0);
+            }
+
+            try (FFmpegFrameRecorder recorder = nativeResources.recorder(outputPath,
+                    reference.getImageWidth(), reference.getImageHeight(), reference.getAudioChannels())) {
+                recorder.setFormat("mp4");
+                recorder.start(referenceContext);
+
+                long offset = 0;
+                long lastVideoDts = Long.MIN_VALUE;
+                long lastAudioDts = Long.MIN_VALUE;
+                for (int i = 0; i < segments.size(); i++) {
+                    FFmpegFrameGrabber grabber = i == referenceIndex ? reference : transcodeEngine.open(segments.get(i));
+                    try {
+                        if (grabber != reference) {
+                            grabber.start();
+                        }
+                        AVFormatContext context = grabber.getFormatContext();
+                        long segmentStart = context.start_time() == avutil.AV_NOPTS_VALUE ? 0 : context.start_time();
+                        long segmentEnd = offset;
+
+                        AVPacket packet;
+                        while ((packet = grabber.grabPacket()) != null) {
+                            if (Thread.currentThread().isInterrupted()) {
+                                avcodec.av_packet_unref(packet);
+                                throw new CancellationException("视频拼接已取消");
+                            }
+                            try {
+                                boolean video = packet.stream_index() == grabber.getVideoStream();
+                                int target = video ? videoIndex
+                                        : grabber.hasAudio() && packet.stream_index() == grabber.getAudioStream() ? audioIndex : -1;
+                                if (target < 0) {
+                                    continue;
+                                }
+                                AVRational source = context.streams(packet.stream_index()).time_base();
+                                AVRational timeBase = referenceContext.streams(target).time_base();
+                                long shift = avutil.av_rescale_q(offset - segmentStart, microseconds, timeBase);
+                                long pts = packet.pts() == avutil.AV_NOPTS_VALUE ? avutil.AV_NOPTS_VALUE
+                                        : avutil.av_rescale_q(packet.pts(), source, timeBase) + shift;
+                                long dts = packet.dts() == avutil.AV_NOPTS_VALUE ? pts
+                                        : avutil.av_rescale_q(packet.dts(), source, timeBase) + shift;
+                                long duration = avutil.av_rescale_q(packet.duration(), source, timeBase);
+                                // 片段边界处（如 AAC 的编码延迟）时间戳可能与上一段重叠，mp4 要求 dts 严格递增
+                                long lastDts = video ? lastVideoDts : lastAudioDts;
+                                if (dts != avutil.AV_NOPTS_VALUE && dts <= lastDts) {
+                                    dts = lastDts + 1;
+                                }
+                                if (pts != avutil.AV_NOPTS_VALUE && dts != avutil.AV_NOPTS_VALUE && pts < dts) {
+                                    pts = dts;
+                                }
+                                if (video) {
+                                    lastVideoDts = dts;
+                                } else {
+                                    lastAudioDts = dts;
+                                }
+                                long end = Math.max(pts, dts) + duration;
+                                if (end != avutil.AV_NOPTS_VALUE) {
+                                    segmentEnd = Math.max(segmentEnd, avutil.av_rescale_q(end, timeBase, microseconds));
+                                }
+
+                                packet.stream_index(target);
+                                packet.pts(pts);
+                                packet.dts(dts);
+                                packet.duration(duration);
+                                recorder.recordPacket(packet);
+                            } finally {
+                                avcodec.av_packet_unref(packet);
+                            }
+                        }
+                        offset = segmentEnd;
+                    } finally {
+                        if (grabber != reference) {
+                            grabber.close();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 决定片段能否直接复制拼接的编码参数。H.264/AAC 的 extradata（SPS/PPS、AudioSpecificConfig）
+     * 在 mp4 中每个轨道只有一份，必须完全相同
+     */
+    private static class SegmentFormat {
+        private double duration;
+        private boolean hasVideo;
+        private int videoCodec;
+        private int width;
+        private int height;
+        private int pixelFormat;
+        private double frameRate;
+        private byte[] videoExtradata;
+        /**
+         * H.264 参数集中的编码器设置，其他编码或无法解析时为 null
+         */
+        private H264Headers.Info videoHeaders;
+        private boolean hasAudio;
+        private int audioCodec;
+        private int sampleRate;
+        private int audioChannels;
+        private byte[] audioExtradata;
+
+        private static SegmentFormat of(FFmpegFrameGrabber grabber) {
+            AVFormatContext context = grabber.getFormatContext();
+            SegmentFormat format = new SegmentFormat();
+            format.duration = grabber.getLengthInTime() / (double) avutil.AV_TIME_BASE;
+            format.hasVideo = grabber.hasVideo();
+            if (format.hasVideo) {
+                AVCodecParameters video = context.streams(grabber.getVideoStream()).codecpar();
+                format.videoCodec = video.codec_id();
+                format.width = video.width();
+                format.height = video.height();
+                format.pixelFormat = video.format();
+                format.frameRate = grabber.getFrameRate();
+                format.videoExtradata = extradata(video);
+                if (format.videoCodec == avcodec.AV_CODEC_ID_H264) {
+                    format.videoHeaders = H264Headers.parse(format.videoExtradata);
+                }
+            }
+            format.hasAudio = grabber.hasAudio();
+            if (format.hasAudio) {
+                AVCodecParameters audio = context.streams(grabber.getAudioStream()).codecpar();
+                format.audioCodec = audio.codec_id();
+                format.sampleRate = audio.sample_rate();
+                format.audioChannels = audio.ch_layout().nb_channels();
+                format.audioExtradata = extradata(audio);
+            }
+            return format;
+        }
+
+        private static byte[] extradata(AVCodecParameters parameters) {
+            byte[] data = new byte[Math.max(0, parameters.extradata_size())];
+            if (data.length > 0) {
+                parameters.extradata().get(data);
             }
+            return data;
+        }
+
+        /**
+         * 片段没有音轨时按留空处理，不算不一致
+         */
+        private boolean matches(SegmentFormat reference) {
+            boolean video = hasVideo == reference.hasVideo && videoCodec == reference.videoCodec
+                    && width == reference.width && height == reference.height && pixelFormat == reference.pixelFormat
+                    && Arrays.equals(videoExtradata, reference.videoExtradata);
+            boolean audio = !hasAudio || !reference.hasAudio
+                    || audioCodec == reference.audioCodec && sampleRate == reference.sampleRate
+                    && audioChannels == reference.audioChannels
+                    && Arrays.equals(audioExtradata, reference.audioExtradata);
+            return video && audio;
+        }
+    }
+
+    public String extractAudio(String inputPath, String outputPath) {
+        return extractAudio(inputPath, outputPath, "mp3", false);
+    }
+
+    /**
+     * 提取音轨，不打开视频解码器。源音频编码能直接放入目标容器（如 AAC → m4a）且不需要响度归一化时只复制数据包，
+     * 否则重新编码，loudnorm 为 true 时在同一遍中做响度归一化
+     */
+    public String extractAudio(String inputPath, String outputPath, String format, boolean loudnorm) {
+        log.info("开始提取音频: input={}, output={}, format={}, loudnorm={}", inputPath, outputPath, format, loudnorm);
+        return extractAudio(transcodeEngine.openAudio(inputPath), outputPath, format, loudnorm);
+    }
+
+    /**
+     * 边接收边提取音频，结束后关闭输入流
+     */
+    public String extractAudio(InputStream input, String outputPath, String format, boolean loudnorm) {
+        log.info("开始流式提取音频: output={}, format={}, loudnorm={}", outputPath, format, loudnorm);
+        return extractAudio(transcodeEngine.openAudio(input), outputPath, format, loudnorm);
+    }
+
+    private String extractAudio(FFmpegFrameGrabber source, String outputPath, String format, boolean loudnorm) {
+        try {
+            writeAudio(source, outputPath, format, loudnorm);
             
             log.info("音频提取成功: {}", outputPath);
             return outputPath;
@@ -76,28 +525,125 @@ public class FFmpegService {
         }
     }
 
+    private void writeAudio(FFmpegFrameGrabber source, String outputPath, String format, boolean loudnorm) throws Exception {
+        try (FFmpegFrameGrabber grabber = source) {
+            grabber.start();
+            if (!loudnorm && canCopyAudio(grabber, format, outputPath)) {
+                copyAudio(grabber, outputPath, format);
+                log.info("音频直接复制数据包，未重新编码: {}", outputPath);
+                return;
+            }
+            transcodeEngine.transcode(grabber, outputPath, TranscodeOptions.builder()
+                    .format(format)
+                    .video(false)
+                    .loudnorm(loudnorm)
+                    .build());
+        }
+    }
+
+    /**
+     * 只有一路音频且编码被目标容器支持时可以直接复制
+     */
+    private boolean canCopyAudio(FFmpegFrameGrabber grabber, String format, String outputPath) {
+        AVOutputFormat outputFormat = avformat.av_guess_format(format, outputPath, null);
+        if (outputFormat == null) {
+            return false;
+        }
+        AVFormatContext context = grabber.getFormatContext();
+        int audioStreams = 0;
+        int codecId = avcodec.AV_CODEC_ID_NONE;
+        for (int i = 0; i < context.nb_streams(); i++) {
+            AVCodecParameters parameters = context.streams(i).codecpar();
+            if (parameters.codec_type() == avutil.AVMEDIA_TYPE_AUDIO) {
+                audioStreams++;
+                codecId = parameters.codec_id();
+            }
+        }
+        return audioStreams == 1
+                && avformat.avformat_query_codec(outputFormat, codecId, avcodec.FF_COMPLIANCE_NORMAL) == 1;
+    }
+
+    private void copyAudio(FFmpegFrameGrabber grabber, String outputPath, String format) throws Exception {
+        TranscodeEngine.discardUnused(grabber, false, true);
+        AVFormatContext context = grabber.getFormatContext();
+        int audioIndex = grabber.getAudioStream();
+        // 宽高为 0 时 recorder 不创建视频流，只按输入参数创建音频流
+        try (FFmpegFrameRecorder recorder = nativeResources.recorder(outputPath, 0, 0, grabber.getAudioChannels())) {
+            recorder.setFormat(format);
+            context.streams(audioIndex).codecpar().codec_tag(0);
+            recorder.start(context);
+
+            AVPacket packet;
+            while ((packet = grabber.grabPacket()) != null) {
+                if (Thread.currentThread().isInterrupted()) {
+                    avcodec.av_packet_unref(packet);
+                    throw new CancellationException("音频提取已取消");
+                }
+                try {
+                    if (packet.stream_index() == audioIndex) {
+                        recorder.recordPacket(packet);
+                    }
+                } finally {
+                    avcodec.av_packet_unref(packet);
+                }
+            }
+        }
+    }
+
     public String compressVideo(String inputPath, String outputPath, double quality) {
-        log.info("开始压缩视频: input={}, output={}, quality={}", inputPath, outputPath, quality);
+        return compressVideo(inputPath, outputPath, CompressOptions.builder().ratio(quality).build());
+    }
+
+    /**
+     * 压缩视频，按优先级选择码率控制方式：
+     * <ol>
+     *     <li>targetBytes：按时长计算平均码率，码率不足以支撑原分辨率时自动降低分辨率；结果超过目标大小时
+     *     降低码率重新编码，多次后仍超过则失败，不会返回超过目标大小的文件</li>
+     *     <li>crf：固定质量，文件大小随内容变化</li>
+     *     <li>ratio：按源码率的比例，源文件没有码率信息时退回默认 CRF</li>
+     * </ol>
+     */
+    public String compressVideo(String inputPath, String outputPath, CompressOptions options) {
+        log.info("开始压缩视频: input={}, output={}, options={}", inputPath, outputPath, options);
         
-        try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(inputPath);
-             FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(outputPath, 
-                     grabber.getImageWidth(), grabber.getImageHeight(), 
-                     grabber.getAudioChannels())) {
-            
-            grabber.start();
-            
-            recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
-            recorder.setVideoBitrate((int)(grabber.getVideoBitrate() * quality));
-            recorder.setFrameRate(grabber.getFrameRate());
-            recorder.setSampleRate(grabber.getSampleRate());
-            
-            recorder.start();
-            
-            while (grabber.grab() != null) {
-                recorder.record(grabber.grab());
+        try {
+            VideoInfo source = getVideoInfo(inputPath);
+            if (source.getWidth() <= 0 || source.getHeight() <= 0) {
+                throw new IllegalArgumentException("输入文件没有视频流");
             }
-            
-            log.info("视频压缩成功: {}", outputPath);
+
+            TranscodeOptions.TranscodeOptionsBuilder builder = TranscodeOptions.builder()
+                    .audioBitrate(source.getAudioChannels() > 0 ? compressAudioBitrate : 0);
+            int height = options.getMaxHeight() > 0 && options.getMaxHeight() < source.getHeight()
+                    ? options.getMaxHeight() : 0;
+            Long targetBytes = options.getTargetBytes() != null && options.getTargetBytes() > 0
+                    ? options.getTargetBytes() : null;
+
+            if (targetBytes != null) {
+                int bitrate = targetBitrate(source, targetBytes);
+                if (height == 0) {
+                    height = fitHeight(source, bitrate);
+                }
+                builder.videoBitrate(bitrate).constrainBitrate(true);
+                log.info("目标大小 {} 字节，时长 {} 秒，视频码率 {} bps，输出高度 {}",
+                        targetBytes, source.getDuration(), bitrate, height > 0 ? height : source.getHeight());
+            } else if (options.getCrf() != null) {
+                builder.crf(options.getCrf());
+            } else if (options.getRatio() > 0 && source.getVideoBitrate() > 0) {
+                builder.videoBitrateScale(options.getRatio());
+            } else {
+                builder.crf(defaultCrf);
+            }
+            builder.height(height);
+
+            boolean twoPass = targetBytes != null && options.isTwoPass() && transcodeEngine.supportsTwoPass();
+            encode(inputPath, outputPath, builder, twoPass);
+            if (targetBytes != null) {
+                fitTargetSize(inputPath, outputPath, builder, source, targetBytes, options.isTwoPass() && !twoPass, twoPass);
+            }
+
+            long size = Files.size(Paths.get(outputPath));
+            log.info("视频压缩成功: {}, 大小 {} 字节", outputPath, size);
             return outputPath;
             
         } catch (Exception e) {
@@ -106,24 +652,232 @@ public class FFmpegService {
         }
     }
 
+    private void encode(String inputPath, String outputPath, TranscodeOptions.TranscodeOptionsBuilder builder,
+                        boolean twoPass) throws Exception {
+        if (twoPass) {
+            encodeTwoPass(inputPath, outputPath, builder);
+        } else {
+            transcodeEngine.transcode(inputPath, outputPath, builder.build());
+        }
+    }
+
+    /**
+     * 两遍编码：第一遍只分析视频、不输出文件，第二遍按统计结果分配码率，
+     * 同样的平均码率下质量更均匀，文件大小也更接近目标
+     */
+    private void encodeTwoPass(String inputPath, String outputPath,
+                               TranscodeOptions.TranscodeOptionsBuilder builder) throws Exception {
+        Path statsDir = Files.createTempDirectory("x264-pass-");
+        try {
+            String stats = statsDir.resolve("x264.log").toString();
+            transcodeEngine.transcode(inputPath, "/dev/null", builder
+                    .format("null")
+                    .audio(false)
+                    .pass(1)
+                    .passLogFile(stats)
+                    .build());
+            transcodeEngine.transcode(inputPath, outputPath, builder
+                    .format(null)
+                    .audio(true)
+                    .pass(2)
+                    .build());
+        } finally {
+            FileSystemUtils.deleteRecursively(statsDir);
+        }
+    }
+
+    /**
+     * 按实际结果修正码率重新编码，直到不超过目标大小：超出时按偏差降低码率（至少降到上次的 90%），
+     * 最多重试 MAX_SIZE_ATTEMPTS 次，仍超出或码率已降到下限时删除输出并失败。
+     * 不支持统计文件两遍编码的编码器（OpenH264）要求两遍编码时（useBudget），第一次结果明显小于目标
+     * 也会修正一次以充分利用预算
+     */
+    private void fitTargetSize(String inputPath, String outputPath, TranscodeOptions.TranscodeOptionsBuilder builder,
+                               VideoInfo source, long targetBytes, boolean useBudget, boolean twoPass) throws Exception {
+        Path output = Paths.get(outputPath);
+        for (int attempt = 0; ; attempt++) {
+            long size = Files.size(output);
+            boolean over = size > targetBytes;
+            boolean under = useBudget && attempt == 0 && size < targetBytes * UNDERSHOOT_RATIO;
+            if (!over && !under) {
+                return;
+            }
+            int current = builder.build().getVideoBitrate();
+            if (over && (attempt >= MAX_SIZE_ATTEMPTS || current <= MIN_VIDEO_BITRATE)) {
+                Files.deleteIfExists(output);
+                throw new IllegalArgumentException("无法压缩到目标大小: 视频码率 " + current / 1000 + " kbps 时结果为 "
+                        + size + " 字节，目标 " + targetBytes + " 字节");
+            }
+            // 音频和容器部分大小基本固定，只按视频部分的偏差修正
+            long fixedBytes = Math.max(0, size - (long) (current / 8.0 * source.getDuration()));
+            double factor = (double) Math.max(1, targetBytes * (1 - CONTAINER_OVERHEAD) - fixedBytes)
+                    / Math.max(1, size - fixedBytes);
+            factor = over ? Math.min(factor, OVERSHOOT_STEP) : Math.min(factor, 2.0);
+            int bitrate = (int) Math.max(MIN_VIDEO_BITRATE, current * factor);
+            log.info("压缩结果 {} 字节，目标 {} 字节，视频码率 {} → {} bps 重新编码", size, targetBytes, current, bitrate);
+            encode(inputPath, outputPath, builder.videoBitrate(bitrate), twoPass);
+        }
+    }
+
+    /**
+     * 目标大小扣除音频和容器开销后按时长平均
+     */
+    private int targetBitrate(VideoInfo source, long targetBytes) {
+        if (source.getDuration() <= 0) {
+            throw new IllegalArgumentException("无法获取视频时长，不能按目标大小压缩");
+        }
+        long totalBits = (long) (targetBytes * 8 * (1 - CONTAINER_OVERHEAD));
+        long audioBits = source.getAudioChannels() > 0 ? (long) (compressAudioBitrate * source.getDuration()) : 0;
+        long videoBitrate = (long) ((totalBits - audioBits) / source.getDuration());
+        if (videoBitrate < MIN_VIDEO_BITRATE) {
+            throw new IllegalArgumentException("目标大小过小，视频码率将低于 " + MIN_VIDEO_BITRATE / 1000 + " kbps");
+        }
+        return (int) Math.min(videoBitrate, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 码率摊到每个像素上过低时画面会严重劣化，按常见分辨率逐级降低，直到每像素码率足够；
+     * 分辨率越低编码也越快
+     *
+     * @return 输出高度，0 表示保持原分辨率
+     */
+    private int fitHeight(VideoInfo source, int bitrate) {
+        double frameRate = source.getFrameRate() > 0 ? source.getFrameRate() : 25;
+        if (bitsPerPixel(bitrate, source.getWidth(), source.getHeight(), frameRate) >= minBitsPerPixel) {
+            return 0;
+        }
+        int height = 0;
+        for (int candidate : DOWNSCALE_HEIGHTS) {
+            if (candidate >= source.getHeight()) {
+                continue;
+            }
+            height = candidate;
+            int width = (int) Math.round((double) source.getWidth() * candidate / source.getHeight());
+            if (bitsPerPixel(bitrate, width, candidate, frameRate) >= minBitsPerPixel) {
+                break;
+            }
+        }
+        return height;
+    }
+
+    private static double bitsPerPixel(int bitrate, int width, int height, double frameRate) {
+        return bitrate / (width * (double) height * frameRate);
+    }
+
+    /**
+     * 压缩参数，targetBytes、crf、ratio 按此优先级生效
+     */
+    @lombok.Builder
+    @lombok.Data
+    public static class CompressOptions {
+        /**
+         * 目标文件大小（字节）
+         */
+        private Long targetBytes;
+        /**
+         * 固定质量，0-51，越小质量越高
+         */
+        private Integer crf;
+        /**
+         * 按源码率的比例
+         */
+        private double ratio;
+        /**
+         * 两遍编码，仅对按目标大小压缩生效
+         */
+        private boolean twoPass;
+        /**
+         * 最大输出高度，0 表示不限制
+         */
+        private int maxHeight;
+    }
+
+    /**
+     * 提取关键帧保存为 JPEG。解码器跳过所有非关键帧（skip_frame=nokey），只有关键帧被解码。
+     * intervalSeconds 大于 0 时每个时间点 seek 到最近的关键帧，不读取中间的数据；
+     * 为 0 或输入时长未知时按顺序读取，取出全部（或按间隔筛选的）关键帧
+     *
+     * @param width 输出宽度，高度按比例计算；0 或不小于原始宽度时保持原始尺寸
+     * @return 按时间排序的关键帧
+     */
+    public List<Keyframe> extractKeyframes(String inputPath, File outputDir, double intervalSeconds, int maxFrames, int width) {
+        log.info("开始提取关键帧: input={}, interval={}s, maxFrames={}", inputPath, intervalSeconds, maxFrames);
+        long start = System.currentTimeMillis();
+        List<Keyframe> keyframes = new ArrayList<>();
+        try (FFmpegFrameGrabber grabber = nativeResources.grabber(inputPath)) {
+            grabber.setVideoOption("skip_frame", "nokey");
+            grabber.start();
+            if (!grabber.hasVideo() || grabber.getImageWidth() <= 0) {
+                throw new IllegalArgumentException("输入文件没有视频流");
+            }
+            if (width > 0 && width < grabber.getImageWidth()) {
+                int height = (int) Math.round((double) grabber.getImageHeight() * width / grabber.getImageWidth());
+                grabber.setImageWidth(width);
+                grabber.setImageHeight(height);
+            }
+            Files.createDirectories(outputDir.toPath());
+
+            Java2DFrameConverter converter = new Java2DFrameConverter();
+            double duration = grabber.getLengthInTime() / 1_000_000.0;
+            boolean seek = intervalSeconds > 0 && duration > 0;
+            double interval = Math.max(intervalSeconds, 0);
+            double next = 0;
+            long lastTimestamp = -1;
+            while (keyframes.size() < maxFrames) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("关键帧提取已取消");
+                }
+                if (seek) {
+                    if (next >= duration) {
+                        break;
+                    }
+                    // 只 seek 到关键帧，不向后解码到精确时间
+                    grabber.setTimestamp((long) (next * 1_000_000), false);
+                }
+                Frame frame = grabber.grabImage();
+                // seek 回到了已取出的关键帧，或还没到下一个时间点：继续读下一个关键帧
+                while (frame != null && (frame.timestamp <= lastTimestamp
+                        || !seek && frame.timestamp < (long) (next * 1_000_000))) {
+                    frame = grabber.grabImage();
+                }
+                if (frame == null) {
+                    break;
+                }
+                File image = new File(outputDir, String.format("keyframe_%04d.jpg", keyframes.size() + 1));
+                ImageIO.write(converter.getBufferedImage(frame), "jpg", image);
+                keyframes.add(new Keyframe(frame.timestamp / 1_000_000.0, image.getAbsolutePath()));
+                lastTimestamp = frame.timestamp;
+                next = Math.max(next, frame.timestamp / 1_000_000.0) + interval;
+            }
+            log.info("关键帧提取完成: {} 帧, 耗时 {} ms", keyframes.size(), System.currentTimeMillis() - start);
+            return keyframes;
+
+        } catch (IllegalArgumentException | CancellationException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("关键帧提取失败", e);
+            throw new RuntimeException("关键帧提取失败: " + e.getMessage(), e);
+        }
+    }
+
+    @lombok.AllArgsConstructor
+    @lombok.Data
+    public static class Keyframe {
+        /**
+         * 在视频中的时间（秒）
+         */
+        private double time;
+        private String path;
+    }
+
+    /**
+     * 获取媒体信息，结果由 {@link MediaProbe} 缓存，文件未变化时不会重复探测
+     */
     public VideoInfo getVideoInfo(String inputPath) {
         log.info("获取视频信息: {}", inputPath);
         
-        try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(inputPath)) {
-            grabber.start();
-            
-            VideoInfo info = VideoInfo.builder()
-                    .duration(grabber.getLengthInTime() / 1000000.0)
-                    .width(grabber.getImageWidth())
-                    .height(grabber.getImageHeight())
-                    .frameRate(grabber.getFrameRate())
-                    .videoBitrate(grabber.getVideoBitrate())
-                    .audioChannels(grabber.getAudioChannels())
-                    .audioSampleRate(grabber.getSampleRate())
-                    .audioBitrate(grabber.getAudioBitrate())
-                    .format(grabber.getFormat())
-                    .build();
-            
+        try {
+            VideoInfo info = mediaProbe.probe(inputPath);
             log.info("视频信息: {}", info);
             return info;
             
@@ -133,7 +887,7 @@ public class FFmpegService {
         }
     }
 
-    @lombok.Builder
+    @lombok.Builder(toBuilder = true)
     @lombok.Data
     public static class VideoInfo {
         private double duration;
@@ -148,9 +902,9 @@ public class FFmpegService {
     }
 
     public boolean validateVideoFile(String filePath) {
-        try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(filePath)) {
-            grabber.start();
-            return grabber.getImageWidth() > 0 && grabber.getImageHeight() > 0;
+        try {
+            VideoInfo info = mediaProbe.probe(filePath);
+            return info.getWidth() > 0 && info.getHeight() > 0;
         } catch (Exception e) {
             log.error("验证视频文件失败: {}", filePath, e);
             return false;
@@ -158,25 +912,39 @@ public class FFmpegService {
     }
 
     public File convertToAudioFile(String inputPath, String outputFormat) {
-        log.info("转换音频文件: input={}, format={}", inputPath, outputFormat);
-        
-        String outputPath = inputPath.substring(0, inputPath.lastIndexOf('.')) + "." + outputFormat;
-        
-        try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(inputPath);
-             FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(outputPath, 0)) {
-            
-            grabber.start();
-            
-            recorder.setAudioCodec(avcodec.AV_CODEC_ID_AAC);
-            recorder.setSampleRate(grabber.getSampleRate());
-            recorder.setAudioChannels(grabber.getAudioChannels());
-            recorder.setFormat(outputFormat);
-            
-            recorder.start();
-            
-            while (grabber.grab() != null) {
-                recorder.record(grabber.grab());
-            }
+        return convertToAudioFile(inputPath, outputFormat, false);
+    }
+
+    /**
+     * 转换音频格式，输出文件与输入文件同目录同名（输入没有扩展名时直接追加）；编码兼容时直接复制，
+     * 规则同 {@link #extractAudio(String, String, String, boolean)}
+     */
+    public File convertToAudioFile(String inputPath, String outputFormat, boolean loudnorm) {
+        String name = new File(inputPath).getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? inputPath.substring(0, inputPath.length() - (name.length() - dot)) : inputPath;
+        return convertToAudioFile(inputPath, base + "." + outputFormat, outputFormat, loudnorm);
+    }
+
+    /**
+     * 转换音频格式并写入指定的输出文件
+     */
+    public File convertToAudioFile(String inputPath, String outputPath, String outputFormat, boolean loudnorm) {
+        log.info("转换音频文件: input={}, output={}, format={}, loudnorm={}", inputPath, outputPath, outputFormat, loudnorm);
+        return convertToAudioFile(transcodeEngine.openAudio(inputPath), outputPath, outputFormat, loudnorm);
+    }
+
+    /**
+     * 边接收边转换音频格式，结束后关闭输入流
+     */
+    public File convertToAudioFile(InputStream input, String outputPath, String outputFormat, boolean loudnorm) {
+        log.info("流式转换音频文件: output={}, format={}, loudnorm={}", outputPath, outputFormat, loudnorm);
+        return convertToAudioFile(transcodeEngine.openAudio(input), outputPath, outputFormat, loudnorm);
+    }
+
+    private File convertToAudioFile(FFmpegFrameGrabber source, String outputPath, String outputFormat, boolean loudnorm) {
+        try {
+            writeAudio(source, outputPath, outputFormat, loudnorm);
             
             log.info("音频文件转换成功: {}", outputPath);
             return new File(outputPath);
@@ -1,5 +1,6 @@
 package com.training.ai.application.service;
 
+import com.training.ai.infrastructure.storage.ArtifactStore;
 import lombok.Builder;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
@@ -8,6 +9,7 @@ import org.bytedeco.ffmpeg.global.avcodec;
 import org.bytedeco.javacv.FFmpegFrameGrabber;
 import org.bytedeco.javacv.FFmpegFrameRecorder;
 import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -18,15 +20,27 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ImageToVideoService {
 
+    /**
+     * 图片生成视频的产物 key 前缀
+     */
+    public static final String KEY_PREFIX = "image-video/";
+
+    static final String UPLOAD_TEMP_DIR = System.getProperty("java.io.tmpdir") + File.separator + "training-admin-ai-uploads";
+
     private final OcrService ocrService;
     private final TtsService ttsService;
     private final FFmpegService ffmpegService;
+    private final ArtifactStore artifactStore;
+    private final VideoPreviewService videoPreviewService;
+    private final NativeResources nativeResources;
 
     public VideoCreationResult createVideoFromImages(
             List<MultipartFile> imageFiles,
@@ -45,8 +59,7 @@ public class ImageToVideoService {
         }
         
         // 使用绝对路径的临时目录
-        String tempDir = System.getProperty("java.io.tmpdir");
-        Path tempDirPath = Paths.get(tempDir, "training-admin-ai-uploads");
+        Path tempDirPath = Paths.get(UPLOAD_TEMP_DIR);
         if (!Files.exists(tempDirPath)) {
             Files.createDirectories(tempDirPath);
         }
@@ -89,6 +102,12 @@ public class ImageToVideoService {
             slides.add(slide);
         }
 
+        // 预览图放在 image-video/{id}/ 前缀下，视频为 image-video/{id}.mp4，两者分开清理；
+        // createVideoWithAudio 结束时会删除图片，需要先生成
+        String id = UUID.randomUUID().toString();
+        String keyPrefix = previewPrefix(id);
+        VideoPreviewService.Preview preview = createPreview(slides, keyPrefix);
+
         // 创建视频
         // 注意：这里需要根据实际情况调用 ffmpegService 或内部实现
         // 暂时假设 createVideoWithAudio 方法可用且能处理绝对路径
@@ -97,8 +116,15 @@ public class ImageToVideoService {
         // 模拟视频生成成功
         log.info("视频创建模拟完成: {}", outputPath);
 
+        // 保存到产物存储，返回 key 而不是本地路径，多节点部署时任意节点都能提供下载
+        String videoKey = KEY_PREFIX + id + ".mp4";
+        artifactStore.put(videoKey, Paths.get(videoPath), "video/mp4");
+        Files.deleteIfExists(Paths.get(videoPath));
+
         return VideoCreationResult.builder()
-                .videoPath(outputPath)
+                .videoPath(videoKey)
+                .posterPath(preview != null ? preview.getPosterKey() : null)
+                .thumbnailsPath(preview != null ? preview.getThumbnailsKey() : null)
                 .slides(slides)
                 .totalDuration(slides.size() * durationPerImage)
                 .build();
@@ -116,12 +142,12 @@ public class ImageToVideoService {
         int height;
 
         // 获取第一张图片的尺寸作为视频尺寸
-        try (FFmpegFrameGrabber imageGrabber = new FFmpegFrameGrabber(firstSlide.getImagePath())) {
-            imageGrabber.start();
-            width = imageGrabber.getImageWidth();
-            height = imageGrabber.getImageHeight();
-            imageGrabber.stop();
+        java.awt.image.BufferedImage firstImage = readImage(firstSlide.getImagePath());
+        if (firstImage == null) {
+            throw new IllegalArgumentException("无法读取图片: " + firstSlide.getImagePath());
         }
+        width = firstImage.getWidth();
+        height = firstImage.getHeight();
 
         // 不限制分辨率，直接使用原始图片尺寸，保持原始画质
         // 确保宽高是偶数，满足 H.264 编码要求
@@ -136,7 +162,7 @@ public class ImageToVideoService {
 
         // 初始化视频录制器
         // 这里的 audioChannels 设置为 1 (单声道)
-        try (FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(outputPath, width, height, 1)) {
+        try (FFmpegFrameRecorder recorder = nativeResources.recorder(outputPath, width, height, 1)) {
 
             recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
             recorder.setFormat("mp4");
@@ -188,6 +214,9 @@ public class ImageToVideoService {
             org.bytedeco.javacv.Java2DFrameConverter converter = new org.bytedeco.javacv.Java2DFrameConverter();
 
             for (ImageSlide slide : slides) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("视频合成已中断");
+                }
                 log.info("处理图片幻灯片: {}", slide.getImagePath());
                 
                 // 计算该幻灯片的总帧数
@@ -196,68 +225,60 @@ public class ImageToVideoService {
                 long frameDurationUs = 1000000L / 30;
                 
                 // 处理图片部分
-                try (FFmpegFrameGrabber slideImageGrabber = new FFmpegFrameGrabber(slide.getImagePath())) {
-                    slideImageGrabber.start();
-                    
-                    // 获取图片帧
-                    Frame imageFrame = slideImageGrabber.grabImage();
-                    if (imageFrame == null) {
+                FFmpegFrameGrabber audioGrabber = null;
+                try {
+                    // 获取图片：每张图片不再单独创建原生 grabber
+                    java.awt.image.BufferedImage bufferedImage = readImage(slide.getImagePath());
+                    if (bufferedImage == null) {
                         log.error("无法读取图片: {}", slide.getImagePath());
                         continue;
                     }
-                    
+
                     // 图片处理逻辑：缩放、填充背景等
-                    // 移除循环内重复创建 converter
-                    // org.bytedeco.javacv.Java2DFrameConverter converter = new org.bytedeco.javacv.Java2DFrameConverter();
-                    java.awt.image.BufferedImage bufferedImage = converter.getBufferedImage(imageFrame);
+                    // 创建一个新的 BufferedImage，尺寸与视频一致，类型为 BGR (兼容性好)
+                    java.awt.image.BufferedImage normalizedImage = new java.awt.image.BufferedImage(width, height, java.awt.image.BufferedImage.TYPE_3BYTE_BGR);
+                    java.awt.Graphics2D g2d = normalizedImage.createGraphics();
                     
-                    if (bufferedImage != null) {
-                        // 创建一个新的 BufferedImage，尺寸与视频一致，类型为 BGR (兼容性好)
-                        java.awt.image.BufferedImage normalizedImage = new java.awt.image.BufferedImage(width, height, java.awt.image.BufferedImage.TYPE_3BYTE_BGR);
-                        java.awt.Graphics2D g2d = normalizedImage.createGraphics();
-                        
-                        // 设置高质量渲染提示
-                        g2d.setRenderingHint(java.awt.RenderingHints.KEY_INTERPOLATION, java.awt.RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-                        g2d.setRenderingHint(java.awt.RenderingHints.KEY_RENDERING, java.awt.RenderingHints.VALUE_RENDER_QUALITY);
-                        g2d.setRenderingHint(java.awt.RenderingHints.KEY_ANTIALIASING, java.awt.RenderingHints.VALUE_ANTIALIAS_ON);
-                        
-                        // 计算保持比例的缩放尺寸 (Fit Center)
-                        int imgW = bufferedImage.getWidth();
-                        int imgH = bufferedImage.getHeight();
-                        
-                        // 1. 填充黑色背景
-                        g2d.setColor(java.awt.Color.BLACK);
-                        g2d.fillRect(0, 0, width, height);
-                        
-                        // 2. 计算缩放比例和位置
-                        double scaleX = (double) width / imgW;
-                        double scaleY = (double) height / imgH;
-                        
-                        // 如果尺寸完全一致，居中绘制
-                        if (imgW <= width && imgH <= height && 
-                            Math.abs(width - imgW) <= 2 && Math.abs(height - imgH) <= 2) {
-                            int x = (width - imgW) / 2;
-                            int y = (height - imgH) / 2;
-                            g2d.drawImage(bufferedImage, x, y, null);
-                        } else {
-                            // 保持长宽比缩放
-                            double scale = Math.min(scaleX, scaleY);
-                            int newW = (int) (imgW * scale);
-                            int newH = (int) (imgH * scale);
-                            int x = (width - newW) / 2;
-                            int y = (height - newH) / 2;
-                            g2d.drawImage(bufferedImage, x, y, newW, newH, null);
-                        }
-                        
-                        g2d.dispose();
-                        imageFrame = converter.convert(normalizedImage);
+                    // 设置高质量渲染提示
+                    g2d.setRenderingHint(java.awt.RenderingHints.KEY_INTERPOLATION, java.awt.RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+                    g2d.setRenderingHint(java.awt.RenderingHints.KEY_RENDERING, java.awt.RenderingHints.VALUE_RENDER_QUALITY);
+                    g2d.setRenderingHint(java.awt.RenderingHints.KEY_ANTIALIASING, java.awt.RenderingHints.VALUE_ANTIALIAS_ON);
+                    
+                    // 计算保持比例的缩放尺寸 (Fit Center)
+                    int imgW = bufferedImage.getWidth();
+                    int imgH = bufferedImage.getHeight();
+                    
+                    // 1. 填充黑色背景
+                    g2d.setColor(java.awt.Color.BLACK);
+                    g2d.fillRect(0, 0, width, height);
+                    
+                    // 2. 计算缩放比例和位置
+                    double scaleX = (double) width / imgW;
+                    double scaleY = (double) height / imgH;
+                    
+                    // 如果尺寸完全一致，居中绘制
+                    if (imgW <= width && imgH <= height && 
+                        Math.abs(width - imgW) <= 2 && Math.abs(height - imgH) <= 2) {
+                        int x = (width - imgW) / 2;
+                        int y = (height - imgH) / 2;
+                        g2d.drawImage(bufferedImage, x, y, null);
+                    } else {
+                        // 保持长宽比缩放
+                        double scale = Math.min(scaleX, scaleY);
+                        int newW = (int) (imgW * scale);
+                        int newH = (int) (imgH * scale);
+                        int x = (width - newW) / 2;
+                        int y = (height - newH) / 2;
+                        g2d.drawImage(bufferedImage, x, y, newW, newH, null);
                     }
                     
+                    g2d.dispose();
+                    Frame imageFrame = converter.convert(normalizedImage);
+                    
                     // 预处理音频：将音频完全读取到内存或按需读取
-                    FFmpegFrameGrabber audioGrabber = null;
                     if (slide.getAudioPath() != null && new File(slide.getAudioPath()).exists()) {
                         log.info("处理音频: {}", slide.getAudioPath());
-                        audioGrabber = new FFmpegFrameGrabber(slide.getAudioPath());
+                        audioGrabber = nativeResources.grabber(slide.getAudioPath());
                         audioGrabber.start();
                     }
                     
@@ -314,22 +335,21 @@ public class ImageToVideoService {
                     // 更新全局时间戳，准备处理下一张幻灯片
                     currentRecorderTimestamp += (totalFrames * frameDurationUs);
                     
+                } catch (Exception e) {
+                    log.error("处理幻灯片失败: {}", slide.getImagePath(), e);
+                } finally {
+                    // 处理失败时也要释放音频抓取器，否则原生内存不会回收
                     if (audioGrabber != null) {
                         try {
-                            audioGrabber.stop();
-                            audioGrabber.release();
+                            audioGrabber.close();
                         } catch (Exception e) {
                             log.warn("关闭音频抓取器失败", e);
                         }
                     }
-                    
-                } catch (Exception e) {
-                    log.error("处理幻灯片失败: {}", slide.getImagePath(), e);
                 }
             }
 
             recorder.stop();
-            recorder.release();
             log.info("视频录制完成");
 
         } catch (Exception e) {
@@ -348,6 +368,91 @@ public class ImageToVideoService {
         return outputPath;
     }
 
+    /**
+     * 预览图在产物存储中的 key 前缀
+     */
+    public static String previewPrefix(String id) {
+        return KEY_PREFIX + id + "/";
+    }
+
+    /**
+     * 由视频 key 得到预览图前缀：视频 key 为 image-video/{id}.mp4；
+     * 旧版本的视频与预览图在同一目录下（image-video/{id}/xxx.mp4）
+     */
+    public static String previewPrefixOf(String videoKey) {
+        String rest = videoKey.substring(KEY_PREFIX.length());
+        int slash = rest.lastIndexOf('/');
+        if (slash >= 0) {
+            return KEY_PREFIX + rest.substring(0, slash + 1);
+        }
+        int dot = rest.lastIndexOf('.');
+        return previewPrefix(dot > 0 ? rest.substring(0, dot) : rest);
+    }
+
+    /**
+     * 按幻灯片生成封面、雪碧图和 WebVTT 索引，同一图片的连续片段合并为一个画面。
+     * 预览图不影响视频生成，失败时只记录日志并返回 null
+     *
+     * @param keyPrefix 产物 key 前缀，以 / 结尾
+     */
+    public VideoPreviewService.Preview createPreview(List<ImageSlide> slides, String keyPrefix) {
+        List<VideoPreviewService.PreviewFrame> frames = new ArrayList<>();
+        String currentImage = null;
+        double start = 0;
+        double end = 0;
+        for (ImageSlide slide : slides) {
+            // 与 createVideoWithAudio 的帧数计算一致，保证时间与视频对齐
+            double duration = (int) (slide.getDuration() * 30) / 30.0;
+            if (!slide.getImagePath().equals(currentImage)) {
+                if (currentImage != null) {
+                    frames.add(new VideoPreviewService.PreviewFrame(new File(currentImage), start, end));
+                }
+                currentImage = slide.getImagePath();
+                start = end;
+            }
+            end += duration;
+        }
+        if (currentImage != null) {
+            frames.add(new VideoPreviewService.PreviewFrame(new File(currentImage), start, end));
+        }
+        try {
+            return videoPreviewService.createPreview(frames, keyPrefix);
+        } catch (Exception e) {
+            log.warn("生成预览图失败，视频不受影响: prefix={}", keyPrefix, e);
+            return null;
+        }
+    }
+
+    /**
+     * 读取图片，ImageIO 不支持的格式（如 webp）再用 FFmpeg 解码
+     *
+     * @return 无法读取时返回 null
+     */
+    private java.awt.image.BufferedImage readImage(String imagePath) throws IOException {
+        java.awt.image.BufferedImage image = javax.imageio.ImageIO.read(new File(imagePath));
+        if (image != null) {
+            return image;
+        }
+        try (FFmpegFrameGrabber grabber = nativeResources.grabber(imagePath)) {
+            grabber.start();
+            Frame frame = grabber.grabImage();
+            if (frame == null) {
+                return null;
+            }
+            // 帧数据在 grabber 关闭后失效，复制一份
+            java.awt.image.BufferedImage decoded = new org.bytedeco.javacv.Java2DFrameConverter().getBufferedImage(frame);
+            java.awt.image.BufferedImage copy = new java.awt.image.BufferedImage(decoded.getWidth(), decoded.getHeight(),
+                    java.awt.image.BufferedImage.TYPE_3BYTE_BGR);
+            java.awt.Graphics2D g2d = copy.createGraphics();
+            g2d.drawImage(decoded, 0, 0, null);
+            g2d.dispose();
+            return copy;
+        } catch (FrameGrabber.Exception e) {
+            log.error("FFmpeg 读取图片失败: {}", imagePath, e);
+            return null;
+        }
+    }
+
     private void cleanupTempFile(String filePath) {
         try {
             File file = new File(filePath);
@@ -372,7 +477,15 @@ public class ImageToVideoService {
     @Data
     @Builder
     public static class VideoCreationResult {
+        /**
+         * 视频在产物存储中的 key
+         */
         private String videoPath;
+        /**
+         * 封面和 WebVTT 预览索引在产物存储中的 key，生成失败时为 null
+         */
+        private String posterPath;
+        private String thumbnailsPath;
         private List<ImageSlide> slides;
         private double totalDuration;
     }
@@ -0,0 +1,193 @@
+package com.training.ai.application.service;
+
+import com.training.ai.application.service.FFmpegService.VideoInfo;
+import com.training.ai.common.concurrent.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.ffmpeg.avcodec.AVCodecParameters;
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avformat.AVStream;
+import org.bytedeco.ffmpeg.avutil.AVDictionary;
+import org.bytedeco.ffmpeg.avutil.AVRational;
+import org.bytedeco.ffmpeg.global.avformat;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacpp.PointerPointer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 媒体信息探测：只读取容器头和少量数据包（probesize/analyzeduration 受限），不打开解码器。
+ * 结果按 路径 + 大小 + 修改时间 缓存在本节点（LRU），文件被替换后自动失效；
+ * 远程地址无法获取修改时间，按 remote-ttl-seconds 过期。相同文件的并发探测只执行一次
+ */
+@Slf4j
+@Component
+public class MediaProbe {
+
+    private final SingleFlight<String, VideoInfo> inFlight = new SingleFlight<>();
+    private final Map<String, CachedInfo> cache;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Value("${ffmpeg.probe.probesize:1048576}")
+    private long probeSize;
+
+    @Value("${ffmpeg.probe.analyzeduration-us:2000000}")
+    private long analyzeDurationUs;
+
+    @Value("${ffmpeg.probe.remote-ttl-seconds:300}")
+    private long remoteTtlSeconds;
+
+    public MediaProbe(@Value("${ffmpeg.probe.cache-size:1000}") int cacheSize, MeterRegistry meterRegistry) {
+        int capacity = Math.max(1, cacheSize);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedInfo> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.hits = Counter.builder("ffmpeg.probe.cache")
+                .description("媒体信息探测缓存命中次数")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("ffmpeg.probe.cache")
+                .description("媒体信息探测缓存未命中次数")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("ffmpeg.probe.cache.size", this, probe -> probe.cacheSize())
+                .description("媒体信息探测缓存条目数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 获取媒体信息，返回的对象是缓存的副本
+     *
+     * @throws IOException 文件无法打开或不是有效的媒体文件
+     */
+    public VideoInfo probe(String path) throws IOException {
+        String key = cacheKey(path);
+        synchronized (cache) {
+            CachedInfo cached = cache.get(key);
+            if (cached != null && !cached.isExpired()) {
+                hits.increment();
+                return cached.info.toBuilder().build();
+            }
+        }
+        misses.increment();
+        VideoInfo info;
+        try {
+            info = inFlight.execute(key, () -> {
+                try {
+                    VideoInfo probed = read(path);
+                    long expiresAt = key.startsWith("remote|")
+                            ? System.currentTimeMillis() + remoteTtlSeconds * 1000 : Long.MAX_VALUE;
+                    synchronized (cache) {
+                        cache.put(key, new CachedInfo(probed, expiresAt));
+                    }
+                    return probed;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).getValue();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return info.toBuilder().build();
+    }
+
+    /**
+     * 本地文件的缓存 key 包含大小和修改时间，其他输入（URL 等）只用地址
+     */
+    private static String cacheKey(String path) {
+        File file = new File(path);
+        if (file.isFile()) {
+            return "file|" + file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+        }
+        return "remote|" + path;
+    }
+
+    private VideoInfo read(String path) throws IOException {
+        long start = System.nanoTime();
+        AVFormatContext context = new AVFormatContext(null);
+        AVDictionary options = new AVDictionary(null);
+        avutil.av_dict_set(options, "probesize", String.valueOf(probeSize), 0);
+        avutil.av_dict_set(options, "analyzeduration", String.valueOf(analyzeDurationUs), 0);
+        int ret = avformat.avformat_open_input(context, path, null, options);
+        avutil.av_dict_free(options);
+        if (ret < 0) {
+            throw new IOException("无法打开媒体文件: " + path + " (错误码 " + ret + ")");
+        }
+        try {
+            // 容器头信息不全（如 MPEG-TS）时读取少量数据包补全，读取量受 probesize/analyzeduration 限制
+            ret = avformat.avformat_find_stream_info(context, (PointerPointer<?>) null);
+            if (ret < 0) {
+                throw new IOException("无法解析媒体流信息: " + path + " (错误码 " + ret + ")");
+            }
+            VideoInfo.VideoInfoBuilder builder = VideoInfo.builder()
+                    .format(context.iformat().name().getString())
+                    .duration(context.duration() == avutil.AV_NOPTS_VALUE ? 0 : context.duration() / (double) avutil.AV_TIME_BASE);
+
+            AVStream video = bestStream(context, avutil.AVMEDIA_TYPE_VIDEO);
+            if (video != null) {
+                AVCodecParameters parameters = video.codecpar();
+                builder.width(parameters.width())
+                        .height(parameters.height())
+                        .frameRate(frameRate(video))
+                        .videoBitrate(parameters.bit_rate());
+            }
+            AVStream audio = bestStream(context, avutil.AVMEDIA_TYPE_AUDIO);
+            if (audio != null) {
+                AVCodecParameters parameters = audio.codecpar();
+                builder.audioChannels(parameters.ch_layout().nb_channels())
+                        .audioSampleRate(parameters.sample_rate())
+                        .audioBitrate(parameters.bit_rate());
+            }
+            VideoInfo info = builder.build();
+            log.debug("探测媒体信息: path={}, 耗时 {} ms", path, (System.nanoTime() - start) / 1_000_000);
+            return info;
+        } finally {
+            avformat.avformat_close_input(context);
+        }
+    }
+
+    private static AVStream bestStream(AVFormatContext context, int type) {
+        int index = avformat.av_find_best_stream(context, type, -1, -1, (PointerPointer<?>) null, 0);
+        return index < 0 ? null : context.streams(index);
+    }
+
+    private static double frameRate(AVStream stream) {
+        AVRational rate = stream.avg_frame_rate();
+        if (rate.num() == 0 || rate.den() == 0) {
+            rate = stream.r_frame_rate();
+        }
+        return rate.num() == 0 || rate.den() == 0 ? 0 : avutil.av_q2d(rate);
+    }
+
+    private int cacheSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private static class CachedInfo {
+        private final VideoInfo info;
+        private final long expiresAt;
+
+        private CachedInfo(VideoInfo info, long expiresAt) {
+            this.info = info;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() > expiresAt;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.training.ai.application.service;
+
+import com.training.ai.application.util.TextSegmenter;
+import com.training.ai.application.util.TextSegmenter.TtsBatch;
+import com.training.ai.application.util.TextSegmenter.TtsPart;
+import com.training.ai.application.util.WavUtil;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * 讲解语音生成：按句子分段，把短页合并成一次 TTS 请求，再按静音切回各页
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class NarrationService {
+
+    private final TtsService ttsService;
+    private final NativeResources nativeResources;
+
+    @Value("${tts.segment.max-length:900}")
+    private int maxSegmentLength;
+
+    @Value("${tts.batch.enabled:true}")
+    private boolean batchEnabled;
+
+    @Value("${tts.concurrency:5}")
+    private int concurrency;
+
+    /**
+     * 为每页文本生成语音（同步）
+     *
+     * @see #narrateAsync(List, File, BiConsumer)
+     */
+    public List<List<NarrationSegment>> narrate(List<String> pageTexts, File audioDir, BiConsumer<Integer, Integer> batchProgress) {
+        try {
+            return narrateAsync(pageTexts, audioDir, batchProgress).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("TTS 生成被中断", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("TTS 生成失败", e.getCause());
+        }
+    }
+
+    /**
+     * 在独立线程池中为每页文本生成语音，立即返回。
+     * 语音只依赖文本，调用方可以在此期间并行进行 PPT 转换与渲染；
+     * 取消返回的 future 后，尚未开始的 TTS 请求会被跳过
+     *
+     * @param pageTexts     每页文本
+     * @param audioDir      音频输出目录
+     * @param batchProgress 每完成一个 TTS 请求回调 (已完成数, 总数)
+     * @return 与 pageTexts 一一对应的语音片段列表，无文本的页为空列表
+     */
+    public CompletableFuture<List<List<NarrationSegment>>> narrateAsync(List<String> pageTexts, File audioDir, BiConsumer<Integer, Integer> batchProgress) {
+        return narrateAsync(pageTexts, audioDir, NarrationCheckpoint.NONE, batchProgress);
+    }
+
+    /**
+     * 同 {@link #narrateAsync(List, File, BiConsumer)}，已记录在检查点中的片段不再重复请求 TTS
+     */
+    public CompletableFuture<List<List<NarrationSegment>>> narrateAsync(List<String> pageTexts, File audioDir,
+                                                                          NarrationCheckpoint checkpoint,
+                                                                          BiConsumer<Integer, Integer> batchProgress) {
+        return narrateAsync(pageTexts, () -> audioDir, checkpoint, batchProgress);
+    }
+
+    /**
+     * 同 {@link #narrateAsync(List, File, NarrationCheckpoint, BiConsumer)}，每个请求写文件前重新获取输出目录，
+     * 写入失败且输出目录可以切换时改写到新目录
+     */
+    public CompletableFuture<List<List<NarrationSegment>>> narrateAsync(List<String> pageTexts, AudioDir audioDir,
+                                                                          NarrationCheckpoint checkpoint,
+                                                                          BiConsumer<Integer, Integer> batchProgress) {
+        List<TtsBatch> batches = TextSegmenter.planBatches(pageTexts, maxSegmentLength, batchEnabled);
+        long merged = batches.stream().filter(TtsBatch::isMerged).count();
+        log.info("语音合成计划: 共 {} 页, {} 个 TTS 请求 (其中 {} 个为多页合并)", pageTexts.size(), batches.size(), merged);
+
+        CompletableFuture<List<List<NarrationSegment>>> future = new CompletableFuture<>();
+        ForkJoinPool customThreadPool = new ForkJoinPool(concurrency);
+        // 原生对象的范围只对当前线程生效，线程池中的每个请求在执行线程上另开子范围
+        String scopeName = nativeResources.currentScopeName() != null
+                ? nativeResources.currentScopeName() + "/narration" : "narration";
+        AtomicInteger completed = new AtomicInteger(0);
+        int total = batches.size();
+
+        customThreadPool.execute(() -> {
+            try {
+                List<SegmentResult> results = batches.parallelStream()
+                        .map(batch -> {
+                            if (future.isDone()) {
+                                return List.<SegmentResult>of();
+                            }
+                            List<SegmentResult> batchResults;
+                            try (NativeResources.Scope ignored = nativeResources.openScope(scopeName)) {
+                                batchResults = synthesizeBatch(batch, audioDir, checkpoint);
+                            }
+                            batchProgress.accept(completed.incrementAndGet(), total);
+                            return batchResults;
+                        })
+                        .flatMap(List::stream)
+                        .collect(Collectors.toList());
+                future.complete(groupByPage(results, pageTexts.size()));
+            } catch (Throwable e) {
+                log.error("并发处理 TTS 失败", e);
+                future.completeExceptionally(e);
+            }
+        });
+        future.whenComplete((result, error) -> customThreadPool.shutdown());
+        return future;
+    }
+
+    private List<List<NarrationSegment>> groupByPage(List<SegmentResult> results, int pageCount) {
+        List<List<NarrationSegment>> narrations = new ArrayList<>();
+        for (int i = 0; i < pageCount; i++) {
+            narrations.add(new ArrayList<>());
+        }
+        results.sort(Comparator.comparingInt((SegmentResult r) -> r.getPart().getPageIndex())
+                .thenComparingInt(r -> r.getPart().getPartIndex()));
+        for (SegmentResult result : results) {
+            narrations.get(result.getPart().getPageIndex()).add(result.getSegment());
+        }
+        return narrations;
+    }
+
+    private List<SegmentResult> synthesizeBatch(TtsBatch batch, AudioDir audioDir, NarrationCheckpoint checkpoint) {
+        List<SegmentResult> restored = restore(batch, checkpoint);
+        if (restored != null) {
+            return restored;
+        }
+
+        List<SegmentResult> results = synthesizeBatch(batch, audioDir);
+        for (SegmentResult result : results) {
+            if (result.getSegment().getAudioPath() != null) {
+                checkpoint.record(result.getPart().getPageIndex(), result.getPart().getPartIndex(), result.getSegment());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 批次内所有片段都已在检查点中且音频文件仍存在时直接复用，否则返回 null 重新合成整个批次
+     */
+    private List<SegmentResult> restore(TtsBatch batch, NarrationCheckpoint checkpoint) {
+        List<SegmentResult> results = new ArrayList<>();
+        for (TtsPart part : batch.getParts()) {
+            NarrationSegment segment = checkpoint.lookup(part.getPageIndex(), part.getPartIndex(), part.getText());
+            if (segment == null || segment.getAudioPath() == null || !new File(segment.getAudioPath()).exists()) {
+                return null;
+            }
+            results.add(new SegmentResult(part, segment));
+        }
+        log.debug("第 {} 页起的语音已在检查点中，跳过合成", batch.getParts().get(0).getPageIndex() + 1);
+        return results;
+    }
+
+    private List<SegmentResult> synthesizeBatch(TtsBatch batch, AudioDir audioDir) {
+        if (!batch.isMerged()) {
+            TtsPart part = batch.getParts().get(0);
+            return List.of(synthesizePart(part, audioDir));
+        }
+
+        List<TtsPart> parts = batch.getParts();
+        String mergedName = "batch_" + (parts.get(0).getPageIndex() + 1) + "_" + (parts.get(parts.size() - 1).getPageIndex() + 1) + ".wav";
+        try {
+            byte[] audio = ttsService.synthesizeAudio(batch.getText());
+            List<SegmentResult> results = writeAudio(audioDir, dir -> {
+                File mergedFile = new File(dir, mergedName);
+                try {
+                    Files.write(mergedFile.toPath(), audio);
+                    List<Integer> weights = new ArrayList<>();
+                    List<File> outputs = new ArrayList<>();
+                    for (TtsPart part : parts) {
+                        weights.add(part.getText().length());
+                        outputs.add(audioFile(part, dir));
+                    }
+                    List<Double> durations = WavUtil.splitAtSilence(mergedFile, weights, outputs);
+
+                    List<SegmentResult> split = new ArrayList<>();
+                    for (int i = 0; i < parts.size(); i++) {
+                        split.add(new SegmentResult(parts.get(i), NarrationSegment.builder()
+                                .text(parts.get(i).getText())
+                                .audioPath(outputs.get(i).getAbsolutePath())
+                                .duration(durations.get(i))
+                                .build()));
+                    }
+                    return split;
+                } catch (UnsupportedAudioFileException e) {
+                    // 不是写入失败，不切换目录，由外层退化为逐页合成
+                    throw new IllegalStateException("无法解析合并的语音: " + e.getMessage(), e);
+                } finally {
+                    Files.deleteIfExists(mergedFile.toPath());
+                }
+            });
+            log.info("第 {}-{} 页合并合成并切分完成", parts.get(0).getPageIndex() + 1, parts.get(parts.size() - 1).getPageIndex() + 1);
+            return results;
+        } catch (Exception e) {
+            log.warn("合并语音切分失败，改为逐页合成: {}", e.getMessage());
+        }
+
+        // 合并请求失败或无法切分时，退化为逐页请求
+        List<SegmentResult> results = new ArrayList<>();
+        for (TtsPart part : parts) {
+            results.add(synthesizePart(part, audioDir));
+        }
+        return results;
+    }
+
+    private SegmentResult synthesizePart(TtsPart part, AudioDir audioDir) {
+        String audioPath = null;
+        double duration = 0;
+        String failure = null;
+        try {
+            byte[] audio = ttsService.synthesizeAudio(part.getText());
+            File file = writeAudio(audioDir, dir -> {
+                File output = audioFile(part, dir);
+                Files.write(output.toPath(), audio);
+                return output;
+            });
+            audioPath = file.getAbsolutePath();
+            duration = getAudioDuration(audioPath);
+        } catch (Exception e) {
+            // 其余分段照常合成并记入检查点，任务重试时只需重新合成失败的分段
+            log.error("第 {} 页第 {} 段 TTS 生成失败", part.getPageIndex() + 1, part.getPartIndex() + 1, e);
+            failure = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        }
+        return new SegmentResult(part, NarrationSegment.builder()
+                .text(part.getText())
+                .audioPath(audioPath)
+                .duration(duration)
+                .failure(failure)
+                .build());
+    }
+
+    /**
+     * 在当前输出目录中写语音文件；写入失败且输出目录切换成功时，在新目录中重写一次
+     */
+    private <T> T writeAudio(AudioDir audioDir, AudioWrite<T> write) throws IOException {
+        try {
+            return write.run(prepare(audioDir.current()));
+        } catch (IOException e) {
+            if (!audioDir.fallback(e)) {
+                throw e;
+            }
+            return write.run(prepare(audioDir.current()));
+        }
+    }
+
+    private static File prepare(File dir) throws IOException {
+        Files.createDirectories(dir.toPath());
+        return dir;
+    }
+
+    private File audioFile(TtsPart part, File audioDir) {
+        int pageNo = part.getPageIndex() + 1;
+        String filename = part.getPartIndex() == 0
+                ? "audio_" + pageNo + ".wav"
+                : "audio_" + pageNo + "_part_" + (part.getPartIndex() + 1) + ".wav";
+        return new File(audioDir, filename);
+    }
+
+    /**
+     * 获取音频时长（秒），优先解析 WAV 头，失败时用 FFmpeg 探测
+     */
+    public double getAudioDuration(String audioPath) {
+        double duration = WavUtil.getDuration(new File(audioPath));
+        if (duration > 0) {
+            return duration;
+        }
+        try (FFmpegFrameGrabber grabber = nativeResources.grabber(audioPath)) {
+            grabber.start();
+            long durationMicroseconds = grabber.getLengthInTime();
+            grabber.stop();
+            return durationMicroseconds / 1_000_000.0;
+        } catch (Exception e) {
+            log.error("获取音频时长失败: {}", audioPath, e);
+            return 0;
+        }
+    }
+
+    /**
+     * 语音文件的输出目录。默认不可切换；使用内存盘时写满后可以切换到磁盘
+     */
+    public interface AudioDir {
+
+        File current();
+
+        /**
+         * 写入失败后调用
+         *
+         * @return 是否已切换到新的输出目录，返回 false 时直接抛出原异常
+         */
+        default boolean fallback(IOException cause) {
+            return false;
+        }
+    }
+
+    private interface AudioWrite<T> {
+        T run(File dir) throws IOException;
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class SegmentResult {
+        private TtsPart part;
+        private NarrationSegment segment;
+    }
+
+    /**
+     * 语音片段检查点，用于任务重试时跳过已合成的片段
+     */
+    public interface NarrationCheckpoint {
+
+        NarrationCheckpoint NONE = new NarrationCheckpoint() {
+            @Override
+            public NarrationSegment lookup(int pageIndex, int partIndex, String text) {
+                return null;
+            }
+
+            @Override
+            public void record(int pageIndex, int partIndex, NarrationSegment segment) {
+            }
+        };
+
+        /**
+         * 查找已合成的片段，文本不一致时视为不存在
+         */
+        NarrationSegment lookup(int pageIndex, int partIndex, String text);
+
+        void record(int pageIndex, int partIndex, NarrationSegment segment);
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class NarrationSegment {
+        private String text;
+        private String audioPath;
+        private double duration;
+        /**
+         * 合成失败（audioPath 为空）的原因，如 TTS 提供商不可用或语音文件写入失败
+         */
+        private String failure;
+    }
+}
@@ -0,0 +1,260 @@
+package com.training.ai.application.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacv.FFmpegFrameFilter;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * FFmpeg 原生对象（grabber、recorder、filter）的创建和跟踪。所有 JavaCV 对象都通过这里创建，
+ * 释放（stop/close/release）时自动登记，未释放的数量和 JavaCPP 堆外内存通过 Micrometer 暴露。
+ * 任务线程在 {@link #openScope} 返回的范围内执行：范围结束（任务完成、失败或取消）时，
+ * 本线程在范围内创建、仍未释放的对象被强制释放并计入 ffmpeg.native.leaked。
+ * 范围只对当前线程生效，任务交给其他线程池执行的部分（如语音时长探测）需要在该线程中以
+ * {@link #currentScopeName()} 为前缀另开范围，并在同一线程中关闭。
+ * 存活时间超过 stale-minutes 的对象定期打印告警，便于定位没有放进范围的泄漏
+ */
+@Slf4j
+@Component
+public class NativeResources {
+
+    private final Map<Object, Tracked> open = new ConcurrentHashMap<>();
+    private final ThreadLocal<Scope> currentScope = new ThreadLocal<>();
+    private final Counter leaked;
+
+    @Value("${ffmpeg.native.stale-minutes:30}")
+    private long staleMinutes;
+
+    public NativeResources(MeterRegistry meterRegistry) {
+        for (Kind kind : Kind.values()) {
+            Gauge.builder("ffmpeg.native.open", this, resources -> resources.count(kind))
+                    .description("未释放的 FFmpeg 原生对象数")
+                    .tag("type", kind.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry);
+        }
+        // 只统计 JavaCPP 通过 Pointer 分配的内存，FFmpeg 内部 av_malloc 分配的编解码缓冲不在其中，
+        // 原生内存的整体占用看 ffmpeg.native.physical
+        Gauge.builder("ffmpeg.native.javacpp.memory", Pointer::totalBytes)
+                .description("JavaCPP 通过 Pointer 分配、尚未回收的堆外内存（不含 FFmpeg av_malloc 分配）")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("ffmpeg.native.physical", Pointer::physicalBytes)
+                .description("进程占用的物理内存（含堆外）")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.leaked = Counter.builder("ffmpeg.native.leaked")
+                .description("任务结束时仍未释放、被强制释放的原生对象数")
+                .register(meterRegistry);
+    }
+
+    public FFmpegFrameGrabber grabber(String source) {
+        return register(new TrackedGrabber(source), Kind.GRABBER, source);
+    }
+
+    /**
+     * @param maximumSize 输入流可回退的字节数，0 表示不支持 seek
+     */
+    public FFmpegFrameGrabber grabber(InputStream input, int maximumSize) {
+        return register(new TrackedGrabber(input, maximumSize), Kind.GRABBER, "stream");
+    }
+
+    public FFmpegFrameRecorder recorder(String outputPath, int width, int height, int audioChannels) {
+        return register(new TrackedRecorder(outputPath, width, height, audioChannels), Kind.RECORDER, outputPath);
+    }
+
+    public FFmpegFrameFilter filter(String videoFilter, String audioFilter, int width, int height, int audioChannels) {
+        return register(new TrackedFilter(videoFilter, audioFilter, width, height, audioChannels), Kind.FILTER,
+                videoFilter + "|" + audioFilter);
+    }
+
+    /**
+     * 开始一个任务范围，范围可以嵌套，必须在同一线程中关闭
+     */
+    public Scope openScope(String name) {
+        Scope scope = new Scope(name, currentScope.get());
+        currentScope.set(scope);
+        return scope;
+    }
+
+    /**
+     * @return 当前线程所在范围的名称，不在范围内时返回 null
+     */
+    public String currentScopeName() {
+        Scope scope = currentScope.get();
+        return scope != null ? scope.name : null;
+    }
+
+    /**
+     * 打印存活时间过长的对象（每个只打印一次）
+     */
+    @Scheduled(fixedDelayString = "${ffmpeg.native.check-interval-ms:60000}")
+    public void reportStale() {
+        long threshold = System.currentTimeMillis() - staleMinutes * 60_000;
+        for (Tracked tracked : open.values()) {
+            if (!tracked.reported && tracked.createdAt < threshold) {
+                tracked.reported = true;
+                log.warn("FFmpeg 原生对象长时间未释放: type={}, source={}, thread={}, scope={}, 已存活 {} 分钟",
+                        tracked.kind, tracked.source, tracked.thread, tracked.scope != null ? tracked.scope.name : null,
+                        (System.currentTimeMillis() - tracked.createdAt) / 60_000);
+            }
+        }
+    }
+
+    private int count(Kind kind) {
+        int count = 0;
+        for (Tracked tracked : open.values()) {
+            if (tracked.kind == kind) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private <T> T register(T resource, Kind kind, String source) {
+        Scope scope = currentScope.get();
+        Tracked tracked = new Tracked(resource, kind, source, Thread.currentThread().getName(), scope);
+        open.put(resource, tracked);
+        if (scope != null) {
+            scope.owned.add(tracked);
+        }
+        return resource;
+    }
+
+    private void released(Object resource) {
+        Tracked tracked = open.remove(resource);
+        if (tracked != null && tracked.scope != null) {
+            tracked.scope.owned.remove(tracked);
+        }
+    }
+
+    private enum Kind {
+        GRABBER, RECORDER, FILTER
+    }
+
+    private static class Tracked {
+        private final Object resource;
+        private final Kind kind;
+        private final String source;
+        private final String thread;
+        private final Scope scope;
+        private final long createdAt = System.currentTimeMillis();
+        private volatile boolean reported;
+
+        private Tracked(Object resource, Kind kind, String source, String thread, Scope scope) {
+            this.resource = resource;
+            this.kind = kind;
+            this.source = source;
+            this.thread = thread;
+            this.scope = scope;
+        }
+
+        private void release() throws Exception {
+            switch (kind) {
+                case GRABBER -> ((FFmpegFrameGrabber) resource).release();
+                case RECORDER -> ((FFmpegFrameRecorder) resource).release();
+                case FILTER -> ((FFmpegFrameFilter) resource).release();
+            }
+        }
+    }
+
+    /**
+     * 任务范围，关闭时释放本线程在范围内创建、仍未释放的原生对象
+     */
+    public class Scope implements AutoCloseable {
+        private final String name;
+        private final Scope parent;
+        private final Set<Tracked> owned = ConcurrentHashMap.newKeySet();
+
+        private Scope(String name, Scope parent) {
+            this.name = name;
+            this.parent = parent;
+        }
+
+        @Override
+        public void close() {
+            if (parent != null) {
+                currentScope.set(parent);
+            } else {
+                currentScope.remove();
+            }
+            for (Tracked tracked : new ArrayList<>(owned)) {
+                leaked.increment();
+                log.warn("任务结束时 FFmpeg 原生对象未释放，强制释放: scope={}, type={}, source={}",
+                        name, tracked.kind, tracked.source);
+                try {
+                    tracked.release();
+                } catch (Exception e) {
+                    log.warn("强制释放原生对象失败: {}", tracked.source, e);
+                } finally {
+                    released(tracked.resource);
+                }
+            }
+        }
+    }
+
+    /**
+     * stop、close 最终都调用 release，释放失败也视为已释放（原生资源状态未知，不再重复释放）
+     */
+    private class TrackedGrabber extends FFmpegFrameGrabber {
+        private TrackedGrabber(String source) {
+            super(source);
+        }
+
+        private TrackedGrabber(InputStream input, int maximumSize) {
+            super(input, maximumSize);
+        }
+
+        @Override
+        public void release() throws Exception {
+            try {
+                super.release();
+            } finally {
+                released(this);
+            }
+        }
+    }
+
+    private class TrackedRecorder extends FFmpegFrameRecorder {
+        private TrackedRecorder(String outputPath, int width, int height, int audioChannels) {
+            super(outputPath, width, height, audioChannels);
+        }
+
+        @Override
+        public void release() throws Exception {
+            try {
+                super.release();
+            } finally {
+                released(this);
+            }
+        }
+    }
+
+    private class TrackedFilter extends FFmpegFrameFilter {
+        private TrackedFilter(String videoFilter, String audioFilter, int width, int height, int audioChannels) {
+            super(videoFilter, audioFilter, width, height, audioChannels);
+        }
+
+        @Override
+        public void release() throws Exception {
+            try {
+                super.release();
+            } finally {
+                released(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.training.ai.application.service;
+
+import com.training.ai.application.job.BatchStatus.BatchItem;
+import com.training.ai.application.job.BatchStore;
+import com.training.ai.application.job.JobPriority;
+import com.training.ai.application.job.JobQueue;
+import com.training.ai.application.job.JobStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 批量 PPT 转视频：一次提交多个文件或一个 zip 包。
+ * 内容相同的文件只转换一次；批次内任务按提交顺序进入批次队列，与其他批次轮转执行。
+ * zip 包按实际解压的字节数限制单个文件和总大小，声明的大小不可信（压缩炸弹）
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PptBatchService {
+
+    private final PptToVideoService pptToVideoService;
+    private final JobStore jobStore;
+    private final BatchStore batchStore;
+    private final JobQueue jobQueue;
+
+    @Value("${job.batch.max-decks:500}")
+    private int maxDecks;
+
+    /**
+     * zip 包中单个文件解压后的大小上限
+     */
+    @Value("${job.batch.max-entry-bytes:209715200}")
+    private long maxEntryBytes;
+
+    /**
+     * zip 包中所有 PPT 文件解压后的大小总和上限
+     */
+    @Value("${job.batch.max-total-bytes:2147483648}")
+    private long maxTotalBytes;
+
+    /**
+     * 保存批次中的所有文件并提交到队列
+     *
+     * @param files   直接上传的 PPT 文件，可以为空
+     * @param archive 包含 PPT 文件的 zip 包，可以为 null
+     * @param owner   提交者标识，整个批次占用一个并发名额
+     * @return 批次 ID
+     */
+    public String submit(List<MultipartFile> files, MultipartFile archive, String owner) throws IOException {
+        String batchId = UUID.randomUUID().toString();
+        BatchBuilder builder = new BatchBuilder(batchId);
+
+        try {
+            if (files != null) {
+                for (MultipartFile file : files) {
+                    if (file.isEmpty()) {
+                        continue;
+                    }
+                    try (InputStream in = file.getInputStream()) {
+                        builder.add(file.getOriginalFilename(), in);
+                    }
+                }
+            }
+            if (archive != null && !archive.isEmpty()) {
+                // GBK 兼容 Windows 资源管理器生成的中文文件名
+                try (ZipInputStream zip = new ZipInputStream(archive.getInputStream(), Charset.forName("GBK"))) {
+                    long[] total = new long[1];
+                    ZipEntry entry;
+                    while ((entry = zip.getNextEntry()) != null) {
+                        if (!entry.isDirectory()) {
+                            builder.add(entry.getName(), new BoundedEntryStream(zip, entry.getName(), total));
+                        }
+                        zip.closeEntry();
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            builder.discard();
+            throw e;
+        }
+
+        if (builder.items.isEmpty()) {
+            throw new IllegalArgumentException("批次中没有 PPT 文件");
+        }
+
+        List<String> created = new ArrayList<>();
+        try {
+            batchStore.create(batchId, owner, builder.items, builder.taskIds.size());
+            for (int i = 0; i < builder.taskIds.size(); i++) {
+                jobStore.create(builder.taskIds.get(i), builder.taskFilenames.get(i), null, JobPriority.BULK, batchId);
+                created.add(builder.taskIds.get(i));
+            }
+            jobQueue.submitBatch(batchId, builder.taskIds);
+        } catch (RuntimeException e) {
+            // Redis 不可用等：撤销已创建的记录并删除已保存的任务目录。
+            // 已进入队列的任务领取时找不到记录，会被直接丢弃
+            rollback(batchId, created);
+            builder.discard();
+            throw e;
+        }
+        log.info("批次 {} 已提交: 共 {} 个文件, 去重后 {} 个任务", batchId, builder.items.size(), builder.taskIds.size());
+        return batchId;
+    }
+
+    private void rollback(String batchId, List<String> createdTaskIds) {
+        try {
+            for (String taskId : createdTaskIds) {
+                jobStore.delete(taskId);
+            }
+            batchStore.delete(batchId);
+        } catch (RuntimeException e) {
+            log.warn("撤销批次 {} 的记录失败: {}", batchId, e.getMessage());
+        }
+    }
+
+    private class BatchBuilder {
+        private final String batchId;
+        private final List<BatchItem> items = new ArrayList<>();
+        private final List<String> taskIds = new ArrayList<>();
+        private final List<String> taskFilenames = new ArrayList<>();
+        private final Map<String, String> taskIdByHash = new HashMap<>();
+
+        private BatchBuilder(String batchId) {
+            this.batchId = batchId;
+        }
+
+        private void add(String path, InputStream in) throws IOException {
+            if (path == null) {
+                return;
+            }
+            String filename = path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1);
+            String lower = filename.toLowerCase();
+            if (filename.startsWith(".") || (!lower.endsWith(".ppt") && !lower.endsWith(".pptx"))) {
+                log.debug("批次 {} 跳过非 PPT 文件: {}", batchId, path);
+                return;
+            }
+            if (items.size() >= maxDecks) {
+                throw new IllegalArgumentException("批次文件数超过上限 " + maxDecks);
+            }
+
+            String taskId = UUID.randomUUID().toString();
+            String hash;
+            try {
+                hash = pptToVideoService.stageTask(in, filename, taskId);
+            } catch (IOException | RuntimeException e) {
+                // 写了一半的任务目录还没有登记到 taskIds，discard 不会删除
+                pptToVideoService.discardTask(taskId);
+                throw e;
+            }
+            String existing = taskIdByHash.get(hash);
+            if (existing != null) {
+                // 内容相同的文件共享同一个转换任务
+                pptToVideoService.discardTask(taskId);
+                items.add(new BatchItem(filename, existing, null, 0));
+                return;
+            }
+            taskIdByHash.put(hash, taskId);
+            taskIds.add(taskId);
+            taskFilenames.add(filename);
+            items.add(new BatchItem(filename, taskId, null, 0));
+        }
+
+        private void discard() {
+            for (String taskId : taskIds) {
+                pptToVideoService.discardTask(taskId);
+            }
+        }
+    }
+
+    /**
+     * zip 条目的读取视图：统计实际解压的字节数，超过单个文件或总大小上限时中止；
+     * 关闭时不关闭 zip 流，后续条目还要继续读取
+     */
+    private class BoundedEntryStream extends FilterInputStream {
+        private final String name;
+        private final long[] total;
+        private long count;
+
+        private BoundedEntryStream(InputStream in, String name, long[] total) {
+            super(in);
+            this.name = name;
+            this.total = total;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                consumed(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                consumed(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            consumed(skipped);
+            return skipped;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void consumed(long n) {
+            count += n;
+            total[0] += n;
+            if (count > maxEntryBytes) {
+                throw new IllegalArgumentException("zip 包中的文件 " + name + " 解压后超过 " + maxEntryBytes / (1024 * 1024) + " MB");
+            }
+            if (total[0] > maxTotalBytes) {
+                throw new IllegalArgumentException("zip 包解压后的总大小超过 " + maxTotalBytes / (1024 * 1024) + " MB");
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.training.ai.application.service;
 
 import com.training.ai.application.util.PptUtil;
+import com.training.ai.infrastructure.storage.ArtifactStore;
 import jakarta.annotation.Resource;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -9,6 +10,9 @@ import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.hslf.usermodel.HSLFSlide;
 import org.apache.poi.hslf.usermodel.HSLFSlideShow;
 import org.apache.poi.hslf.usermodel.HSLFTextShape;
@@ -24,6 +28,7 @@ import org.jodconverter.core.DocumentConverter;
 import org.jodconverter.core.office.OfficeException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
 import org.springframework.web.multipart.MultipartFile;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -55,10 +60,12 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class PptService {
 
+    private final ArtifactStore artifactStore;
+
     @Autowired(required = false)
     private DocumentConverter documentConverter;
 
-    private static final String TEMP_DIR = System.getProperty("java.io.tmpdir") + File.separator + "ppt_images";
+    static final String TEMP_DIR = System.getProperty("java.io.tmpdir") + File.separator + "ppt_images";
 
     @Data
     @Builder
@@ -93,6 +100,11 @@ public class PptService {
         }
     }
 
+    /**
+     * PPT 转 PDF 并保存到产物存储
+     *
+     * @return PDF 的产物 key
+     */
     public String convertToPdf(MultipartFile file) throws IOException {
         String taskId = UUID.randomUUID().toString();
         File taskDir = new File(TEMP_DIR, taskId);
@@ -113,13 +125,12 @@ public class PptService {
 
         try {
             convertPptToPdf(tempFile, pdfFile);
+            String key = "pdf/" + taskId + ".pdf";
+            artifactStore.put(key, pdfFile.toPath(), "application/pdf");
+            return key;
         } finally {
-            if (tempFile.exists()) {
-                tempFile.delete();
-            }
+            FileSystemUtils.deleteRecursively(taskDir);
         }
-        
-        return pdfFile.getAbsolutePath();
     }
 
     public List<PptPage> convertPptToPages(MultipartFile file) throws IOException {
@@ -141,11 +152,11 @@ public class PptService {
 
         List<PptPage> pages = new ArrayList<>();
         
-        try (FileInputStream fis = new FileInputStream(tempFile)) {
+        try {
             if (".pptx".equals(extension)) {
-                processPptx(fis, pages, taskDir);
+                processPptx(tempFile, pages, taskDir);
             } else if (".ppt".equals(extension)) {
-                processPpt(fis, pages, taskDir);
+                processPpt(tempFile, pages, taskDir);
             } else {
                 throw new IllegalArgumentException("不支持的文件格式: " + extension);
             }
@@ -158,8 +169,17 @@ public class PptService {
         return pages;
     }
 
-    private void processPptx(FileInputStream fis, List<PptPage> pages, File outputDir) throws IOException {
-        try (XMLSlideShow ppt = new XMLSlideShow(fis)) {
+    /**
+     * 直接读取上传后保存的源文件：以只读方式打开 OPC 包，不把整个文件读入内存，PDF 转换也直接使用该文件
+     */
+    private void processPptx(File sourceFile, List<PptPage> pages, File outputDir) throws IOException {
+        XMLSlideShow slideShow;
+        try {
+            slideShow = new XMLSlideShow(OPCPackage.open(sourceFile, PackageAccess.READ));
+        } catch (InvalidFormatException e) {
+            throw new IOException("无法读取 PPTX 文件: " + sourceFile.getName(), e);
+        }
+        try (XMLSlideShow ppt = slideShow) {
             Dimension pgsize = ppt.getPageSize();
             log.info("PPTX page size: width={}, height={}", pgsize.width, pgsize.height);
             List<XSLFSlide> slides = ppt.getSlides();
@@ -192,30 +212,15 @@ public class PptService {
 
             log.info("Final target image size: {}x{} (Original: {}x{})", canvasWidth, canvasHeight, pgsize.width, pgsize.height);
 
-            // 4. 生成 PDF（使用 JODConverter 或 PptUtil 降级方案）
-            File pptxFile = File.createTempFile("pptx_", ".pptx");
+            // 4. 生成 PDF（使用 JODConverter 或 PptUtil 降级方案），直接转换源文件
             File pdfFile = new File(outputDir, "converted.pdf");
             List<String> textContents = new ArrayList<>();
 
             try {
-                // 将输入流保存为临时文件
-                Files.copy(fis, pptxFile.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-
-                // 使用 JODConverter 转换 PPTX 到 PDF
-                if (documentConverter != null) {
-                    log.info("Using JODConverter for PDF conversion");
-                    documentConverter.convert(pptxFile).to(pdfFile).execute();
-                } else {
-                    log.warn("DocumentConverter is null, using PptUtil fallback");
-                    PptUtil.convert(pptxFile.getAbsolutePath(), pdfFile.getAbsolutePath());
-                }
-            } catch (Exception e) {
+                convertPptToPdf(sourceFile, pdfFile);
+            } catch (IOException e) {
                 log.error("Failed to convert PPTX to PDF", e);
                 throw new IOException("PDF conversion failed", e);
-            } finally {
-                if (pptxFile.exists()) {
-                    pptxFile.delete();
-                }
             }
 
             // 提取文本内容
@@ -289,8 +294,9 @@ public class PptService {
         }
     }
 
-    private void processPpt(FileInputStream fis, List<PptPage> pages, File outputDir) throws IOException {
-        try (HSLFSlideShow ppt = new HSLFSlideShow(fis)) {
+    private void processPpt(File sourceFile, List<PptPage> pages, File outputDir) throws IOException {
+        try (FileInputStream fis = new FileInputStream(sourceFile);
+             HSLFSlideShow ppt = new HSLFSlideShow(fis)) {
             Dimension pgsize = ppt.getPageSize();
             log.info("PPT page size: width={}, height={}", pgsize.width, pgsize.height);
             List<HSLFSlide> slides = ppt.getSlides();
@@ -323,30 +329,15 @@ public class PptService {
 
             log.info("Final target image size: {}x{} (Original: {}x{})", canvasWidth, canvasHeight, pgsize.width, pgsize.height);
 
-            // 4. 生成 PDF（使用 JODConverter 或 PptUtil 降级方案）
-            File pptFile = File.createTempFile("ppt_", ".ppt");
+            // 4. 生成 PDF（使用 JODConverter 或 PptUtil 降级方案），直接转换源文件
             File pdfFile = new File(outputDir, "converted.pdf");
             List<String> textContents = new ArrayList<>();
 
             try {
-                // 将输入流保存为临时文件
-                Files.copy(fis, pptFile.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-
-                // 使用 JODConverter 转换 PPT 到 PDF
-                if (documentConverter != null) {
-                    log.info("Using JODConverter for PDF conversion");
-                    documentConverter.convert(pptFile).to(pdfFile).execute();
-                } else {
-                    log.warn("DocumentConverter is null, using PptUtil fallback");
-                    PptUtil.convert(pptFile.getAbsolutePath(), pdfFile.getAbsolutePath());
-                }
-            } catch (Exception e) {
+                convertPptToPdf(sourceFile, pdfFile);
+            } catch (IOException e) {
                 log.error("Failed to convert PPT to PDF", e);
                 throw new IOException("PDF conversion failed", e);
-            } finally {
-                if (pptFile.exists()) {
-                    pptFile.delete();
-                }
             }
 
             // 提取文本内容
@@ -593,6 +584,18 @@ public class PptService {
     }
 
     public List<PptPage> convertPdfToPages(File pdfFile, File outputDir, List<String> textContents) throws IOException {
+        return convertPdfToPages(pdfFile, outputDir, textContents, pageIndex -> false, page -> { });
+    }
+
+    /**
+     * 将 PDF 渲染为图片，支持断点续做
+     *
+     * @param isRendered  判断某页（从 1 开始）是否已在之前的执行中渲染完成，已完成的页直接复用
+     * @param onPageSaved 每页图片写入磁盘后回调
+     */
+    public List<PptPage> convertPdfToPages(File pdfFile, File outputDir, List<String> textContents,
+                                           java.util.function.IntPredicate isRendered,
+                                           java.util.function.Consumer<PptPage> onPageSaved) throws IOException {
         List<PptPage> pages = new ArrayList<>();
 
         System.setProperty("pdfbox.fontcache", System.getProperty("java.io.tmpdir"));
@@ -620,6 +623,21 @@ public class PptService {
             try {
                 log.info("Starting PDF rendering for {} pages...", pdDoc.getNumberOfPages());
                 for (int i = 0; i < pdDoc.getNumberOfPages(); i++) {
+                    String imageName = (i + 1) + ".png";
+                    File imageFile = new File(outputDir, imageName);
+                    String textContent = i < textContents.size() ? textContents.get(i) : "";
+                    PptPage page = PptPage.builder()
+                            .imagePath(imageFile.getAbsolutePath())
+                            .textContent(textContent)
+                            .pageIndex(i + 1)
+                            .build();
+                    pages.add(page);
+
+                    if (isRendered.test(i + 1) && imageFile.exists()) {
+                        log.debug("Page {} already rendered, skipping", i + 1);
+                        continue;
+                    }
+
                     BufferedImage img;
                     try {
                         img = renderer.renderImage(i, imageScale, ImageType.RGB);
@@ -628,26 +646,17 @@ public class PptService {
                         throw new IOException("Failed to render page " + (i + 1), e);
                     }
 
-                    String imageName = (i + 1) + ".png";
-                    File imageFile = new File(outputDir, imageName);
-
                     BufferedImage finalImg = img;
                     java.util.concurrent.CompletableFuture<Void> future = java.util.concurrent.CompletableFuture.runAsync(() -> {
                         try {
                             ImageIO.write(finalImg, "png", imageFile);
+                            onPageSaved.accept(page);
                         } catch (IOException e) {
                             log.error("Failed to save image: " + imageFile, e);
                             throw new RuntimeException(e);
                         }
                     }, executor);
                     futures.add(future);
-
-                    String textContent = i < textContents.size() ? textContents.get(i) : "";
-                    pages.add(PptPage.builder()
-                            .imagePath(imageFile.getAbsolutePath())
-                            .textContent(textContent)
-                            .pageIndex(i + 1)
-                            .build());
                 }
 
                 java.util.concurrent.CompletableFuture.allOf(futures.toArray(new java.util.concurrent.CompletableFuture[0])).join();
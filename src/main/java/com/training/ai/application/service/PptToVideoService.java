@@ -1,20 +1,30 @@
 package com.training.ai.application.service;
 
+import com.training.ai.application.job.JobManifest;
+import com.training.ai.application.job.TaskLogEntry;
 import com.training.ai.application.service.ImageToVideoService.ImageSlide;
+import com.training.ai.application.service.NarrationService.NarrationSegment;
 import com.training.ai.application.service.PptService.PptPage;
+import com.training.ai.infrastructure.storage.ArtifactStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
 import org.springframework.web.multipart.MultipartFile;
-import org.springframework.util.StringUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.UUID;
 
@@ -24,10 +34,17 @@ import java.util.UUID;
 public class PptToVideoService {
 
     private final PptService pptService;
-    private final TtsService ttsService;
+    private final NarrationService narrationService;
     private final ImageToVideoService imageToVideoService;
+    private final StorageManager storageManager;
+    private final ArtifactStore artifactStore;
+    private final ScratchSpace scratchSpace;
 
-    private static final String TEMP_DIR = System.getProperty("user.dir") + File.separator + "temp" + File.separator + "ppt_video_temp";
+    /**
+     * 任务目录（源文件、清单、中间结果）的根目录，使用异步任务队列时需位于所有节点共享的存储上
+     */
+    @Value("${ppt.task-dir:${user.dir}/temp/ppt_video_temp}")
+    private String taskRoot;
 
     static {
         // 允许处理包含大量内部文件的 PPTX 文件
@@ -41,6 +58,20 @@ public class PptToVideoService {
         }
     }
 
+    /**
+     * 根据进度百分比判断所处阶段，与 processPptFile 中的进度划分保持一致
+     */
+    public static String stageOf(int percent) {
+        if (percent < 10) {
+            return TaskLogEntry.STAGE_EXTRACT;
+        } else if (percent < 85) {
+            return TaskLogEntry.STAGE_CONVERT;
+        } else if (percent < 100) {
+            return TaskLogEntry.STAGE_ENCODE;
+        }
+        return TaskLogEntry.STAGE_DONE;
+    }
+
     /**
      * 将 PPT 文件转换为视频 (同步方法，保留向后兼容)
      */
@@ -53,6 +84,8 @@ public class PptToVideoService {
      * 1. PPT 转图片 & 提取文本
      * 2. 文本转语音 (TTS)
      * 3. 合成视频 (图片 + 语音)
+     *
+     * @return 视频在产物存储中的 key
      */
     public String generateVideoFromPpt(MultipartFile file, java.util.function.BiConsumer<Integer, String> progressCallback) throws IOException {
         String originalFilename = file.getOriginalFilename();
@@ -61,7 +94,7 @@ public class PptToVideoService {
         }
         
         String taskId = UUID.randomUUID().toString();
-        File taskDir = new File(TEMP_DIR, taskId);
+        File taskDir = new File(taskRoot, taskId);
         if (!taskDir.exists()) {
             taskDir.mkdirs();
         }
@@ -70,99 +103,274 @@ public class PptToVideoService {
         File pptFile = new File(taskDir, "source" + extension);
         file.transferTo(pptFile);
 
-        return processPptFile(pptFile, originalFilename, progressCallback, taskId);
+        return processPptFile(pptFile, originalFilename, progressCallback, taskId, StageGate.NONE);
     }
 
     /**
      * 核心处理逻辑，接受已存在的本地文件
      */
     public String generateVideoFromPptFile(File pptFile, String originalFilename, java.util.function.BiConsumer<Integer, String> progressCallback) throws IOException {
-        String taskId = UUID.randomUUID().toString();
-        // 如果文件不在我们的临时目录结构中，可能需要复制，或者直接使用
-        // 这里假设调用者已经准备好了文件，或者我们只需要读取它
-        // 为了复用逻辑，我们还是创建一个任务目录
-        File taskDir = new File(TEMP_DIR, taskId);
+        return generateVideoFromPptFile(pptFile, originalFilename, UUID.randomUUID().toString(), progressCallback);
+    }
+
+    /**
+     * 核心处理逻辑，使用调用方指定的任务 ID，便于之后通过 {@link #resumeTask} 断点续做
+     */
+    public String generateVideoFromPptFile(File pptFile, String originalFilename, String taskId, java.util.function.BiConsumer<Integer, String> progressCallback) throws IOException {
+        File taskDir = new File(taskRoot, taskId);
         if (!taskDir.exists()) {
             taskDir.mkdirs();
         }
         
-        // 复制源文件到任务目录 (避免修改源文件)
+        // 把源文件链接到任务目录（不修改调用方的文件），只有跨文件系统时才复制
         String extension = originalFilename.contains(".") ? originalFilename.substring(originalFilename.lastIndexOf(".")).toLowerCase() : ".pptx";
         File targetPptFile = new File(taskDir, "source" + extension);
-        Files.copy(pptFile.toPath(), targetPptFile.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        linkOrCopy(pptFile.toPath(), targetPptFile.toPath());
+
+        return processPptFile(targetPptFile, originalFilename, progressCallback, taskId, StageGate.NONE);
+    }
+
+    private static void linkOrCopy(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            log.debug("无法创建硬链接，改为复制: {} -> {}", source, target);
+            Files.copy(source, target, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 把上传文件保存到任务目录并创建检查点清单，之后由任意节点的 worker 通过 {@link #resumeTask} 执行
+     */
+    public void stageTask(MultipartFile file, String taskId) throws IOException {
+        String originalFilename = file.getOriginalFilename();
+        if (originalFilename == null) {
+            throw new IllegalArgumentException("文件名不能为空");
+        }
+
+        File taskDir = new File(taskRoot, taskId);
+        if (!taskDir.exists()) {
+            taskDir.mkdirs();
+        }
 
-        return processPptFile(targetPptFile, originalFilename, progressCallback, taskId);
+        String extension = originalFilename.contains(".") ? originalFilename.substring(originalFilename.lastIndexOf(".")).toLowerCase() : ".pptx";
+        File pptFile = new File(taskDir, "source" + extension);
+        // 容器把大文件缓存在磁盘上时，transferTo 直接移动该文件，上传内容只写一次
+        file.transferTo(pptFile);
+        JobManifest.loadOrCreate(taskDir, taskId, originalFilename, pptFile.getName());
     }
 
-    private String processPptFile(File pptFile, String originalFilename, java.util.function.BiConsumer<Integer, String> progressCallback, String taskId) throws IOException {
+    /**
+     * 把输入流（例如 zip 中的条目）保存到任务目录并创建检查点清单，同时计算内容的 SHA-256，
+     * 批量提交时据此合并内容相同的文件
+     *
+     * @return 文件内容的 SHA-256（十六进制）
+     */
+    public String stageTask(InputStream in, String originalFilename, String taskId) throws IOException {
+        File taskDir = new File(taskRoot, taskId);
+        if (!taskDir.exists()) {
+            taskDir.mkdirs();
+        }
+
+        String extension = originalFilename.contains(".") ? originalFilename.substring(originalFilename.lastIndexOf(".")).toLowerCase() : ".pptx";
+        File pptFile = new File(taskDir, "source" + extension);
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        // 不关闭输入流，zip 条目读取完后还要继续读取下一个条目
+        Files.copy(new DigestInputStream(in, digest), pptFile.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        JobManifest.loadOrCreate(taskDir, taskId, originalFilename, pptFile.getName());
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 删除任务目录（批量提交时用于丢弃重复文件）
+     */
+    public void discardTask(String taskId) {
+        FileSystemUtils.deleteRecursively(new File(taskRoot, taskId));
+    }
+
+    /**
+     * 根据任务目录中的检查点清单执行任务：已完成的 PDF、页面图片、语音片段和视频都会被复用
+     */
+    public String resumeTask(String taskId, java.util.function.BiConsumer<Integer, String> progressCallback) throws IOException {
+        return resumeTask(taskId, progressCallback, StageGate.NONE);
+    }
+
+    /**
+     * 同 {@link #resumeTask(String, java.util.function.BiConsumer)}，在各个重量级阶段开始前经过 gate，
+     * 低优先级任务可以借此在阶段之间暂停，把 CPU、LibreOffice 和 FFmpeg 让给高优先级任务
+     */
+    public String resumeTask(String taskId, java.util.function.BiConsumer<Integer, String> progressCallback, StageGate gate) throws IOException {
+        File taskDir = new File(taskRoot, taskId);
+        JobManifest manifest = JobManifest.load(taskDir);
+        if (manifest == null) {
+            throw new IllegalArgumentException("任务检查点不存在，无法恢复: " + taskId);
+        }
+        if (isVideoStored(manifest)) {
+            progressCallback.accept(100, "任务已完成，直接返回已生成的视频");
+            return manifest.getVideoPath();
+        }
+        File pptFile = new File(taskDir, manifest.getSourceFile());
+        if (!pptFile.exists()) {
+            throw new IllegalArgumentException("任务源文件已被清理，无法恢复: " + taskId);
+        }
+        if (manifest.getPageTexts() != null) {
+            progressCallback.accept(0, "从检查点恢复任务: " + taskId);
+        }
+        return processPptFile(pptFile, manifest.getOriginalFilename(), progressCallback, taskId, gate);
+    }
+
+    /**
+     * 判断任务是否存在可恢复的检查点
+     */
+    public boolean isResumable(String taskId) {
+        return JobManifest.load(new File(taskRoot, taskId)) != null;
+    }
+
+    private String processPptFile(File pptFile, String originalFilename, java.util.function.BiConsumer<Integer, String> progressCallback,
+                                  String taskId, StageGate gate) throws IOException {
         long startTime = System.currentTimeMillis();
         progressCallback.accept(0, "开始处理 PPT 转视频: " + originalFilename);
         
         File taskDir = pptFile.getParentFile(); // 假设 pptFile 已经在任务目录中
+        JobManifest manifest = JobManifest.loadOrCreate(taskDir, taskId, originalFilename, pptFile.getName());
+        if (isVideoStored(manifest)) {
+            progressCallback.accept(100, "任务已完成，直接返回已生成的视频");
+            return manifest.getVideoPath();
+        }
+
+        // PDF、页面图片和语音片段放在工作目录（优先内存盘），最终视频放在任务目录下
+        ScratchSpace.ScratchDir scratch = scratchSpace.allocate(taskId, pptFile.length(), taskDir);
+        File workDir = scratch.getDir();
+
+        OverlapProgress progress = new OverlapProgress(progressCallback);
+        java.util.concurrent.CompletableFuture<List<List<NarrationSegment>>> narrationFuture = null;
+        boolean succeeded = false;
+        storageManager.acquire(taskDir);
+        storageManager.acquire(workDir);
 
         try {
-            // 1. PPT 转 PDF
-            progressCallback.accept(10, "正在将 PPT 转换为 PDF...");
-            File pdfFile = new File(taskDir, "converted.pdf");
-            pptService.convertPptToPdf(pptFile, pdfFile);
-            progressCallback.accept(30, "PPT 转 PDF 完成");
-
-            // 2. 从 PPT 提取文本内容
-            progressCallback.accept(35, "正在提取 PPT 文本内容...");
-            List<String> textContents = extractTextFromPpt(pptFile);
-            progressCallback.accept(40, "提取文本内容完成，共 " + textContents.size() + " 页");
-
-            // 3. PDF 转图片
-            progressCallback.accept(45, "正在将 PDF 转换为高清图片...");
-            List<PptPage> pages = pptService.convertPdfToPages(pdfFile, taskDir, textContents);
-            if (pages.isEmpty()) {
-                throw new IllegalArgumentException("PDF 转图片失败");
+            // 1. 从 PPT 提取文本内容（只依赖源文件，不需要等待 PDF 转换）
+            List<String> textContents = manifest.getPageTexts();
+            if (textContents == null) {
+                progressCallback.accept(5, "正在提取 PPT 文本内容...");
+                textContents = extractTextFromPpt(pptFile);
+                manifest.recordPageTexts(textContents);
+                progressCallback.accept(10, "提取文本内容完成，共 " + textContents.size() + " 页");
+            } else {
+                progressCallback.accept(10, "从检查点恢复文本内容，共 " + textContents.size() + " 页");
             }
-            progressCallback.accept(60, "PDF 转图片完成，共 " + pages.size() + " 页");
 
-            // 4. 准备临时目录存放音频
-            File audioDir = new File(TEMP_DIR, UUID.randomUUID().toString());
-            if (!audioDir.exists()) {
-                audioDir.mkdirs();
+            // 2. 立即在后台开始语音合成：TTS 受网络限制，PPT 转换受 CPU 限制，两者重叠执行
+            //    已记录在检查点中的语音片段不会重复请求
+            //    语音文件与页面图片一样写到可写的中间目录，内存盘写满时改写到磁盘
+            NarrationService.AudioDir audioDir = new NarrationService.AudioDir() {
+                @Override
+                public File current() {
+                    return new File(scratchSpace.writableDir(scratch), "audio");
+                }
+
+                @Override
+                public boolean fallback(IOException cause) {
+                    return !Thread.currentThread().isInterrupted() && scratchSpace.spill(scratch, cause);
+                }
+            };
+            narrationFuture = narrationService.narrateAsync(textContents, audioDir, manifest, (completed, total) ->
+                    progress.ttsProgress(completed, total, "已完成语音合成请求 " + completed + "/" + total));
+            progressCallback.accept(10, "已开始后台语音合成 (TTS)");
+
+            // 3. PPT 转 PDF 并渲染为图片（所有页面都已渲染时整段跳过）
+            File pdfFile = scratchSpace.locate(scratch, "converted.pdf");
+            List<PptPage> pages;
+            if (manifest.hasAllPages()) {
+                pages = manifest.getRenderedPages();
+                progress.conversionProgress(100, "从检查点恢复页面图片，共 " + pages.size() + " 页");
+            } else {
+                if (manifest.isPdfConverted() && pdfFile.exists()) {
+                    progress.conversionProgress(50, "从检查点恢复 PDF 文件");
+                } else {
+                    passGate(gate, TaskLogEntry.STAGE_CONVERT);
+                    progress.conversionProgress(0, "正在将 PPT 转换为 PDF...");
+                    pdfFile = withScratch(scratch, dir -> {
+                        File output = new File(dir, "converted.pdf");
+                        pptService.convertPptToPdf(pptFile, output);
+                        return output;
+                    });
+                    manifest.markPdfConverted();
+                    progress.conversionProgress(50, "PPT 转 PDF 完成");
+                }
+
+                passGate(gate, TaskLogEntry.STAGE_CONVERT);
+                progress.conversionProgress(55, "正在将 PDF 转换为高清图片...");
+                File pdf = pdfFile;
+                List<String> texts = textContents;
+                pages = withScratch(scratch, dir ->
+                        pptService.convertPdfToPages(pdf, dir, texts, manifest::isPageRendered, manifest::recordPage));
+                if (pages.isEmpty()) {
+                    throw new IllegalArgumentException("PDF 转图片失败");
+                }
+                manifest.recordPageCount(pages.size());
+                progress.conversionProgress(100, "PDF 转图片完成，共 " + pages.size() + " 页");
             }
 
-            // 5. 为每页生成语音并构建 ImageSlide (并行处理)
-            progressCallback.accept(65, "正在生成语音合成 (TTS)...");
-            List<ImageSlide> slides;
-            java.util.concurrent.ForkJoinPool customThreadPool = new java.util.concurrent.ForkJoinPool(5);
-            try {
-                // 使用 AtomicInteger 追踪进度
-                java.util.concurrent.atomic.AtomicInteger processedCount = new java.util.concurrent.atomic.AtomicInteger(0);
-                int totalPages = pages.size();
-                
-                slides = customThreadPool.submit(() ->
-                        pages.parallelStream()
-                                .map(page -> {
-                                    List<ImageSlide> pageSlides = processPage(page, audioDir);
-                                    int current = processedCount.incrementAndGet();
-                                    int percent = 65 + (int)((current / (double)totalPages) * 20); // 65% -> 85%
-                                    progressCallback.accept(percent, "已处理第 " + page.getPageIndex() + " 页语音");
-                                    return pageSlides;
-                                })
-                                .flatMap(List::stream)
-                                .collect(java.util.stream.Collectors.toList())
-                ).get();
-            } catch (Exception e) {
-                log.error("并发处理 TTS 失败", e);
-                throw new RuntimeException("TTS 生成失败", e);
-            } finally {
-                customThreadPool.shutdown();
+            // 4. 等待语音合成完成并构建 ImageSlide（短页合并请求，长页按句子分段）
+            if (!narrationFuture.isDone()) {
+                progressCallback.accept(progress.percent(), "等待语音合成完成...");
+            }
+            List<List<NarrationSegment>> narrations = awaitNarration(narrationFuture);
+            manifest.flush();
+            List<ImageSlide> slides = new ArrayList<>();
+            for (int i = 0; i < pages.size(); i++) {
+                List<NarrationSegment> segments = i < narrations.size() ? narrations.get(i) : List.of();
+                slides.addAll(buildSlides(pages.get(i), segments));
+            }
+            List<String> silentSegments = new ArrayList<>();
+            for (int i = 0; i < narrations.size(); i++) {
+                for (NarrationSegment segment : narrations.get(i)) {
+                    if (segment.getAudioPath() == null) {
+                        silentSegments.add("第 " + (i + 1) + " 页: " + segment.getFailure());
+                    }
+                }
+            }
+            if (!silentSegments.isEmpty()) {
+                // 不生成缺少配音的视频；已合成的分段记在检查点中，重试时只重新合成失败的分段
+                throw new IllegalStateException(silentSegments.size() + " 段语音合成失败，" + silentSegments.get(0)
+                        + (silentSegments.size() > 1 ? " 等" : ""));
             }
             progressCallback.accept(85, "语音合成完成，准备合成视频...");
 
-            // 6. 生成视频
+            // 5. 生成视频
+            passGate(gate, TaskLogEntry.STAGE_ENCODE);
             String videoFilename = "video_" + System.currentTimeMillis() + ".mp4";
-            String videoOutputPath = new File(audioDir, videoFilename).getAbsolutePath();
+            String videoOutputPath = new File(taskDir, videoFilename).getAbsolutePath();
+
+            // 封面、拖动预览图直接由页面图片生成，不需要解码视频；createVideoWithAudio 结束时会删除图片
+            progressCallback.accept(88, "正在生成预览图...");
+            imageToVideoService.createPreview(slides, previewPrefix(taskId));
 
-            progressCallback.accept(90, "正在合成最终视频 (FFmpeg)...");
-            String result = imageToVideoService.createVideoWithAudio(slides, videoOutputPath);
+            // 只在编码期间占用编码名额，文本提取、TTS 和页面渲染不占用
+            beforeEncode(gate);
+            String localVideo;
+            try {
+                progressCallback.accept(90, "正在合成最终视频 (FFmpeg)...");
+                localVideo = imageToVideoService.createVideoWithAudio(slides, videoOutputPath);
+            } finally {
+                gate.afterEncode();
+            }
 
-            // 7. 清理临时 PDF 文件
+            progressCallback.accept(95, "正在保存视频...");
+            String result = videoKey(taskId);
+            artifactStore.put(result, Paths.get(localVideo), "video/mp4");
+            manifest.recordVideo(result);
+            Files.deleteIfExists(Paths.get(localVideo));
+            succeeded = true;
+
+            // 6. 清理临时 PDF 文件
             if (pdfFile.exists()) {
                 pdfFile.delete();
             }
@@ -178,155 +386,166 @@ public class PptToVideoService {
 
             return result;
         } finally {
-            if (pptFile.exists()) {
+            if (narrationFuture != null && !narrationFuture.isDone()) {
+                // 转换失败时取消尚未开始的 TTS 请求
+                narrationFuture.cancel(true);
+            }
+            // 失败时保留源文件和已完成的产物，供重试时从检查点继续
+            if (succeeded && pptFile.exists()) {
                 pptFile.delete();
             }
+            if (!succeeded) {
+                flushManifest(manifest);
+            }
+            scratchSpace.release(scratch, succeeded);
+            storageManager.release(workDir);
+            storageManager.release(taskDir);
         }
     }
 
     /**
-     * 处理单页 PPT：生成 TTS 语音并构建 ImageSlide 列表（支持长文本分段）
+     * 视频在产物存储中的 key
      */
-    private List<ImageSlide> processPage(PptPage page, File audioDir) {
-        List<ImageSlide> slides = new ArrayList<>();
-        String text = page.getTextContent();
-        
-        // 如果文本长度超过限制，进行分段处理
-        if (StringUtils.hasText(text) && text.length() > 900) {
-            log.info("第 {} 页文本过长 ({} 字符)，进行分段处理", page.getPageIndex(), text.length());
-            List<String> textSegments = splitText(text, 900);
-            
-            for (int i = 0; i < textSegments.size(); i++) {
-                String segment = textSegments.get(i);
-                String audioPath = null;
-                double duration = 3.0;
-                
-                String audioFilename = "audio_" + page.getPageIndex() + "_part_" + (i + 1) + ".wav";
-                String targetAudioPath = new File(audioDir, audioFilename).getAbsolutePath();
-                
-                try {
-                    audioPath = ttsService.synthesizeSpeech(segment, targetAudioPath);
-                    if (audioPath != null) {
-                        double audioDuration = getAudioDuration(audioPath);
-                        if (audioDuration > 0) {
-                            duration = audioDuration;
-                            // 仅在最后一段添加缓冲时间
-                            if (i == textSegments.size() - 1) {
-                                duration += 0.5;
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    log.error("第 {} 页第 {} 段 TTS 生成失败", page.getPageIndex(), i + 1, e);
-                }
-                
-                slides.add(ImageSlide.builder()
-                        .imagePath(page.getImagePath())
-                        .text(segment)
-                        .audioPath(audioPath)
-                        .duration(duration)
-                        .build());
-            }
-        } else {
-            // 文本未超长，正常处理
-            String audioPath = null;
-            double duration = 3.0; // 默认时长 3 秒
+    public static String videoKey(String taskId) {
+        return "ppt-video/" + taskId + ".mp4";
+    }
 
-            if (StringUtils.hasText(text)) {
-                // 生成音频文件路径
-                String audioFilename = "audio_" + page.getPageIndex() + ".wav";
-                String targetAudioPath = new File(audioDir, audioFilename).getAbsolutePath();
-                
-                try {
-                    // 调用 TTS 生成语音
-                    audioPath = ttsService.synthesizeSpeech(text, targetAudioPath);
-                    
-                    if (audioPath != null) {
-                        // 获取音频时长
-                        double audioDuration = getAudioDuration(audioPath);
-                        if (audioDuration > 0) {
-                            duration = audioDuration; // 使用音频时长
-                            // 稍微增加一点缓冲时间 (0.5s) 让视频更自然
-                            duration += 0.5;
-                        }
-                    }
-                } catch (Exception e) {
-                    log.error("第 {} 页 TTS 生成失败，使用默认时长", page.getPageIndex(), e);
-                }
-            } else {
-                log.info("第 {} 页无文本内容，使用默认时长 {}s", page.getPageIndex(), duration);
+    /**
+     * 预览图（封面、雪碧图、WebVTT 索引）在产物存储中的 key 前缀
+     */
+    public static String previewPrefix(String taskId) {
+        return "ppt-video/" + taskId + "/";
+    }
+
+    /**
+     * 检查点中记录的视频是否已保存到产物存储（旧版本的检查点记录的是本地绝对路径，需要重新生成）
+     */
+    private boolean isVideoStored(JobManifest manifest) {
+        String key = manifest.getVideoPath();
+        return key != null && !new File(key).isAbsolute() && artifactStore.exists(key);
+    }
+
+    private void passGate(StageGate gate, String stage) throws IOException {
+        try {
+            gate.await(stage);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("任务被中断", e);
+        }
+    }
+
+    /**
+     * 在可写的中间文件目录中执行一个阶段；写内存盘失败时改写到磁盘重新执行一次，
+     * 已记入检查点的页面不会重复渲染
+     */
+    private <T> T withScratch(ScratchSpace.ScratchDir scratch, ScratchStage<T> stage) throws IOException {
+        try {
+            return stage.run(scratchSpace.writableDir(scratch));
+        } catch (IOException e) {
+            // 任务被中断（取消、租约丢失）时不重试
+            if (Thread.currentThread().isInterrupted() || !scratchSpace.spill(scratch, e)) {
+                throw e;
             }
+            return stage.run(scratchSpace.writableDir(scratch));
+        }
+    }
 
-            slides.add(ImageSlide.builder()
-                    .imagePath(page.getImagePath())
-                    .text(text)
-                    .audioPath(audioPath)
-                    .duration(duration)
-                    .build());
+    /**
+     * 任务失败时保存已完成的页面和语音记录，供重试时复用；保存失败不掩盖任务本身的异常
+     */
+    private void flushManifest(JobManifest manifest) {
+        try {
+            manifest.flush();
+        } catch (UncheckedIOException e) {
+            log.warn("保存任务清单失败: {}", e.getMessage());
+        }
+    }
+
+    private void beforeEncode(StageGate gate) throws IOException {
+        try {
+            gate.beforeEncode();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("任务被中断", e);
+        }
+    }
+
+    private List<List<NarrationSegment>> awaitNarration(java.util.concurrent.CompletableFuture<List<List<NarrationSegment>>> narrationFuture) {
+        try {
+            return narrationFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("TTS 生成被中断", e);
+        } catch (java.util.concurrent.ExecutionException e) {
+            throw new RuntimeException("TTS 生成失败", e.getCause());
         }
-        return slides;
     }
 
     /**
-     * 将长文本按标点符号分割成小段
+     * 合并 PPT 转换与语音合成两条并行流水线的进度：转换占 45%，TTS 占 30%，总体落在 10% -> 85%
      */
-    private List<String> splitText(String text, int maxLength) {
-        List<String> segments = new ArrayList<>();
-        if (text == null || text.isEmpty()) {
-            return segments;
+    private static class OverlapProgress {
+        private final java.util.function.BiConsumer<Integer, String> callback;
+        private int conversionPercent;
+        private int ttsPercent;
+        private int reported;
+
+        private OverlapProgress(java.util.function.BiConsumer<Integer, String> callback) {
+            this.callback = callback;
         }
 
-        while (text.length() > maxLength) {
-            // 寻找最佳分割点：优先句号，其次逗号，最后空格
-            int splitIndex = -1;
-            
-            // 在 [maxLength/2, maxLength] 范围内查找标点符号
-            // 这样避免每句话都太短，也避免切断句子
-            int searchEnd = maxLength;
-            int searchStart = maxLength / 2;
-            
-            // 截取待搜索的子串
-            String sub = text.substring(0, searchEnd);
-            
-            // 优先级 1: 句号/问号/感叹号
-            int p1 = Math.max(sub.lastIndexOf("。"), Math.max(sub.lastIndexOf("？"), sub.lastIndexOf("！")));
-            if (p1 == -1) {
-                p1 = Math.max(sub.lastIndexOf("."), Math.max(sub.lastIndexOf("?"), sub.lastIndexOf("!")));
-            }
-            if (p1 > searchStart) splitIndex = p1;
-            
-            // 优先级 2: 逗号/分号
-            if (splitIndex == -1) {
-                int p2 = Math.max(sub.lastIndexOf("，"), sub.lastIndexOf("；"));
-                if (p2 == -1) {
-                    p2 = Math.max(sub.lastIndexOf(","), sub.lastIndexOf(";"));
+        private synchronized void conversionProgress(int percent, String message) {
+            conversionPercent = percent;
+            callback.accept(percent(), message);
+        }
+
+        private synchronized void ttsProgress(int completed, int total, String message) {
+            ttsPercent = total == 0 ? 100 : completed * 100 / total;
+            callback.accept(percent(), message);
+        }
+
+        private synchronized int percent() {
+            reported = Math.max(reported, 10 + (conversionPercent * 45 + ttsPercent * 30) / 100);
+            return reported;
+        }
+    }
+
+    /**
+     * 根据单页的语音片段构建 ImageSlide 列表（长文本每段一个 ImageSlide）
+     */
+    private List<ImageSlide> buildSlides(PptPage page, List<NarrationSegment> segments) {
+        List<ImageSlide> slides = new ArrayList<>();
+        if (segments.isEmpty()) {
+            double duration = 3.0; // 默认时长 3 秒
+            log.info("第 {} 页无文本内容，使用默认时长 {}s", page.getPageIndex(), duration);
+            slides.add(ImageSlide.builder()
+                    .imagePath(page.getImagePath())
+                    .text(page.getTextContent())
+                    .duration(duration)
+                    .build());
+            return slides;
+        }
+
+        for (int i = 0; i < segments.size(); i++) {
+            NarrationSegment segment = segments.get(i);
+            double duration = 3.0;
+            if (segment.getAudioPath() != null && segment.getDuration() > 0) {
+                duration = segment.getDuration();
+                // 仅在最后一段增加缓冲时间 (0.5s) 让视频更自然
+                if (i == segments.size() - 1) {
+                    duration += 0.5;
                 }
-                if (p2 > searchStart) splitIndex = p2;
-            }
-            
-            // 优先级 3: 空格/换行
-            if (splitIndex == -1) {
-                int p3 = Math.max(sub.lastIndexOf(" "), sub.lastIndexOf("\n"));
-                if (p3 > searchStart) splitIndex = p3;
-            }
-            
-            // 如果实在找不到合适的分割点，就强制分割
-            if (splitIndex == -1) {
-                splitIndex = maxLength;
             } else {
-                // 包含标点符号
-                splitIndex += 1; 
+                log.warn("第 {} 页第 {} 段无语音，使用默认时长", page.getPageIndex(), i + 1);
             }
-            
-            segments.add(text.substring(0, splitIndex));
-            text = text.substring(splitIndex);
-        }
-        
-        if (StringUtils.hasText(text)) {
-            segments.add(text);
+            slides.add(ImageSlide.builder()
+                    .imagePath(page.getImagePath())
+                    .text(segment.getText())
+                    .audioPath(segment.getAudioPath())
+                    .duration(duration)
+                    .build());
         }
-        
-        return segments;
+        return slides;
     }
 
     private List<String> extractTextFromPpt(File file) throws IOException {
@@ -373,15 +592,27 @@ public class PptToVideoService {
         return textContents;
     }
 
-    private double getAudioDuration(String audioPath) {
-        try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(audioPath)) {
-            grabber.start();
-            long durationMicroseconds = grabber.getLengthInTime();
-            grabber.stop();
-            return durationMicroseconds / 1_000_000.0;
-        } catch (Exception e) {
-            log.error("获取音频时长失败: {}", audioPath, e);
-            return 0;
+    private interface ScratchStage<T> {
+        T run(File dir) throws IOException;
+    }
+
+    /**
+     * 阶段闸门：重量级阶段开始前调用，实现方可以阻塞以暂停任务
+     */
+    public interface StageGate {
+
+        StageGate NONE = stage -> {
+        };
+
+        void await(String stage) throws InterruptedException;
+
+        /**
+         * 视频编码开始前调用，实现方可以阻塞等待编码名额；返回后无论编码成功与否都会调用 {@link #afterEncode}
+         */
+        default void beforeEncode() throws InterruptedException {
+        }
+
+        default void afterEncode() {
         }
     }
 }
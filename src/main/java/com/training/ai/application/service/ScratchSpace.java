@@ -0,0 +1,337 @@
+package com.training.ai.application.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * 中间文件的工作目录分配：PDF、页面图片、语音片段这类只在任务执行期间使用的文件优先放在 tmpfs（内存盘）上，
+ * 减少云盘的写入和读取；内存盘占用超过预算或剩余空间不足时退回任务目录（磁盘）。
+ * 预算按内存盘的实际占用加上进行中任务尚未用完的预留计算；任务执行中实际占用超出预算或写入内存盘失败时，
+ * 后续阶段改写到磁盘（溢出），已写入内存盘的文件留在原处继续使用。
+ * 源文件、检查点清单和最终视频始终在磁盘或产物存储上
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ScratchSpace {
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 进行中、使用内存盘的任务
+     */
+    private final Set<ScratchDir> active = ConcurrentHashMap.newKeySet();
+
+    @Value("${scratch.enabled:true}")
+    private boolean enabled;
+
+    @Getter
+    @Value("${scratch.tmpfs-dir:/dev/shm/training-ai-scratch}")
+    private String tmpfsDir;
+
+    @Value("${scratch.memory-budget-mb:1024}")
+    private long memoryBudgetMb;
+
+    /**
+     * 按源文件大小的倍数估算中间文件的体积（高清页面图片通常远大于 PPT 本身）
+     */
+    @Value("${scratch.estimate-factor:10}")
+    private long estimateFactor;
+
+    @Value("${scratch.min-reservation-mb:64}")
+    private long minReservationMb;
+
+    /**
+     * 内存盘实际占用的统计结果缓存时间。统计需要遍历整个内存盘，不在锁内进行，
+     * 同一时间只有一个线程统计，其余线程使用上次的结果
+     */
+    @Value("${scratch.usage-ttl-ms:2000}")
+    private long usageTtlMs;
+
+    private volatile Usage usage = new Usage(Map.of(), 0, 0);
+    private final AtomicBoolean measuring = new AtomicBoolean();
+
+    private Path root;
+
+    @PostConstruct
+    public void init() {
+        root = Paths.get(tmpfsDir).toAbsolutePath().normalize();
+        if (enabled) {
+            Path parent = root.getParent();
+            if (parent == null || !Files.isDirectory(parent)) {
+                log.info("内存盘目录 {} 不可用，中间文件使用磁盘", parent);
+                enabled = false;
+            }
+        }
+        Gauge.builder("scratch.memory.reserved", active, dirs -> dirs.stream()
+                        .filter(dir -> !dir.isSpilled()).mapToLong(ScratchDir::getReserved).sum())
+                .description("进行中任务预留的内存盘空间")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("scratch.memory.used", this, space -> space.usage().total)
+                .description("内存盘上中间文件的实际占用")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 为任务分配中间文件目录。同一任务在本节点上次执行留下的内存盘目录会被复用，以便从检查点继续；
+     * 复用时同样检查预算，超出时已有文件照常读取，新写入的文件放在磁盘上
+     *
+     * @param name        目录名（任务 ID）
+     * @param sourceBytes 源文件大小，用于估算中间文件体积
+     * @param fallbackDir 内存盘不可用或预算不足时使用的磁盘目录
+     */
+    public ScratchDir allocate(String name, long sourceBytes, File fallbackDir) {
+        if (!fallbackDir.exists()) {
+            fallbackDir.mkdirs();
+        }
+        if (enabled) {
+            Path dir = root.resolve(name).normalize();
+            long estimate = Math.max(sourceBytes * estimateFactor, minReservationMb * 1024 * 1024);
+            Usage current = usage();
+            synchronized (this) {
+                if (Files.isDirectory(dir)) {
+                    // 上次执行已写入的部分计入实际占用，只需再预留剩余部分
+                    long remaining = Math.max(0, estimate - current.of(name));
+                    ScratchDir scratch = new ScratchDir(dir.toFile(), fallbackDir, true, estimate);
+                    if (!fits(remaining, current)) {
+                        log.info("内存盘预算不足，任务 {} 复用已有的内存盘目录，新的中间文件写到磁盘", name);
+                        scratch.spilled = true;
+                        count("spilled");
+                    } else {
+                        count("memory");
+                    }
+                    active.add(scratch);
+                    return scratch;
+                }
+                if (fits(estimate, current)) {
+                    try {
+                        Files.createDirectories(dir);
+                        ScratchDir scratch = new ScratchDir(dir.toFile(), fallbackDir, true, estimate);
+                        active.add(scratch);
+                        count("memory");
+                        return scratch;
+                    } catch (IOException e) {
+                        log.warn("创建内存盘目录失败，中间文件使用磁盘: {}", dir, e);
+                    }
+                } else {
+                    log.info("内存盘预算不足，任务 {} 的中间文件使用磁盘 (预估 {} MB)", name, estimate / 1024 / 1024);
+                }
+            }
+        }
+        count("disk");
+        return new ScratchDir(fallbackDir, fallbackDir, false, 0);
+    }
+
+    /**
+     * 返回接下来写中间文件的目录，在每个写入较多的阶段开始前调用。
+     * 内存盘的实际占用加上各任务剩余预留超出预算、或剩余空间不足以容纳本任务的剩余预留时，
+     * 本任务改写到磁盘目录，之后不再回到内存盘
+     */
+    public File writableDir(ScratchDir scratch) {
+        if (!scratch.inMemory || scratch.spilled) {
+            return scratch.fallbackDir;
+        }
+        Usage current = usage();
+        synchronized (this) {
+            long remaining = Math.max(0, scratch.reserved - current.of(scratch.dir.getName()));
+            if (committedBytes(current) > memoryBudgetMb * 1024 * 1024 || scratch.dir.getUsableSpace() <= remaining) {
+                log.info("内存盘实际占用超出预算，{} 之后的中间文件写到磁盘", scratch.dir.getName());
+                spillTo(scratch);
+                return scratch.fallbackDir;
+            }
+        }
+        return scratch.dir;
+    }
+
+    /**
+     * 写入内存盘失败（通常是空间不足）后调用，本任务之后的中间文件改写到磁盘
+     *
+     * @return 是否发生了溢出；已经在磁盘上时返回 false，调用方应直接抛出原异常
+     */
+    public boolean spill(ScratchDir scratch, Exception cause) {
+        synchronized (this) {
+            if (!scratch.inMemory || scratch.spilled) {
+                return false;
+            }
+            log.warn("写入内存盘失败，{} 之后的中间文件写到磁盘: {}", scratch.dir.getName(), cause.getMessage());
+            spillTo(scratch);
+            return true;
+        }
+    }
+
+    /**
+     * 查找已有的中间文件（可能在内存盘或溢出后的磁盘目录中），都不存在时返回可写目录下的新文件
+     */
+    public File locate(ScratchDir scratch, String filename) {
+        File inScratch = new File(scratch.dir, filename);
+        if (inScratch.exists()) {
+            return inScratch;
+        }
+        File onDisk = new File(scratch.fallbackDir, filename);
+        if (onDisk.exists()) {
+            return onDisk;
+        }
+        return new File(writableDir(scratch), filename);
+    }
+
+    /**
+     * 归还工作目录
+     *
+     * @param discard 为 true 时删除内存盘上的中间文件（任务成功后不再需要）；
+     *                失败的任务保留中间文件供重试使用，由定期清理回收
+     */
+    public void release(ScratchDir scratch, boolean discard) {
+        if (!scratch.inMemory) {
+            return;
+        }
+        active.remove(scratch);
+        if (discard) {
+            FileSystemUtils.deleteRecursively(scratch.dir);
+        }
+    }
+
+    private void spillTo(ScratchDir scratch) {
+        scratch.spilled = true;
+        if (!scratch.fallbackDir.exists()) {
+            scratch.fallbackDir.mkdirs();
+        }
+        count("spilled");
+    }
+
+    /**
+     * 已占用（实际占用加上进行中任务尚未用完的预留）加上本次预估不超过预算，且内存盘剩余空间足够
+     */
+    private boolean fits(long estimate, Usage current) {
+        long budget = memoryBudgetMb * 1024 * 1024;
+        if (committedBytes(current) + estimate > budget) {
+            return false;
+        }
+        File existingAncestor = Files.isDirectory(root) ? root.toFile() : root.getParent().toFile();
+        return existingAncestor.getUsableSpace() > estimate;
+    }
+
+    /**
+     * 内存盘的实际占用，加上仍在写内存盘的任务预留中尚未写入的部分
+     */
+    private long committedBytes(Usage current) {
+        long committed = current.total;
+        for (ScratchDir scratch : active) {
+            if (!scratch.spilled) {
+                committed += Math.max(0, scratch.reserved - current.of(scratch.dir.getName()));
+            }
+        }
+        return committed;
+    }
+
+    /**
+     * 内存盘的实际占用，超过 usage-ttl-ms 时重新统计；其他线程正在统计时直接返回上次的结果
+     */
+    private Usage usage() {
+        Usage current = usage;
+        if (System.currentTimeMillis() - current.measuredAt < usageTtlMs || !measuring.compareAndSet(false, true)) {
+            return current;
+        }
+        try {
+            usage = measure();
+            return usage;
+        } finally {
+            measuring.set(false);
+        }
+    }
+
+    /**
+     * 遍历一次内存盘，统计总占用和每个任务目录的占用
+     */
+    private Usage measure() {
+        Map<String, Long> byDir = new HashMap<>();
+        long total = 0;
+        if (Files.isDirectory(root)) {
+            try (Stream<Path> files = Files.walk(root)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    long size;
+                    try {
+                        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                        size = attrs.isRegularFile() ? attrs.size() : 0;
+                    } catch (IOException e) {
+                        // 统计期间被删除
+                        continue;
+                    }
+                    Path relative = root.relativize(file);
+                    if (size > 0 && relative.getNameCount() > 1) {
+                        byDir.merge(relative.getName(0).toString(), size, Long::sum);
+                    }
+                    total += size;
+                }
+            } catch (IOException | java.io.UncheckedIOException e) {
+                log.debug("统计内存盘占用失败", e);
+            }
+        }
+        return new Usage(byDir, total, System.currentTimeMillis());
+    }
+
+    private void count(String location) {
+        Counter.builder("scratch.allocations")
+                .description("中间文件目录分配次数")
+                .tag("location", location)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static class Usage {
+        private final Map<String, Long> byDir;
+        private final long total;
+        private final long measuredAt;
+
+        private Usage(Map<String, Long> byDir, long total, long measuredAt) {
+            this.byDir = byDir;
+            this.total = total;
+            this.measuredAt = measuredAt;
+        }
+
+        private long of(String dirName) {
+            return byDir.getOrDefault(dirName, 0L);
+        }
+    }
+
+    /**
+     * 任务的中间文件目录。dir 是分配时的目录，溢出后新文件写到 fallbackDir，通过 {@link #writableDir} 获取
+     */
+    @Getter
+    public static class ScratchDir {
+        private final File dir;
+        private final File fallbackDir;
+        private final boolean inMemory;
+        private final long reserved;
+        private volatile boolean spilled;
+
+        private ScratchDir(File dir, File fallbackDir, boolean inMemory, long reserved) {
+            this.dir = dir;
+            this.fallbackDir = fallbackDir;
+            this.inMemory = inMemory;
+            this.reserved = reserved;
+        }
+    }
+}
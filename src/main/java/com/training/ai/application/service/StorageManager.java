@@ -0,0 +1,395 @@
+package com.training.ai.application.service;
+
+import com.training.ai.application.job.JobStore;
+import com.training.ai.application.job.TaskStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 本节点磁盘空间管理：定期扫描各临时目录、输出目录和本地产物存储，
+ * 按 TTL 清理过期文件，产物下载后延迟清理，超过磁盘配额时从最旧的文件开始淘汰。
+ * 正在执行的任务目录和排队中的任务目录不会被清理。
+ * 多个节点共享的任务目录（ppt.task-dir）不计入本节点配额、不参与配额淘汰，
+ * 只清理 Redis 中任务已结束或记录已过期、且超过 TTL 的目录，任何节点执行结果都相同
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StorageManager {
+
+    private final JobStore jobStore;
+    private final ScratchSpace scratchSpace;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 正在使用的目录及引用计数
+     */
+    private final Map<Path, AtomicLong> activePaths = new ConcurrentHashMap<>();
+    /**
+     * 本地产物的首次下载时间，只保存在内存中，重启后这些产物按 TTL 清理
+     */
+    private final Map<Path, Long> downloadedAt = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> usageByRoot = new ConcurrentHashMap<>();
+    private final AtomicLong totalUsage = new AtomicLong();
+
+    private List<ManagedRoot> roots;
+
+    @Value("${storage.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 本节点托管目录的总配额，0 表示不限制
+     */
+    @Value("${storage.quota-mb:20480}")
+    private long quotaMb;
+
+    /**
+     * 中间文件（上传副本、页面图片、转换失败的任务目录等）的保留时间
+     */
+    @Value("${storage.temp-ttl-hours:6}")
+    private long tempTtlHours;
+
+    /**
+     * 生成的视频、音频等结果文件的保留时间
+     */
+    @Value("${storage.output-ttl-hours:72}")
+    private long outputTtlHours;
+
+    @Value("${storage.evict-after-download:true}")
+    private boolean evictAfterDownload;
+
+    /**
+     * 下载后保留的时间，留给断点续传和重复下载
+     */
+    @Value("${storage.download-grace-minutes:30}")
+    private long downloadGraceMinutes;
+
+    @Value("${artifact.local.dir:${user.dir}/artifacts}")
+    private String artifactDir;
+
+    @Value("${ppt.task-dir:${user.dir}/temp/ppt_video_temp}")
+    private String pptTaskDir;
+
+    @Value("${tts.cache.dir:${user.dir}/temp/tts-cache}")
+    private String ttsCacheDir;
+
+    @PostConstruct
+    public void init() {
+        roots = List.of(
+                new ManagedRoot("ppt_video_temp", Paths.get(pptTaskDir).toAbsolutePath(), false, 1, true),
+                // 内存盘上失败任务留下的中间文件
+                new ManagedRoot("scratch", Paths.get(scratchSpace.getTmpfsDir()), false, 1),
+                new ManagedRoot("ppt_images", Paths.get(PptService.TEMP_DIR), false, 1),
+                new ManagedRoot("image_uploads", Paths.get(ImageToVideoService.UPLOAD_TEMP_DIR), false, 1),
+                new ManagedRoot("uploads", Paths.get("uploads").toAbsolutePath(), false, 1),
+                new ManagedRoot("outputs", Paths.get("outputs").toAbsolutePath(), true, 1),
+                // TTS 缓存按 {前两位哈希}/{哈希}.{格式} 存放，命中时刷新修改时间，配额淘汰时最久未用的先删除
+                new ManagedRoot("tts_cache", Paths.get(ttsCacheDir).toAbsolutePath(), true, 2),
+                // 产物 key 形如 ppt-video/{taskId}.mp4，按第二层条目清理；使用对象存储时该目录不存在
+                new ManagedRoot("artifacts", Paths.get(artifactDir).toAbsolutePath(), true, 2));
+        for (ManagedRoot root : roots) {
+            AtomicLong usage = usageByRoot.computeIfAbsent(root.name, k -> new AtomicLong());
+            Gauge.builder("storage.disk.usage", usage, AtomicLong::get)
+                    .description("托管目录占用的磁盘空间")
+                    .tag("dir", root.name)
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+        }
+        Gauge.builder("storage.disk.usage.total", totalUsage, AtomicLong::get)
+                .description("本节点托管目录占用的磁盘空间总和")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("storage.disk.free", this, StorageManager::freeSpace)
+                .description("工作目录所在磁盘的可用空间")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 标记目录正在使用，使用结束后必须调用 {@link #release}
+     */
+    public void acquire(File dir) {
+        activePaths.computeIfAbsent(normalize(dir.toPath()), k -> new AtomicLong()).incrementAndGet();
+    }
+
+    public void release(File dir) {
+        activePaths.computeIfPresent(normalize(dir.toPath()), (k, count) -> count.decrementAndGet() <= 0 ? null : count);
+    }
+
+    /**
+     * 记录本地文件已被下载，之后经过宽限期由清理任务删除
+     */
+    public void markDownloaded(Path file) {
+        if (evictAfterDownload) {
+            downloadedAt.putIfAbsent(normalize(file), System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 托管目录占用是否已超过配额（以最近一次扫描为准），超过时应拒绝新的上传
+     */
+    public boolean isOverQuota() {
+        return enabled && quotaMb > 0 && totalUsage.get() > quotaMb * 1024 * 1024;
+    }
+
+    @Scheduled(fixedDelayString = "${storage.cleanup.interval-ms:600000}", initialDelayString = "${storage.cleanup.initial-delay-ms:60000}")
+    public void cleanup() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<Entry> survivors = new ArrayList<>();
+        long total = 0;
+        for (ManagedRoot root : roots) {
+            long rootUsage = 0;
+            for (Entry entry : scan(root)) {
+                String reason = expiryReason(entry, now);
+                if (reason != null && delete(entry, reason)) {
+                    continue;
+                }
+                evictDownloaded(entry, now);
+                rootUsage += entry.size;
+                survivors.add(entry);
+            }
+            usageByRoot.get(root.name).set(rootUsage);
+            if (root.shared) {
+                // 共享目录的占用是所有节点之和，不能按本节点配额淘汰，也不计入本节点的总占用
+                survivors.removeIf(entry -> entry.root == root);
+                continue;
+            }
+            total += rootUsage;
+        }
+
+        long quotaBytes = quotaMb * 1024 * 1024;
+        if (quotaMb > 0 && total > quotaBytes) {
+            log.warn("托管目录占用 {} MB 超过配额 {} MB，开始淘汰最旧的文件", total / 1024 / 1024, quotaMb);
+            survivors.sort(Comparator.comparingLong(e -> e.lastModified));
+            for (Entry entry : survivors) {
+                if (total <= quotaBytes) {
+                    break;
+                }
+                if (isProtected(entry) || !delete(entry, "quota")) {
+                    continue;
+                }
+                total -= entry.size;
+                usageByRoot.get(entry.root.name).addAndGet(-entry.size);
+            }
+        }
+        totalUsage.set(total);
+    }
+
+    /**
+     * 判断条目是否应被清理，返回清理原因；不需要清理时返回 null
+     */
+    private String expiryReason(Entry entry, long now) {
+        if (isProtected(entry)) {
+            return null;
+        }
+        // 目录条目（同一前缀下的多个产物）中只删除被下载过的文件，见 evictDownloaded
+        if (!entry.directory && entry.downloadedAt > 0 && now - entry.downloadedAt > TimeUnit.MINUTES.toMillis(downloadGraceMinutes)) {
+            return "download";
+        }
+        long ttlHours = entry.root.outputs ? outputTtlHours : tempTtlHours;
+        if (now - entry.lastModified > TimeUnit.HOURS.toMillis(ttlHours)) {
+            return "ttl";
+        }
+        return null;
+    }
+
+    /**
+     * 使用中的目录，以及 Redis 中尚未结束的任务（排队中或执行中）的目录不能清理
+     */
+    private boolean isProtected(Entry entry) {
+        if (activePaths.containsKey(entry.path)) {
+            return true;
+        }
+        return entry.taskStatus != null && !TaskStatus.isFinished(entry.taskStatus);
+    }
+
+    /**
+     * 删除目录条目中下载后已过宽限期的文件，同一前缀下未被下载的产物（如预览图）保留到 TTL
+     */
+    private void evictDownloaded(Entry entry, long now) {
+        if (!entry.directory || isProtected(entry)) {
+            return;
+        }
+        for (Map.Entry<Path, Long> file : entry.downloadedFiles.entrySet()) {
+            Long downloaded = downloadedAt.get(file.getKey());
+            if (downloaded == null || now - downloaded <= TimeUnit.MINUTES.toMillis(downloadGraceMinutes)) {
+                continue;
+            }
+            try {
+                if (Files.deleteIfExists(file.getKey())) {
+                    entry.size -= file.getValue();
+                    log.info("已清理 {} ({} KB, 原因: download)", file.getKey(), file.getValue() / 1024);
+                    Counter.builder("storage.evicted")
+                            .description("被清理的文件和目录数")
+                            .tag("reason", "download")
+                            .register(meterRegistry)
+                            .increment();
+                    Counter.builder("storage.evicted.bytes")
+                            .description("清理释放的磁盘空间")
+                            .tag("reason", "download")
+                            .baseUnit("bytes")
+                            .register(meterRegistry)
+                            .increment(file.getValue());
+                }
+                downloadedAt.remove(file.getKey());
+            } catch (IOException e) {
+                log.warn("清理失败: {}", file.getKey(), e);
+            }
+        }
+    }
+
+    private List<Entry> scan(ManagedRoot root) {
+        List<Entry> entries = new ArrayList<>();
+        if (!Files.isDirectory(root.path)) {
+            return entries;
+        }
+        try (Stream<Path> children = Files.walk(root.path, root.depth)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                if (root.path.relativize(child).getNameCount() != root.depth || child.getFileName().toString().isEmpty()) {
+                    continue;
+                }
+                Entry entry = measure(root, normalize(child));
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("扫描目录失败: {}", root.path, e);
+        }
+        return entries;
+    }
+
+    private Entry measure(ManagedRoot root, Path path) {
+        Entry entry = new Entry(root, path);
+        entry.directory = Files.isDirectory(path);
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attrs.isRegularFile()) {
+                    entry.size += attrs.size();
+                }
+                entry.lastModified = Math.max(entry.lastModified, attrs.lastModifiedTime().toMillis());
+                Long downloaded = downloadedAt.get(file);
+                if (downloaded != null) {
+                    entry.downloadedAt = Math.max(entry.downloadedAt, downloaded);
+                    entry.downloadedFiles.put(file, attrs.size());
+                }
+            }
+        } catch (IOException e) {
+            // 扫描期间被其他线程删除
+            log.debug("统计目录大小失败: {}", path, e);
+            return null;
+        }
+
+        if ((root.name.equals("ppt_video_temp") || root.name.equals("scratch")) && Files.isDirectory(path)) {
+            entry.taskStatus = jobStore.getStatus(path.getFileName().toString());
+        }
+        return entry;
+    }
+
+    private boolean delete(Entry entry, String reason) {
+        try {
+            boolean deleted = FileSystemUtils.deleteRecursively(entry.path);
+            if (deleted) {
+                downloadedAt.keySet().removeIf(file -> file.startsWith(entry.path));
+                log.info("已清理 {} ({} KB, 原因: {})", entry.path, entry.size / 1024, reason);
+                Counter.builder("storage.evicted")
+                        .description("被清理的文件和目录数")
+                        .tag("reason", reason)
+                        .register(meterRegistry)
+                        .increment();
+                Counter.builder("storage.evicted.bytes")
+                        .description("清理释放的磁盘空间")
+                        .tag("reason", reason)
+                        .baseUnit("bytes")
+                        .register(meterRegistry)
+                        .increment(entry.size);
+            }
+            return deleted;
+        } catch (IOException e) {
+            log.warn("清理失败: {}", entry.path, e);
+            return false;
+        }
+    }
+
+    private double freeSpace() {
+        return new File(System.getProperty("user.dir")).getUsableSpace();
+    }
+
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * 托管的根目录，outputs 为 true 时其中的内容按结果文件的 TTL 保留；depth 为清理单位所在的层级；
+     * shared 为 true 表示多个节点共享该目录
+     */
+    private static class ManagedRoot {
+        private final String name;
+        private final Path path;
+        private final boolean outputs;
+        private final int depth;
+        private final boolean shared;
+
+        private ManagedRoot(String name, Path path, boolean outputs, int depth) {
+            this(name, path, outputs, depth, false);
+        }
+
+        private ManagedRoot(String name, Path path, boolean outputs, int depth, boolean shared) {
+            this.name = name;
+            this.path = path;
+            this.outputs = outputs;
+            this.depth = depth;
+            this.shared = shared;
+        }
+    }
+
+    private static class Entry {
+        private final ManagedRoot root;
+        private final Path path;
+        private long size;
+        private long lastModified;
+        private long downloadedAt;
+        private boolean directory;
+        /**
+         * 条目中被下载过的文件及其大小
+         */
+        private final Map<Path, Long> downloadedFiles = new HashMap<>();
+        /**
+         * Redis 中的任务状态，同步转换的任务目录没有对应记录
+         */
+        private String taskStatus;
+
+        private Entry(ManagedRoot root, Path path) {
+            this.root = root;
+            this.path = path;
+        }
+    }
+}
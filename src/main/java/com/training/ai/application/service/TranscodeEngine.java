@@ -0,0 +1,492 @@
+package com.training.ai.application.service;
+
+import lombok.Builder;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import com.training.ai.application.util.H264Headers;
+import com.training.ai.application.util.MediaStreams;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.ffmpeg.avcodec.AVCodec;
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameFilter;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/**
+ * 解码 → 滤镜 → 编码的通用转码流程，FFmpegController 的各个接口共用。
+ * <ul>
+ *     <li>解码器和编码器的线程数可配置（0 表示由 FFmpeg 按 CPU 核数决定）</li>
+ *     <li>解码帧保持解码器的原始像素格式，只在编码器或滤镜需要时转换一次，不经过 BGR 中转</li>
+ *     <li>缩放、帧率、响度归一化通过 FFmpeg 滤镜图完成</li>
+ *     <li>音频编码按目标容器选择，采样率和声道数限制在编码器支持的范围内</li>
+ * </ul>
+ * 只使用软件编解码，不依赖特定的硬件加速。执行线程被中断时抛出 {@link CancellationException}
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TranscodeEngine {
+
+    /**
+     * EBU R128 推荐的培训/网络内容响度目标
+     */
+    private static final String LOUDNORM = "loudnorm=I=-16:TP=-1.5:LRA=11";
+    private static final int DEFAULT_SAMPLE_RATE = 44100;
+    private static final String X264 = "libx264";
+    private static final String OPENH264 = "libopenh264";
+
+    /**
+     * 当前 FFmpeg 构建中的 H.264 编码器：GPL 构建为 libx264，javacv-platform 默认的 LGPL 构建为 libopenh264。
+     * 两者的码率控制参数不同，按编码器分别设置
+     */
+    private final String h264Encoder = encoderName(avcodec.AV_CODEC_ID_H264);
+
+    private final NativeResources nativeResources;
+
+    @Value("${ffmpeg.decoder-threads:0}")
+    private int decoderThreads;
+
+    @Value("${ffmpeg.encoder-threads:0}")
+    private int encoderThreads;
+
+    /**
+     * 创建按本引擎配置（解码线程数、原始像素格式）的 grabber，由调用方 start 和关闭
+     */
+    public FFmpegFrameGrabber open(String inputPath) {
+        return configure(nativeResources.grabber(inputPath));
+    }
+
+    /**
+     * 从输入流读取，不支持 seek：只能用于按顺序即可解码的格式（见 {@link MediaStreams#isStreamable}），
+     * 关闭 grabber 时一并关闭输入流
+     */
+    public FFmpegFrameGrabber open(InputStream input) {
+        return configure(nativeResources.grabber(input, 0));
+    }
+
+    /**
+     * 只读取音频：不选择视频流、不打开视频解码器，转码时视频数据包在解复用阶段丢弃
+     */
+    public FFmpegFrameGrabber openAudio(String inputPath) {
+        return audioOnly(open(inputPath));
+    }
+
+    public FFmpegFrameGrabber openAudio(InputStream input) {
+        return audioOnly(open(input));
+    }
+
+    private static FFmpegFrameGrabber audioOnly(FFmpegFrameGrabber grabber) {
+        // 指定一个不存在的视频流序号，grabber 不会选中任何视频流
+        grabber.setVideoStream(Integer.MAX_VALUE);
+        return grabber;
+    }
+
+    private FFmpegFrameGrabber configure(FFmpegFrameGrabber grabber) {
+        grabber.setVideoOption("threads", String.valueOf(decoderThreads));
+        grabber.setImageMode(FrameGrabber.ImageMode.RAW);
+        return grabber;
+    }
+
+    /**
+     * 按选项转码，输出文件由调用方决定保存位置
+     */
+    public void transcode(String inputPath, String outputPath, TranscodeOptions options) throws Exception {
+        try (FFmpegFrameGrabber grabber = open(inputPath)) {
+            grabber.start();
+            transcode(grabber, outputPath, options);
+        }
+    }
+
+    /**
+     * 从已 start 的 grabber 读取并转码，grabber 由调用方关闭
+     */
+    public void transcode(FFmpegFrameGrabber grabber, String outputPath, TranscodeOptions options) throws Exception {
+        long start = System.currentTimeMillis();
+        boolean hasVideo = options.isVideo() && grabber.hasVideo() && grabber.getImageWidth() > 0;
+        boolean hasAudio = options.isAudio() && grabber.hasAudio() && grabber.getAudioChannels() > 0;
+        if (!hasVideo && !hasAudio) {
+            throw new IllegalArgumentException("输入文件没有可转码的音视频流");
+        }
+
+        discardUnused(grabber, hasVideo, hasAudio);
+
+        int[] size = hasVideo ? outputSize(grabber, options) : new int[]{0, 0};
+        double frameRate = options.getFrameRate() > 0 ? options.getFrameRate() : grabber.getFrameRate();
+        int audioCodec = hasAudio ? audioCodec(options) : avcodec.AV_CODEC_ID_NONE;
+        int channels = hasAudio ? outputChannels(grabber, options, audioCodec) : 0;
+        String videoFilter = hasVideo ? videoFilter(grabber, options, size) : null;
+        String audioFilter = hasAudio ? audioFilter(grabber, options) : null;
+
+        try (FFmpegFrameRecorder recorder = nativeResources.recorder(outputPath, size[0], size[1], channels);
+             FFmpegFrameFilter filter = videoFilter != null || audioFilter != null
+                     ? createFilter(grabber, videoFilter, audioFilter) : null) {
+            if (options.getFormat() != null) {
+                recorder.setFormat(options.getFormat());
+            }
+            if (hasVideo) {
+                recorder.setVideoCodec(options.getVideoCodec() != null ? options.getVideoCodec() : avcodec.AV_CODEC_ID_H264);
+                recorder.setPixelFormat(avutil.AV_PIX_FMT_YUV420P);
+                recorder.setFrameRate(frameRate > 0 ? frameRate : 25);
+                int bitrate = videoBitrate(grabber, options);
+                if (bitrate > 0) {
+                    recorder.setVideoBitrate(bitrate);
+                }
+                recorder.setVideoOption("threads", String.valueOf(encoderThreads));
+                applyRateControl(recorder, options, bitrate);
+                if (options.getVideoOptions() != null) {
+                    options.getVideoOptions().forEach(recorder::setVideoOption);
+                }
+            }
+            if (hasAudio) {
+                recorder.setAudioCodec(audioCodec);
+                recorder.setSampleRate(outputSampleRate(grabber, options, audioCodec));
+                recorder.setAudioChannels(channels);
+                if (options.getAudioBitrate() > 0) {
+                    recorder.setAudioBitrate(options.getAudioBitrate());
+                }
+            }
+            if (filter != null) {
+                filter.start();
+            }
+            recorder.start();
+
+            long frames = 0;
+            Frame frame;
+            while ((frame = next(grabber, hasVideo, hasAudio)) != null) {
+                if (Thread.currentThread().isInterrupted()) {
+                    // 任务被取消：立即停止，recorder/filter 由 try-with-resources 释放，grabber 由调用方关闭
+                    throw new CancellationException("转码已取消");
+                }
+                boolean image = frame.image != null;
+                if (image ? !hasVideo : frame.samples == null || !hasAudio) {
+                    continue;
+                }
+                if (filter != null && (image ? videoFilter != null : audioFilter != null)) {
+                    filter.push(frame, grabber.getPixelFormat());
+                    frames += drain(filter, recorder);
+                } else {
+                    frames += write(recorder, frame, grabber.getPixelFormat());
+                }
+            }
+            if (filter != null) {
+                // fps、loudnorm 等滤镜会缓存帧，输入结束后需要取出剩余的输出
+                filter.push(null);
+                frames += drain(filter, recorder);
+            }
+            recorder.stop();
+            log.info("转码完成: output={}, frames={}, video={}, audio={}, filter=[{}|{}], 耗时 {} ms",
+                    outputPath, frames, hasVideo, hasAudio, videoFilter, audioFilter,
+                    System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * 与已有 H.264 视频参数集一致的编码器选项（profile、熵编码；libx264 另加 level、参考帧数和 preset），
+     * 转码结果与该视频分辨率、帧率相同时参数集一致，可以直接复制数据包拼接。
+     * OpenH264 按分辨率和帧率自动选择 level，不支持设置参考帧数
+     *
+     * @param x264Preset 只对 libx264 生效，为空时使用编码器默认值
+     */
+    public Map<String, String> matchingH264Options(H264Headers.Info headers, String x264Preset) {
+        boolean x264 = X264.equals(h264Encoder);
+        Map<String, String> options = new LinkedHashMap<>();
+        switch (headers.getProfileIdc()) {
+            case 66 -> options.put("profile", x264 ? "baseline" : "constrained_baseline");
+            case 77 -> options.put("profile", "main");
+            case 100 -> options.put("profile", "high");
+            default -> log.warn("不支持按 profile_idc={} 设置编码器，使用默认 profile", headers.getProfileIdc());
+        }
+        options.put("coder", headers.isCabac() ? "cabac" : "cavlc");
+        if (x264) {
+            if (x264Preset != null && !x264Preset.isBlank()) {
+                options.put("preset", x264Preset);
+            }
+            options.put("level", String.valueOf(headers.getLevelIdc()));
+            options.put("refs", String.valueOf(Math.max(1, headers.getMaxRefFrames())));
+        }
+        return options;
+    }
+
+    /**
+     * 是否支持基于统计文件的两遍编码（仅 libx264）
+     */
+    public boolean supportsTwoPass() {
+        return X264.equals(h264Encoder);
+    }
+
+    private void applyRateControl(FFmpegFrameRecorder recorder, TranscodeOptions options, int bitrate) {
+        String encoder = recorder.getVideoCodec() == avcodec.AV_CODEC_ID_H264 ? h264Encoder : "";
+        if (options.getCrf() != null) {
+            int crf = options.getCrf();
+            if (X264.equals(encoder)) {
+                recorder.setVideoOption("crf", String.valueOf(crf));
+            } else if (OPENH264.equals(encoder)) {
+                // OpenH264 没有 CRF，用质量模式加固定 QP 近似
+                recorder.setVideoOption("rc_mode", "quality");
+                recorder.setVideoOption("qmin", String.valueOf(crf));
+                recorder.setVideoOption("qmax", String.valueOf(crf));
+            } else {
+                recorder.setVideoQuality(crf);
+            }
+        }
+        if (options.isConstrainBitrate() && bitrate > 0) {
+            recorder.setVideoOption("maxrate", String.valueOf(bitrate * 3 / 2));
+            recorder.setVideoOption("bufsize", String.valueOf(bitrate * 2));
+            if (OPENH264.equals(encoder)) {
+                // OpenH264 不允许跳帧时不控制码率，QP 上限默认 31 也会导致复杂画面超出码率
+                recorder.setVideoOption("allow_skip_frames", "1");
+                recorder.setVideoOption("qmax", "51");
+            }
+        }
+        if (options.getPass() > 0 && X264.equals(encoder)) {
+            recorder.setVideoOption("x264-params", "pass=" + options.getPass() + ":stats=" + options.getPassLogFile());
+        }
+    }
+
+    private static String encoderName(int codecId) {
+        AVCodec codec = avcodec.avcodec_find_encoder(codecId);
+        return codec == null ? "" : codec.name().getString();
+    }
+
+    /**
+     * 不需要的流（只提取音频时的视频、字幕、数据流）在解复用时直接丢弃，不再读出数据包
+     */
+    static void discardUnused(FFmpegFrameGrabber grabber, boolean video, boolean audio) {
+        AVFormatContext context = grabber.getFormatContext();
+        for (int i = 0; i < context.nb_streams(); i++) {
+            boolean used = video && i == grabber.getVideoStream() || audio && i == grabber.getAudioStream();
+            if (!used) {
+                context.streams(i).discard(avcodec.AVDISCARD_ALL);
+            }
+        }
+    }
+
+    private static Frame next(FFmpegFrameGrabber grabber, boolean hasVideo, boolean hasAudio) throws Exception {
+        if (!hasVideo) {
+            // 只需要音频时跳过视频包的解码
+            return grabber.grabSamples();
+        }
+        return hasAudio ? grabber.grab() : grabber.grabImage();
+    }
+
+    private static long drain(FFmpegFrameFilter filter, FFmpegFrameRecorder recorder) throws Exception {
+        long frames = 0;
+        Frame filtered;
+        while ((filtered = filter.pull()) != null) {
+            frames += write(recorder, filtered, filter.getPixelFormat());
+        }
+        return frames;
+    }
+
+    private static long write(FFmpegFrameRecorder recorder, Frame frame, int pixelFormat) throws Exception {
+        if (frame.image != null) {
+            // 帧率转换或源文件时间戳有空洞时，按帧时间戳对齐，避免音画逐渐不同步
+            if (frame.timestamp > recorder.getTimestamp()) {
+                recorder.setTimestamp(frame.timestamp);
+            }
+            recorder.record(frame, pixelFormat);
+            return 1;
+        }
+        if (frame.samples != null) {
+            recorder.record(frame);
+            return 1;
+        }
+        return 0;
+    }
+
+    private FFmpegFrameFilter createFilter(FFmpegFrameGrabber grabber, String videoFilter, String audioFilter) {
+        FFmpegFrameFilter filter = nativeResources.filter(videoFilter, audioFilter,
+                videoFilter != null ? grabber.getImageWidth() : 0,
+                videoFilter != null ? grabber.getImageHeight() : 0,
+                audioFilter != null ? grabber.getAudioChannels() : 0);
+        filter.setPixelFormat(grabber.getPixelFormat());
+        filter.setFrameRate(grabber.getFrameRate());
+        filter.setAspectRatio(grabber.getAspectRatio());
+        filter.setSampleFormat(grabber.getSampleFormat());
+        filter.setSampleRate(grabber.getSampleRate());
+        return filter;
+    }
+
+    /**
+     * 只指定宽或高时按原始比例计算另一边；H.264/yuv420p 要求宽高为偶数
+     */
+    private static int[] outputSize(FFmpegFrameGrabber grabber, TranscodeOptions options) {
+        int sourceWidth = grabber.getImageWidth();
+        int sourceHeight = grabber.getImageHeight();
+        int width = options.getWidth();
+        int height = options.getHeight();
+        if (width <= 0 && height <= 0) {
+            return new int[]{even(sourceWidth), even(sourceHeight)};
+        }
+        if (width <= 0) {
+            width = (int) Math.round((double) sourceWidth * height / sourceHeight);
+        } else if (height <= 0) {
+            height = (int) Math.round((double) sourceHeight * width / sourceWidth);
+        }
+        return new int[]{even(width), even(height)};
+    }
+
+    private static int even(int value) {
+        return Math.max(2, value - value % 2);
+    }
+
+    private static String videoFilter(FFmpegFrameGrabber grabber, TranscodeOptions options, int[] size) {
+        List<String> filters = new ArrayList<>();
+        if (size[0] != grabber.getImageWidth() || size[1] != grabber.getImageHeight()) {
+            if (options.isLetterbox()) {
+                filters.add("scale=" + size[0] + ":" + size[1] + ":force_original_aspect_ratio=decrease,"
+                        + "pad=" + size[0] + ":" + size[1] + ":(ow-iw)/2:(oh-ih)/2");
+            } else {
+                filters.add("scale=" + size[0] + ":" + size[1]);
+            }
+        }
+        if (options.getFrameRate() > 0 && Math.abs(options.getFrameRate() - grabber.getFrameRate()) > 0.01) {
+            filters.add(String.format(Locale.ROOT, "fps=%.3f", options.getFrameRate()));
+        }
+        if (options.getVideoFilter() != null && !options.getVideoFilter().isBlank()) {
+            filters.add(options.getVideoFilter());
+        }
+        return filters.isEmpty() ? null : String.join(",", filters);
+    }
+
+    private static String audioFilter(FFmpegFrameGrabber grabber, TranscodeOptions options) {
+        if (!options.isLoudnorm()) {
+            return null;
+        }
+        // loudnorm 内部以 192kHz 处理，输出后重采样回源采样率，再由编码器转换到目标采样率
+        return LOUDNORM + ",aresample=" + (grabber.getSampleRate() > 0 ? grabber.getSampleRate() : DEFAULT_SAMPLE_RATE);
+    }
+
+    private static int videoBitrate(FFmpegFrameGrabber grabber, TranscodeOptions options) {
+        if (options.getVideoBitrate() > 0) {
+            return options.getVideoBitrate();
+        }
+        if (options.getVideoBitrateScale() > 0 && grabber.getVideoBitrate() > 0) {
+            return (int) (grabber.getVideoBitrate() * options.getVideoBitrateScale());
+        }
+        return 0;
+    }
+
+    /**
+     * 未指定音频编码时按目标容器选择
+     */
+    static int audioCodec(TranscodeOptions options) {
+        if (options.getAudioCodec() != null) {
+            return options.getAudioCodec();
+        }
+        String format = options.getFormat() == null ? "" : options.getFormat().toLowerCase(Locale.ROOT);
+        return switch (format) {
+            case "mp3" -> avcodec.AV_CODEC_ID_MP3;
+            case "wav" -> avcodec.AV_CODEC_ID_PCM_S16LE;
+            case "flac" -> avcodec.AV_CODEC_ID_FLAC;
+            // FFmpeg 自带的 Vorbis 编码器仍是实验性的，ogg 使用 Opus
+            case "ogg", "webm", "opus" -> avcodec.AV_CODEC_ID_OPUS;
+            default -> avcodec.AV_CODEC_ID_AAC;
+        };
+    }
+
+    private static int outputChannels(FFmpegFrameGrabber grabber, TranscodeOptions options, int audioCodec) {
+        int channels = options.getAudioChannels() > 0 ? options.getAudioChannels() : grabber.getAudioChannels();
+        // MP3 只支持单声道和立体声，多声道源下混为立体声
+        if (audioCodec == avcodec.AV_CODEC_ID_MP3) {
+            channels = Math.min(channels, 2);
+        }
+        return Math.max(1, channels);
+    }
+
+    private static int outputSampleRate(FFmpegFrameGrabber grabber, TranscodeOptions options, int audioCodec) {
+        if (options.getSampleRate() > 0) {
+            return options.getSampleRate();
+        }
+        int sampleRate = grabber.getSampleRate() > 0 ? grabber.getSampleRate() : DEFAULT_SAMPLE_RATE;
+        if (audioCodec == avcodec.AV_CODEC_ID_OPUS) {
+            return 48000;
+        }
+        // MP3/AAC 编码器最高支持 48kHz
+        return Math.min(sampleRate, 48000);
+    }
+
+    /**
+     * 转码选项，未设置的项沿用源文件的参数
+     */
+    @Data
+    @Builder
+    public static class TranscodeOptions {
+        /**
+         * 目标容器格式，为空时按输出文件扩展名推断
+         */
+        private String format;
+        @Builder.Default
+        private boolean video = true;
+        @Builder.Default
+        private boolean audio = true;
+        /**
+         * 视频编码，默认 H.264
+         */
+        private Integer videoCodec;
+        /**
+         * 音频编码，默认按目标容器选择
+         */
+        private Integer audioCodec;
+        /**
+         * 输出宽高，只设置其中一个时按比例缩放
+         */
+        private int width;
+        private int height;
+        /**
+         * 宽高都指定且比例与源不同时保持比例缩放，四周留黑
+         */
+        private boolean letterbox;
+        /**
+         * 输出帧率，与源不同时通过 fps 滤镜转换
+         */
+        private double frameRate;
+        private int videoBitrate;
+        /**
+         * 按源码率的比例设置视频码率，videoBitrate 未设置时生效
+         */
+        private double videoBitrateScale;
+        /**
+         * 固定质量（0-51，越小质量越高），设置后不按码率控制
+         */
+        private Integer crf;
+        /**
+         * 严格限制码率，平均码率不超过 videoBitrate
+         */
+        private boolean constrainBitrate;
+        /**
+         * 两遍编码的第几遍（1 或 2），0 表示单遍；统计数据写在 passLogFile
+         */
+        private int pass;
+        private String passLogFile;
+        private int audioBitrate;
+        private int sampleRate;
+        private int audioChannels;
+        /**
+         * 响度归一化
+         */
+        private boolean loudnorm;
+        /**
+         * 追加在缩放、帧率之后的视频滤镜
+         */
+        private String videoFilter;
+        /**
+         * 传给视频编码器的额外参数
+         */
+        private Map<String, String> videoOptions;
+    }
+}
@@ -1,20 +1,27 @@
 package com.training.ai.application.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.training.ai.application.dto.TtsRequest;
+import com.training.ai.common.concurrent.SingleFlight;
+import com.training.ai.infrastructure.tts.TtsProviderRouter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 
 /**
  * @author sheeran
@@ -23,128 +30,62 @@ import java.util.Map;
 @Service
 public class TtsService {
 
-    @Value("${ai.bigmodel.api-key}")
-    private String apiKey;
-
-    private final RestTemplate restTemplate = new RestTemplate();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final TtsProviderRouter ttsProviderRouter;
+
+    /**
+     * 相同 (文本, 音色, 模型, 格式) 的并发请求只调用一次 TTS，结果分发给所有等待方
+     */
+    private final SingleFlight<TtsRequest, byte[]> inFlightRequests = new SingleFlight<>();
+    private final Counter coalescedCounter;
+    private final Counter cacheHitCounter;
+
+    /**
+     * 按请求内容缓存合成结果，批量导入时各课件重复的开场白、结束语等只合成一次。
+     * 缓存目录由 {@link StorageManager} 按结果文件的 TTL 和磁盘配额清理，命中时刷新修改时间，
+     * 因此按最近使用时间淘汰
+     */
+    @Value("${tts.cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    @Value("${tts.cache.dir:${user.dir}/temp/tts-cache}")
+    private String cacheDir;
+
+    public TtsService(TtsProviderRouter ttsProviderRouter, MeterRegistry meterRegistry) {
+        this.ttsProviderRouter = ttsProviderRouter;
+        this.coalescedCounter = Counter.builder("tts.requests.coalesced")
+                .description("复用进行中请求结果的 TTS 调用次数")
+                .register(meterRegistry);
+        Gauge.builder("tts.requests.in.flight", inFlightRequests, SingleFlight::size)
+                .register(meterRegistry);
+        this.cacheHitCounter = Counter.builder("tts.cache.hits")
+                .description("命中本地缓存的 TTS 调用次数")
+                .register(meterRegistry);
+    }
 
     public String synthesizeSpeech(String text, String outputPath) throws IOException {
         log.info("开始语音合成: text={}, output={}", text.substring(0, Math.min(50, text.length())), outputPath);
+        writeAudio(synthesizeAudio(text), outputPath);
+        log.info("语音合成成功: {}", outputPath);
+        return outputPath;
+    }
 
+    /**
+     * 合成讲解语音（wav），只返回音频数据，由调用方决定写到哪里
+     *
+     * @throws IOException 所有 TTS 提供商均不可用；抛给调用方决定重试或让任务失败，不能静默生成没有配音的视频
+     */
+    public byte[] synthesizeAudio(String text) throws IOException {
+        TtsRequest request = TtsRequest.builder()
+                .text(text)
+                .model("glm-tts")
+                .voice("tongtong")
+                .format("wav")
+                .build();
         try {
-            // 根据智谱AI文档调整 URL 和参数
-            String url = "https://open.bigmodel.cn/api/paas/v4/audio/speech";
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("Authorization", "Bearer " + apiKey);
-
-            Map<String, Object> body = new HashMap<>();
-            // 使用用户提供的模型和声音参数
-            body.put("model", "glm-tts"); // 修正模型名称
-            body.put("input", text);
-            body.put("voice", "tongtong"); // 修正声音名称
-            // 注意：response_format 可能需要根据实际需求调整，有些 API 可能不支持或默认支持特定格式
-            // 根据报错信息 "不支持当前response_format值"，尝试移除该参数或使用文档推荐值
-            // 如果文档说默认是 mp3 或 wav，可以尝试不传，或者传 "wav"
-            // 这里根据用户提供的示例 payload 修改
-            // body.put("response_format", "wav"); 
-            
-            // 暂时移除 response_format，使用默认值，或者根据文档确认支持的值
-            // 如果必须指定，可以尝试 "wav" 或 "mp3"
-            // 根据用户错误提示，之前的 mp3 可能不支持，尝试 wav
-            // 再次检查用户输入: "response_format": "wav" 在示例中是存在的
-            // 但用户错误信息是 "不支持当前response_format值"，可能是之前代码传了 "mp3" 导致的
-            // 我们先尝试改成 "wav"
-            // 另外，speed 参数在 glm-tts 模型中可能不支持，暂时移除
-            
-            // body.put("response_format", "wav"); // 尝试 wav
-            // body.put("speed", 1.0); // 移除 speed
-
-            // 重新构建 body 以匹配用户提供的成功示例结构
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", "glm-tts");
-            requestBody.put("input", text);
-            requestBody.put("voice", "tongtong");
-            // 智谱 GLM-TTS 可能默认返回 mp3 或 wav，显式指定 wav
-            // 如果报错依旧，可能需要查阅最新文档，但根据用户提示，示例里有 response_format: wav
-            // 也有可能是之前的 mp3 不支持
-            // 让我们先按用户给的示例来
-            // requestBody.put("response_format", "wav"); 
-            // 经过仔细比对用户提供的报错信息：
-            // 报错信息中包含的请求体示例：
-            // "{\n  \"model\": \"glm-tts\",\n  \"input\": \"你好，今天天气怎么样.\",\n  \"voice\": \"tongtong\",\n  \"response_format\": \"wav\"\n}"
-            // 这似乎是用户希望我们参考的正确格式？或者这是报错时打印的请求体？
-            // 仔细看：HttpResponse<String> response = Unirest.post(...).body(...).asString(); 根据例子修复问题
-            // 用户意思是参考这个 Unirest 的调用来修复。
-            // Unirest 调用里用了 response_format: wav。
-            // 所以我们将代码改为使用 wav。
-            
-            // 注意：之前的代码用了 model: tts-1, voice: zh-CN-Xiaoxiao, response_format: mp3
-            // 这些参数导致了 400 错误。
-            
-            requestBody.put("response_format", "wav");
-
-            HttpEntity<String> entity = new HttpEntity<>(
-                    objectMapper.writeValueAsString(requestBody),
-                    headers
-            );
-
-            // 由于 RestTemplate 默认处理 byte[] 可能有问题，如果返回的是音频流
-            // 但这里先保持 byte[].class
-            byte[] audioData = null;
-            int maxRetries = 5;
-            for (int i = 0; i < maxRetries; i++) {
-                try {
-                    ResponseEntity<byte[]> response = restTemplate.exchange(
-                            url,
-                            HttpMethod.POST,
-                            entity,
-                            byte[].class
-                    );
-
-                    if (response.getStatusCode().is2xxSuccessful()) {
-                        audioData = response.getBody();
-                        break;
-                    } else {
-                        throw new RuntimeException("语音合成失败，状态码: " + response.getStatusCode());
-                    }
-                } catch (org.springframework.web.client.HttpClientErrorException.TooManyRequests e) {
-                    log.warn("触发速率限制 (429)，等待 {} 秒后重试 (第 {}/{} 次)", (i + 1) * 2, i + 1, maxRetries);
-                    if (i == maxRetries - 1) throw e;
-                    try {
-                        Thread.sleep(2000L * (i + 1));
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new RuntimeException("线程中断", ie);
-                    }
-                }
-            }
-
-            if (audioData == null || audioData.length == 0) {
-                 throw new RuntimeException("语音合成失败，未返回音频数据");
-            }
-
-            Path outputFilePath = Paths.get(outputPath);
-            // 确保父目录存在
-            if (outputFilePath.getParent() != null) {
-                Files.createDirectories(outputFilePath.getParent());
-            }
-
-            try (FileOutputStream fos = new FileOutputStream(outputFilePath.toFile())) {
-                fos.write(audioData);
-            }
-
-            log.info("语音合成成功: {}", outputPath);
-            return outputPath;
-
+            return synthesize(request);
         } catch (Exception e) {
-            log.error("语音合成失败", e);
-            // 不抛出异常，而是返回 null 或空字符串，以免中断整个视频生成流程
-            // 或者根据业务需求决定。这里暂时捕获并记录日志，返回 null
-            // 调用方 ImageToVideoService 需要处理 null 返回值
-            return null; 
+            log.error("语音合成失败，所有 TTS 提供商均不可用", e);
+            throw new IOException("语音合成失败，所有 TTS 提供商均不可用: " + e.getMessage(), e);
         }
     }
 
@@ -158,46 +99,15 @@ public class TtsService {
         log.info("开始语音合成: voice={}, speed={}, output={}", voice, speed, outputPath);
 
         try {
-            String url = "https://open.bigmodel.cn/api/paas/v4/audio/speech";
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("Authorization", "Bearer " + apiKey);
-
-            Map<String, Object> body = new HashMap<>();
-            body.put("model", "tts-1");
-            body.put("input", text);
-            body.put("voice", voice);
-            body.put("response_format", "mp3");
-            body.put("speed", speed);
-
-            HttpEntity<String> entity = new HttpEntity<>(
-                    objectMapper.writeValueAsString(body),
-                    headers
-            );
-
-            ResponseEntity<byte[]> response = restTemplate.exchange(
-                    url,
-                    HttpMethod.POST,
-                    entity,
-                    byte[].class
-            );
-
-            if (!response.getStatusCode().is2xxSuccessful()) {
-                throw new RuntimeException("语音合成失败，状态码: " + response.getStatusCode());
-            }
+            TtsRequest request = TtsRequest.builder()
+                    .text(text)
+                    .model("tts-1")
+                    .voice(voice)
+                    .format("mp3")
+                    .speed(speed)
+                    .build();
 
-            byte[] audioData = response.getBody();
-            if (audioData == null) {
-                throw new RuntimeException("语音合成失败，未返回音频数据");
-            }
-
-            Path outputFilePath = Paths.get(outputPath);
-            Files.createDirectories(outputFilePath.getParent());
-
-            try (FileOutputStream fos = new FileOutputStream(outputFilePath.toFile())) {
-                fos.write(audioData);
-            }
+            writeAudio(synthesize(request), outputPath);
 
             log.info("语音合成成功: {}", outputPath);
             return outputPath;
@@ -207,4 +117,82 @@ public class TtsService {
             throw new RuntimeException("语音合成失败: " + e.getMessage(), e);
         }
     }
+
+    private byte[] synthesize(TtsRequest request) throws IOException {
+        Path cached = cacheEnabled ? cachePath(request) : null;
+        byte[] hit = cached != null ? readCache(cached) : null;
+        if (hit != null) {
+            cacheHitCounter.increment();
+            return hit;
+        }
+
+        SingleFlight.Result<byte[]> result = inFlightRequests.execute(request, () -> {
+            byte[] audio = ttsProviderRouter.synthesize(request);
+            if (cached != null) {
+                writeCache(cached, audio);
+            }
+            return audio;
+        });
+        if (result.isShared()) {
+            coalescedCounter.increment();
+            log.info("复用进行中的相同语音合成请求: text={}", request.getText().substring(0, Math.min(20, request.getText().length())));
+        }
+        return result.getValue();
+    }
+
+    private void writeAudio(byte[] audioData, String outputPath) throws IOException {
+        Path outputFilePath = Paths.get(outputPath);
+        // 确保父目录存在
+        if (outputFilePath.getParent() != null) {
+            Files.createDirectories(outputFilePath.getParent());
+        }
+
+        try (FileOutputStream fos = new FileOutputStream(outputFilePath.toFile())) {
+            fos.write(audioData);
+        }
+    }
+
+    private Path cachePath(TtsRequest request) {
+        String key = request.getModel() + "|" + request.getVoice() + "|" + request.getFormat() + "|" + request.getSpeed() + "|" + request.getText();
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            String name = HexFormat.of().formatHex(hash);
+            return Paths.get(cacheDir, name.substring(0, 2), name + "." + request.getFormat());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 读取缓存并刷新修改时间；缓存不存在或恰好被清理时返回 null
+     */
+    private byte[] readCache(Path cached) {
+        if (!Files.exists(cached)) {
+            return null;
+        }
+        try {
+            byte[] audio = Files.readAllBytes(cached);
+            Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+            return audio;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            log.warn("读取 TTS 缓存失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 先写临时文件再原子替换，并发读取时不会读到写了一半的文件；写缓存失败不影响本次合成
+     */
+    private void writeCache(Path cached, byte[] audio) {
+        try {
+            Files.createDirectories(cached.getParent());
+            Path tmp = Files.createTempFile(cached.getParent(), "tts_", ".tmp");
+            Files.write(tmp, audio);
+            Files.move(tmp, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("写入 TTS 缓存失败: {}", e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,192 @@
+package com.training.ai.application.service;
+
+import com.training.ai.infrastructure.storage.ArtifactStore;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 视频预览图：封面（poster.jpg）、拖动预览的雪碧图（sprite.jpg）和 WebVTT 索引（thumbnails.vtt），
+ * 三个文件保存在产物存储的同一前缀下。VTT 中的雪碧图地址写为相对文件名，
+ * 对外提供时由 {@link #thumbnailsVtt} 替换为限时下载地址
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VideoPreviewService {
+
+    public static final String POSTER = "poster.jpg";
+    public static final String SPRITE = "sprite.jpg";
+    public static final String THUMBNAILS = "thumbnails.vtt";
+
+    private final ArtifactStore artifactStore;
+
+    /**
+     * 是否为预览图文件。预览图随视频一起保留，不因被下载而提前清理
+     */
+    public static boolean isPreviewFile(String filename) {
+        return POSTER.equals(filename) || SPRITE.equals(filename) || THUMBNAILS.equals(filename);
+    }
+
+    @Value("${preview.tile-width:160}")
+    private int tileWidth;
+
+    @Value("${preview.columns:10}")
+    private int columns;
+
+    @Value("${preview.poster-width:1280}")
+    private int posterWidth;
+
+    /**
+     * 生成预览图并保存到产物存储
+     *
+     * @param frames    按时间顺序排列的画面及其在视频中的起止时间
+     * @param keyPrefix 产物 key 前缀，以 / 结尾
+     */
+    public Preview createPreview(List<PreviewFrame> frames, String keyPrefix) throws IOException {
+        if (frames.isEmpty()) {
+            throw new IllegalArgumentException("没有可用于生成预览图的画面");
+        }
+        long start = System.currentTimeMillis();
+        BufferedImage first = read(frames.getFirst().getImage());
+        int tileHeight = Math.max(2, (int) Math.round((double) tileWidth * first.getHeight() / first.getWidth()));
+        int cols = Math.min(Math.max(1, columns), frames.size());
+        int rows = (frames.size() + cols - 1) / cols;
+
+        BufferedImage sprite = new BufferedImage(cols * tileWidth, rows * tileHeight, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g2d = sprite.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.setColor(Color.BLACK);
+        g2d.fillRect(0, 0, sprite.getWidth(), sprite.getHeight());
+        StringBuilder vtt = new StringBuilder("WEBVTT\n");
+        for (int i = 0; i < frames.size(); i++) {
+            PreviewFrame frame = frames.get(i);
+            BufferedImage image = i == 0 ? first : read(frame.getImage());
+            int x = i % cols * tileWidth;
+            int y = i / cols * tileHeight;
+            drawFit(g2d, image, x, y, tileWidth, tileHeight);
+            vtt.append('\n')
+                    .append(timestamp(frame.getStart())).append(" --> ").append(timestamp(frame.getEnd())).append('\n')
+                    .append(SPRITE).append("#xywh=").append(x).append(',').append(y).append(',')
+                    .append(tileWidth).append(',').append(tileHeight).append('\n');
+        }
+        g2d.dispose();
+
+        Preview preview = new Preview(keyPrefix + POSTER, keyPrefix + SPRITE, keyPrefix + THUMBNAILS, frames.size());
+        putJpeg(preview.getPosterKey(), scaleDown(first, posterWidth));
+        putJpeg(preview.getSpriteKey(), sprite);
+        byte[] vttBytes = vtt.toString().getBytes(StandardCharsets.UTF_8);
+        try (InputStream in = new ByteArrayInputStream(vttBytes)) {
+            artifactStore.put(preview.getThumbnailsKey(), in, "text/vtt");
+        }
+        log.info("预览图已生成: prefix={}, 画面数={}, 雪碧图 {}x{}, 耗时 {} ms", keyPrefix, frames.size(),
+                sprite.getWidth(), sprite.getHeight(), System.currentTimeMillis() - start);
+        return preview;
+    }
+
+    /**
+     * 读取 WebVTT 索引，雪碧图替换为限时下载地址
+     *
+     * @throws java.io.FileNotFoundException 预览图不存在
+     */
+    public String thumbnailsVtt(String keyPrefix, Duration expiry) throws IOException {
+        String vtt;
+        try (InputStream in = artifactStore.open(keyPrefix + THUMBNAILS)) {
+            vtt = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        String spriteUrl = artifactStore.presign(keyPrefix + SPRITE, expiry, null);
+        return vtt.replace(SPRITE + "#xywh=", spriteUrl + "#xywh=");
+    }
+
+    private void putJpeg(String key, BufferedImage image) throws IOException {
+        Path file = Files.createTempFile("preview_", ".jpg");
+        try {
+            if (!ImageIO.write(image, "jpg", file.toFile())) {
+                throw new IOException("没有可用的 JPEG 编码器");
+            }
+            artifactStore.put(key, file, "image/jpeg");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static BufferedImage read(File file) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("无法读取图片: " + file);
+        }
+        return image;
+    }
+
+    /**
+     * 保持比例缩放并居中，与视频画面的处理方式一致（四周留黑）
+     */
+    private static void drawFit(Graphics2D g2d, BufferedImage image, int x, int y, int width, int height) {
+        double scale = Math.min((double) width / image.getWidth(), (double) height / image.getHeight());
+        int w = Math.max(1, (int) (image.getWidth() * scale));
+        int h = Math.max(1, (int) (image.getHeight() * scale));
+        g2d.drawImage(image, x + (width - w) / 2, y + (height - h) / 2, w, h, null);
+    }
+
+    private static BufferedImage scaleDown(BufferedImage image, int maxWidth) {
+        if (image.getWidth() <= maxWidth && image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+            return image;
+        }
+        int width = Math.min(image.getWidth(), maxWidth);
+        int height = Math.max(1, (int) Math.round((double) image.getHeight() * width / image.getWidth()));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g2d = scaled.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g2d.drawImage(image, 0, 0, width, height, null);
+        g2d.dispose();
+        return scaled;
+    }
+
+    private static String timestamp(double seconds) {
+        long millis = Math.round(seconds * 1000);
+        return String.format(Locale.ROOT, "%02d:%02d:%02d.%03d",
+                millis / 3_600_000, millis / 60_000 % 60, millis / 1000 % 60, millis % 1000);
+    }
+
+    /**
+     * 一个预览画面及其在视频中的起止时间（秒）
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class PreviewFrame {
+        private final File image;
+        private final double start;
+        private final double end;
+    }
+
+    /**
+     * 生成的预览图在产物存储中的 key
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Preview {
+        private final String posterKey;
+        private final String spriteKey;
+        private final String thumbnailsKey;
+        private final int frames;
+    }
+}
@@ -0,0 +1,224 @@
+package com.training.ai.application.util;
+
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * 从 H.264 的 extradata（mp4 的 avcC 或 Annex B 起始码格式）中解析编码器设置：
+ * SPS 中的 profile、level、参考帧数，PPS 中的熵编码方式。转码时按这些参数设置编码器，
+ * 生成的参数集才能与原视频一致，从而直接复制数据包拼接
+ */
+public class H264Headers {
+
+    private static final int NAL_SPS = 7;
+    private static final int NAL_PPS = 8;
+
+    private H264Headers() {
+    }
+
+    /**
+     * @return 解析结果；extradata 为空、格式无法识别或参数集不完整时返回 null
+     */
+    public static Info parse(byte[] extradata) {
+        if (extradata == null || extradata.length < 8) {
+            return null;
+        }
+        try {
+            byte[][] sets = extradata[0] == 1 ? fromAvcC(extradata) : fromAnnexB(extradata);
+            if (sets[0] == null || sets[1] == null) {
+                return null;
+            }
+            Info info = new Info();
+            parseSps(new BitReader(unescape(sets[0])), info);
+            parsePps(new BitReader(unescape(sets[1])), info);
+            return info;
+        } catch (IndexOutOfBoundsException e) {
+            // 截断或损坏的参数集
+            return null;
+        }
+    }
+
+    private static byte[][] fromAvcC(byte[] data) {
+        int offset = 5;
+        int spsCount = data[offset++] & 0x1f;
+        byte[] sps = null;
+        for (int i = 0; i < spsCount; i++) {
+            int length = ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+            offset += 2;
+            if (sps == null) {
+                sps = copy(data, offset, length);
+            }
+            offset += length;
+        }
+        int ppsCount = data[offset++] & 0xff;
+        byte[] pps = null;
+        if (ppsCount > 0) {
+            int length = ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+            pps = copy(data, offset + 2, length);
+        }
+        return new byte[][]{sps, pps};
+    }
+
+    private static byte[][] fromAnnexB(byte[] data) {
+        byte[] sps = null;
+        byte[] pps = null;
+        int start = nextNal(data, 0);
+        while (start >= 0 && start < data.length) {
+            int next = nextNal(data, start);
+            int end = next < 0 ? data.length : next - 3;
+            // 四字节起始码的前导 0
+            while (end > start && data[end - 1] == 0) {
+                end--;
+            }
+            int type = data[start] & 0x1f;
+            if (type == NAL_SPS && sps == null) {
+                sps = copy(data, start, end - start);
+            } else if (type == NAL_PPS && pps == null) {
+                pps = copy(data, start, end - start);
+            }
+            start = next;
+        }
+        return new byte[][]{sps, pps};
+    }
+
+    /**
+     * 返回 from 之后第一个起始码（00 00 01）后面的位置，没有时返回 -1
+     */
+    private static int nextNal(byte[] data, int from) {
+        for (int i = from; i + 2 < data.length; i++) {
+            if (data[i] == 0 && data[i + 1] == 0 && data[i + 2] == 1) {
+                return i + 3;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] copy(byte[] data, int offset, int length) {
+        byte[] result = new byte[length];
+        System.arraycopy(data, offset, result, 0, length);
+        return result;
+    }
+
+    /**
+     * 去掉防竞争字节（00 00 03 中的 03）
+     */
+    private static byte[] unescape(byte[] nal) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(nal.length);
+        int zeros = 0;
+        for (byte b : nal) {
+            if (zeros >= 2 && b == 3) {
+                zeros = 0;
+                continue;
+            }
+            out.write(b);
+            zeros = b == 0 ? zeros + 1 : 0;
+        }
+        return out.toByteArray();
+    }
+
+    private static void parseSps(BitReader in, Info info) {
+        in.bits(8);
+        info.profileIdc = in.bits(8);
+        in.bits(8);
+        info.levelIdc = in.bits(8);
+        in.ue();
+        int profile = info.profileIdc;
+        if (profile == 100 || profile == 110 || profile == 122 || profile == 244 || profile == 44 || profile == 83
+                || profile == 86 || profile == 118 || profile == 128 || profile == 138 || profile == 139
+                || profile == 134 || profile == 135) {
+            int chromaFormat = in.ue();
+            if (chromaFormat == 3) {
+                in.bits(1);
+            }
+            in.ue();
+            in.ue();
+            in.bits(1);
+            if (in.bits(1) == 1) {
+                for (int i = 0; i < (chromaFormat != 3 ? 8 : 12); i++) {
+                    if (in.bits(1) == 1) {
+                        skipScalingList(in, i < 6 ? 16 : 64);
+                    }
+                }
+            }
+        }
+        in.ue();
+        int pocType = in.ue();
+        if (pocType == 0) {
+            in.ue();
+        } else if (pocType == 1) {
+            in.bits(1);
+            in.se();
+            in.se();
+            int cycle = in.ue();
+            for (int i = 0; i < cycle; i++) {
+                in.se();
+            }
+        }
+        info.maxRefFrames = in.ue();
+    }
+
+    private static void skipScalingList(BitReader in, int size) {
+        int last = 8;
+        int next = 8;
+        for (int j = 0; j < size; j++) {
+            if (next != 0) {
+                next = (last + in.se() + 256) % 256;
+            }
+            last = next == 0 ? last : next;
+        }
+    }
+
+    private static void parsePps(BitReader in, Info info) {
+        in.bits(8);
+        in.ue();
+        in.ue();
+        info.cabac = in.bits(1) == 1;
+    }
+
+    @Getter
+    public static class Info {
+        private int profileIdc;
+        private int levelIdc;
+        private int maxRefFrames;
+        private boolean cabac;
+    }
+
+    private static class BitReader {
+        private final byte[] data;
+        private int position;
+
+        private BitReader(byte[] data) {
+            this.data = data;
+        }
+
+        private int bits(int count) {
+            int value = 0;
+            for (int i = 0; i < count; i++) {
+                int bit = (data[position >> 3] >> (7 - (position & 7))) & 1;
+                value = (value << 1) | bit;
+                position++;
+            }
+            return value;
+        }
+
+        /**
+         * 无符号指数哥伦布编码
+         */
+        private int ue() {
+            int zeros = 0;
+            while (bits(1) == 0) {
+                zeros++;
+                if (zeros > 31) {
+                    throw new IndexOutOfBoundsException("无效的指数哥伦布编码");
+                }
+            }
+            return zeros == 0 ? 0 : (1 << zeros) - 1 + bits(zeros);
+        }
+
+        private int se() {
+            int value = ue();
+            return (value & 1) == 1 ? (value + 1) / 2 : -(value / 2);
+        }
+    }
+}
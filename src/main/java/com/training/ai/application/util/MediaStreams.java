@@ -0,0 +1,121 @@
+package com.training.ai.application.util;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 根据文件头判断媒体能否边接收边解码（不需要在输入中向后 seek）
+ */
+public class MediaStreams {
+
+    /**
+     * 判断时最多预读的字节数，mp4 的 moov 在这个范围之后出现时按不可流式处理
+     */
+    public static final int PEEK_LIMIT = 1024 * 1024;
+
+    private static final int TS_PACKET_SIZE = 188;
+
+    private MediaStreams() {
+    }
+
+    /**
+     * 判断输入能否流式解码，读取后把流重置到开头。
+     * <ul>
+     *     <li>mkv/webm、MPEG-TS/PS、flv、ogg、mp3、ADTS AAC、flac、wav：按顺序读取即可解码</li>
+     *     <li>mp4/mov：moov 在 mdat 之前（faststart）时可以流式解码，否则索引在文件末尾，需要先落盘</li>
+     *     <li>avi 及无法识别的格式：按需要 seek 处理</li>
+     * </ul>
+     */
+    public static boolean isStreamable(BufferedInputStream in) throws IOException {
+        in.mark(PEEK_LIMIT);
+        try {
+            byte[] head = in.readNBytes(TS_PACKET_SIZE + 1);
+            if (head.length < 12) {
+                return false;
+            }
+            if (matches(head, 4, "ftyp")) {
+                in.reset();
+                return isFastStart(in);
+            }
+            if ((head[0] & 0xFF) == 0x1A && (head[1] & 0xFF) == 0x45 && (head[2] & 0xFF) == 0xDF && (head[3] & 0xFF) == 0xA3) {
+                return true;
+            }
+            if (head[0] == 0x47 && head.length > TS_PACKET_SIZE && head[TS_PACKET_SIZE] == 0x47) {
+                return true;
+            }
+            if (head[0] == 0 && head[1] == 0 && head[2] == 1 && (head[3] & 0xFF) == 0xBA) {
+                return true;
+            }
+            if (matches(head, 0, "FLV") || matches(head, 0, "OggS") || matches(head, 0, "fLaC") || matches(head, 0, "ID3")) {
+                return true;
+            }
+            // MP3 帧同步字或 ADTS 头
+            if ((head[0] & 0xFF) == 0xFF && (head[1] & 0xE0) == 0xE0) {
+                return true;
+            }
+            return matches(head, 0, "RIFF") && matches(head, 8, "WAVE");
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * 依次读取顶层 box 头，moov 先于 mdat 出现即为 faststart
+     */
+    private static boolean isFastStart(BufferedInputStream in) throws IOException {
+        long offset = 0;
+        try {
+            while (offset < PEEK_LIMIT) {
+                byte[] header = in.readNBytes(8);
+                if (header.length < 8) {
+                    return false;
+                }
+                long size = readUint32(header, 0);
+                String type = new String(header, 4, 4, StandardCharsets.ISO_8859_1);
+                int headerSize = 8;
+                if (size == 1) {
+                    byte[] large = in.readNBytes(8);
+                    if (large.length < 8) {
+                        return false;
+                    }
+                    size = (readUint32(large, 0) << 32) | readUint32(large, 4);
+                    headerSize = 16;
+                }
+                if ("moov".equals(type)) {
+                    return true;
+                }
+                if ("mdat".equals(type) || size < headerSize) {
+                    // size 为 0 表示 box 延伸到文件末尾
+                    return false;
+                }
+                offset += size;
+                if (offset >= PEEK_LIMIT) {
+                    return false;
+                }
+                in.skipNBytes(size - headerSize);
+            }
+            return false;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    private static long readUint32(byte[] bytes, int offset) {
+        return ((long) (bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static boolean matches(byte[] bytes, int offset, String magic) {
+        if (bytes.length < offset + magic.length()) {
+            return false;
+        }
+        for (int i = 0; i < magic.length(); i++) {
+            if (bytes[offset + i] != (byte) magic.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
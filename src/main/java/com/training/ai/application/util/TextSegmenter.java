@@ -0,0 +1,254 @@
+package com.training.ai.application.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TTS 文本分段工具
+ * 先一次性按中英文标点把文本切成句子，再把句子装箱成不超过上限的片段；
+ * 短页可以合并到同一个 TTS 请求中，减少请求次数
+ */
+public class TextSegmenter {
+
+    /**
+     * 合并多页时，在不以句末标点结尾的页后补一个句号，保证页与页之间有停顿，便于按静音切分音频
+     */
+    private static final char PAGE_TERMINATOR = '。';
+
+    private TextSegmenter() {
+    }
+
+    /**
+     * 一次扫描将文本切分为句子（保留句末标点）
+     */
+    public static List<String> splitSentences(String text) {
+        List<String> sentences = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return sentences;
+        }
+
+        int start = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (isSentenceEnd(text, i)) {
+                int end = i + 1;
+                // 连续的结束符（如 "！？"、"……"、右引号）归入同一句
+                while (end < length && (isSentenceEnd(text, end) || isClosingQuote(text.charAt(end)))) {
+                    end++;
+                }
+                addTrimmed(sentences, text, start, end);
+                start = end;
+                i = end - 1;
+            }
+        }
+        addTrimmed(sentences, text, start, length);
+        return sentences;
+    }
+
+    /**
+     * 把句子装箱为不超过 maxLength 的片段；单句超长时按逗号、空白、强制截断的优先级拆分
+     */
+    public static List<String> pack(List<String> sentences, int maxLength) {
+        List<String> segments = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String sentence : sentences) {
+            if (sentence.length() > maxLength) {
+                flush(segments, current);
+                segments.addAll(splitLongSentence(sentence, maxLength));
+                continue;
+            }
+            if (current.length() > 0 && current.length() + sentence.length() + 1 > maxLength) {
+                flush(segments, current);
+            }
+            appendSentence(current, sentence);
+        }
+        flush(segments, current);
+        return segments;
+    }
+
+    /**
+     * 将文本切分为不超过 maxLength 的片段
+     */
+    public static List<String> split(String text, int maxLength) {
+        return pack(splitSentences(text), maxLength);
+    }
+
+    /**
+     * 为多页文本规划 TTS 请求：
+     * 能放进单个片段的短页会与相邻短页合并，长页按句子拆成多个请求
+     *
+     * @param pageTexts 每页文本，下标即页序号
+     * @param maxLength 单个 TTS 请求的最大字符数
+     * @param batchEnabled 是否允许多页合并
+     */
+    public static List<TtsBatch> planBatches(List<String> pageTexts, int maxLength, boolean batchEnabled) {
+        List<TtsBatch> batches = new ArrayList<>();
+        TtsBatch pending = null;
+
+        for (int pageIndex = 0; pageIndex < pageTexts.size(); pageIndex++) {
+            List<String> segments = split(pageTexts.get(pageIndex), maxLength);
+            if (segments.isEmpty()) {
+                continue;
+            }
+
+            if (segments.size() > 1 || !batchEnabled) {
+                if (pending != null) {
+                    batches.add(pending);
+                    pending = null;
+                }
+                for (int part = 0; part < segments.size(); part++) {
+                    TtsBatch batch = new TtsBatch();
+                    batch.add(new TtsPart(pageIndex, part, segments.get(part)));
+                    batches.add(batch);
+                }
+                continue;
+            }
+
+            String text = withTerminator(segments.get(0));
+            if (pending != null && pending.length() + text.length() > maxLength) {
+                batches.add(pending);
+                pending = null;
+            }
+            if (pending == null) {
+                pending = new TtsBatch();
+            }
+            pending.add(new TtsPart(pageIndex, 0, text));
+        }
+
+        if (pending != null) {
+            batches.add(pending);
+        }
+        return batches;
+    }
+
+    private static List<String> splitLongSentence(String sentence, int maxLength) {
+        List<String> pieces = new ArrayList<>();
+        int start = 0;
+        int length = sentence.length();
+        while (length - start > maxLength) {
+            int limit = start + maxLength;
+            int minCut = start + maxLength / 2;
+            int clauseCut = -1;
+            int spaceCut = -1;
+            // 从后向前只扫描一次，同时记录逗号类与空白类的最后位置
+            for (int i = limit - 1; i > minCut && clauseCut == -1; i--) {
+                char c = sentence.charAt(i);
+                if (isClauseEnd(c)) {
+                    clauseCut = i + 1;
+                } else if (spaceCut == -1 && Character.isWhitespace(c)) {
+                    spaceCut = i + 1;
+                }
+            }
+            int cut = clauseCut != -1 ? clauseCut : (spaceCut != -1 ? spaceCut : limit);
+            addTrimmed(pieces, sentence, start, cut);
+            start = cut;
+        }
+        addTrimmed(pieces, sentence, start, length);
+        return pieces;
+    }
+
+    private static boolean isSentenceEnd(String text, int index) {
+        char c = text.charAt(index);
+        switch (c) {
+            case '。':
+            case '！':
+            case '？':
+            case '!':
+            case '?':
+            case '\n':
+            case '…':
+                return true;
+            case '.':
+                // 英文句点后需是空白或文本结尾，避免把小数、缩写、网址切开
+                return index + 1 >= text.length() || Character.isWhitespace(text.charAt(index + 1));
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isClauseEnd(char c) {
+        return c == '，' || c == '；' || c == '、' || c == '：' || c == ',' || c == ';' || c == ':';
+    }
+
+    private static boolean isClosingQuote(char c) {
+        return c == '”' || c == '’' || c == '"' || c == '」' || c == '）' || c == ')';
+    }
+
+    private static String withTerminator(String text) {
+        char last = text.charAt(text.length() - 1);
+        if (last == '。' || last == '！' || last == '？' || last == '!' || last == '?' || last == '.' || last == '…') {
+            return text;
+        }
+        return text + PAGE_TERMINATOR;
+    }
+
+    private static void addTrimmed(List<String> target, String text, int start, int end) {
+        String piece = text.substring(start, end).trim();
+        if (!piece.isEmpty()) {
+            target.add(piece);
+        }
+    }
+
+    /**
+     * 英文句子之间补一个空格，中文句子直接拼接
+     */
+    private static void appendSentence(StringBuilder target, String sentence) {
+        if (target.length() > 0 && target.charAt(target.length() - 1) < 128 && sentence.charAt(0) < 128) {
+            target.append(' ');
+        }
+        target.append(sentence);
+    }
+
+    private static void flush(List<String> segments, StringBuilder current) {
+        if (current.length() > 0) {
+            segments.add(current.toString());
+            current.setLength(0);
+        }
+    }
+
+    /**
+     * 一次 TTS 请求的内容，可包含多页的文本
+     */
+    @Data
+    public static class TtsBatch {
+        private final List<TtsPart> parts = new ArrayList<>();
+
+        public void add(TtsPart part) {
+            parts.add(part);
+        }
+
+        public int length() {
+            int total = 0;
+            for (TtsPart part : parts) {
+                total += part.getText().length() + 1;
+            }
+            return total;
+        }
+
+        public String getText() {
+            StringBuilder text = new StringBuilder();
+            for (TtsPart part : parts) {
+                appendSentence(text, part.getText());
+            }
+            return text.toString();
+        }
+
+        public boolean isMerged() {
+            return parts.size() > 1;
+        }
+    }
+
+    /**
+     * 请求中属于某一页某一段的文本
+     */
+    @Data
+    @AllArgsConstructor
+    public static class TtsPart {
+        private int pageIndex;
+        private int partIndex;
+        private String text;
+    }
+}
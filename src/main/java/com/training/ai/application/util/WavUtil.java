@@ -0,0 +1,155 @@
+package com.training.ai.application.util;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * WAV 音频工具：读取时长、按静音位置切分合并请求返回的音频
+ */
+public class WavUtil {
+
+    /**
+     * 静音检测窗口（毫秒）
+     */
+    private static final int SILENCE_WINDOW_MS = 30;
+
+    /**
+     * 在预估切分点前后搜索静音的范围（毫秒）
+     */
+    private static final int SEARCH_RADIUS_MS = 1500;
+
+    private WavUtil() {
+    }
+
+    /**
+     * 读取 WAV 文件时长（秒），无法解析时返回 0
+     */
+    public static double getDuration(File wavFile) {
+        try (AudioInputStream in = AudioSystem.getAudioInputStream(wavFile)) {
+            AudioFormat format = in.getFormat();
+            long frames = in.getFrameLength();
+            if (frames <= 0 || format.getFrameRate() <= 0) {
+                return 0;
+            }
+            return frames / format.getFrameRate();
+        } catch (UnsupportedAudioFileException | IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 按权重（通常是各段文本的字符数）预估切分点，再在附近寻找能量最低的窗口作为实际切分点，
+     * 将一个 WAV 文件切分为多个文件
+     *
+     * @param source  合并后的 WAV 音频
+     * @param weights 各段的权重，决定预估切分点
+     * @param outputs 各段的输出文件，数量需与 weights 一致
+     * @return 各段时长（秒）
+     */
+    public static List<Double> splitAtSilence(File source, List<Integer> weights, List<File> outputs)
+            throws IOException, UnsupportedAudioFileException {
+        if (weights.size() != outputs.size() || weights.isEmpty()) {
+            throw new IllegalArgumentException("切分段数与输出文件数量不一致");
+        }
+
+        AudioFormat format;
+        byte[] data;
+        try (AudioInputStream in = AudioSystem.getAudioInputStream(source)) {
+            format = in.getFormat();
+            data = in.readAllBytes();
+        }
+
+        if (format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED || format.getSampleSizeInBits() != 16) {
+            throw new UnsupportedAudioFileException("仅支持 16 位 PCM WAV 切分: " + format);
+        }
+
+        int frameSize = format.getFrameSize();
+        int totalFrames = data.length / frameSize;
+        int frameRate = (int) format.getFrameRate();
+        int window = Math.max(1, frameRate * SILENCE_WINDOW_MS / 1000);
+        int radius = frameRate * SEARCH_RADIUS_MS / 1000;
+
+        long totalWeight = 0;
+        for (int weight : weights) {
+            totalWeight += Math.max(1, weight);
+        }
+
+        List<Integer> cuts = new ArrayList<>();
+        cuts.add(0);
+        long accumulated = 0;
+        for (int i = 0; i < weights.size() - 1; i++) {
+            accumulated += Math.max(1, weights.get(i));
+            int estimated = (int) (totalFrames * accumulated / totalWeight);
+            int previous = cuts.get(cuts.size() - 1);
+            int from = Math.max(previous + window, estimated - radius);
+            int to = Math.min(totalFrames - window, estimated + radius);
+            cuts.add(from < to ? findQuietest(data, format, from, to, window) : Math.max(previous, Math.min(estimated, totalFrames)));
+        }
+        cuts.add(totalFrames);
+
+        List<Double> durations = new ArrayList<>();
+        for (int i = 0; i < outputs.size(); i++) {
+            int startFrame = cuts.get(i);
+            int endFrame = Math.max(startFrame, cuts.get(i + 1));
+            int frames = endFrame - startFrame;
+            try (AudioInputStream piece = new AudioInputStream(
+                    new ByteArrayInputStream(data, startFrame * frameSize, frames * frameSize), format, frames)) {
+                File output = outputs.get(i);
+                if (output.getParentFile() != null) {
+                    output.getParentFile().mkdirs();
+                }
+                AudioSystem.write(piece, AudioFileFormat.Type.WAVE, output);
+            }
+            durations.add(frames / (double) frameRate);
+        }
+        return durations;
+    }
+
+    /**
+     * 在 [from, to) 帧范围内以滑动窗口计算能量，返回能量最低窗口的中心帧
+     */
+    private static int findQuietest(byte[] data, AudioFormat format, int from, int to, int window) {
+        int frameSize = format.getFrameSize();
+        int channels = format.getChannels();
+        boolean bigEndian = format.isBigEndian();
+
+        // 逐帧计算各声道绝对幅值之和，再用滑动窗口累加，整个搜索区间只扫描一次
+        int span = to - from + window;
+        long[] energy = new long[span];
+        for (int f = 0; f < span && from + f < data.length / frameSize; f++) {
+            int offset = (from + f) * frameSize;
+            long sum = 0;
+            for (int c = 0; c < channels; c++) {
+                int pos = offset + c * 2;
+                int sample = bigEndian
+                        ? (data[pos] << 8) | (data[pos + 1] & 0xff)
+                        : (data[pos + 1] << 8) | (data[pos] & 0xff);
+                sum += Math.abs(sample);
+            }
+            energy[f] = sum;
+        }
+
+        long current = 0;
+        for (int f = 0; f < window; f++) {
+            current += energy[f];
+        }
+        long best = current;
+        int bestStart = 0;
+        for (int f = 1; f + window <= span; f++) {
+            current += energy[f + window - 1] - energy[f - 1];
+            if (current < best) {
+                best = current;
+                bestStart = f;
+            }
+        }
+        return from + bestStart + window / 2;
+    }
+}
@@ -0,0 +1,66 @@
+package com.training.ai.common.concurrent;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 合并相同 key 的并发调用：同一时刻只有第一个调用方真正执行，其余调用方等待并共享同一结果。
+ * 调用结束后立即移除，不做结果缓存
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @return 结果及是否复用了其他调用方的进行中请求
+     */
+    public Result<V> execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return new Result<>(await(existing), true);
+        }
+
+        try {
+            V value = loader.get();
+            created.complete(value);
+            return new Result<>(value, false);
+        } catch (Throwable e) {
+            // Error（如 OutOfMemoryError）也要通知等待方，否则它们会永远阻塞
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    public int size() {
+        return inFlight.size();
+    }
+
+    private V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Result<V> {
+        private final V value;
+        private final boolean shared;
+    }
+}
@@ -0,0 +1,42 @@
+package com.training.ai.infrastructure.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * 生成结果（视频、PDF、音频等）的存储。
+ * 产物以 key（形如 ppt-video/{taskId}.mp4 的相对路径）标识，多节点部署时任意节点都能通过 key 读取，
+ * 对外提供下载时使用 {@link #presign} 生成的限时地址，由存储直接提供文件内容
+ */
+public interface ArtifactStore {
+
+    /**
+     * 上传本地文件，源文件保持不变
+     */
+    void put(String key, Path file, String contentType) throws IOException;
+
+    /**
+     * 上传长度未知的流，边读边传，不需要先落盘；不会关闭输入流
+     */
+    void put(String key, InputStream in, String contentType) throws IOException;
+
+    /**
+     * 读取产物内容
+     *
+     * @throws java.io.FileNotFoundException 产物不存在
+     */
+    InputStream open(String key) throws IOException;
+
+    boolean exists(String key);
+
+    void delete(String key);
+
+    /**
+     * 生成限时下载地址
+     *
+     * @param filename 下载时的文件名，为 null 时使用 key 的最后一段
+     */
+    String presign(String key, Duration expiry, String filename);
+}
@@ -0,0 +1,155 @@
+package com.training.ai.infrastructure.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.HexFormat;
+
+/**
+ * 本地文件系统存储，适用于单节点或各节点挂载同一共享目录的部署。
+ * 下载地址指向 /artifacts/download，带过期时间和 HMAC 签名（覆盖 key、过期时间和下载文件名）。
+ * 签名使用独立的 artifact.local.signing-key，不能与 jwt.secret 相同；未配置时使用进程内随机密钥，
+ * 已签发的地址在重启后失效，多节点部署时只能由签发的节点提供下载
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "artifact.store.type", havingValue = "local", matchIfMissing = true)
+public class LocalArtifactStore implements ArtifactStore {
+
+    private final Path root;
+    private final byte[] signingKey;
+
+    public LocalArtifactStore(@Value("${artifact.local.dir:${user.dir}/artifacts}") String dir,
+                              @Value("${artifact.local.signing-key:}") String signingKey,
+                              @Value("${jwt.secret:}") String jwtSecret) {
+        this.root = Paths.get(dir).toAbsolutePath().normalize();
+        if (!signingKey.isBlank() && signingKey.equals(jwtSecret)) {
+            throw new IllegalStateException("artifact.local.signing-key 不能与 jwt.secret 相同");
+        }
+        if (signingKey.isBlank()) {
+            log.warn("未配置 artifact.local.signing-key，使用随机密钥：重启后已签发的下载地址失效，多节点部署需要配置相同的密钥");
+            byte[] random = new byte[32];
+            new SecureRandom().nextBytes(random);
+            this.signingKey = random;
+        } else {
+            this.signingKey = signingKey.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Override
+    public void put(String key, Path file, String contentType) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+        try {
+            Files.copy(file, tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public void put(String key, InputStream in, String contentType) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+        try {
+            Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        Path file = resolve(key);
+        if (!Files.isRegularFile(file)) {
+            throw new FileNotFoundException("产物不存在: " + key);
+        }
+        return Files.newInputStream(file);
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.isRegularFile(resolve(key));
+    }
+
+    @Override
+    public void delete(String key) {
+        try {
+            Files.deleteIfExists(resolve(key));
+        } catch (IOException e) {
+            log.warn("删除产物失败: {}", key, e);
+        }
+    }
+
+    @Override
+    public String presign(String key, Duration expiry, String filename) {
+        long expires = System.currentTimeMillis() / 1000 + expiry.toSeconds();
+        StringBuilder url = new StringBuilder("/artifacts/download?key=").append(encode(key))
+                .append("&expires=").append(expires)
+                .append("&signature=").append(sign(key, expires, filename));
+        if (filename != null) {
+            url.append("&filename=").append(encode(filename));
+        }
+        return url.toString();
+    }
+
+    /**
+     * 校验下载地址的签名和过期时间
+     *
+     * @param filename 地址中的下载文件名，没有时为 null；文件名包含在签名中，不能被替换
+     */
+    public boolean verify(String key, long expires, String filename, String signature) {
+        if (signature == null || expires < System.currentTimeMillis() / 1000) {
+            return false;
+        }
+        return MessageDigest.isEqual(sign(key, expires, filename).getBytes(StandardCharsets.US_ASCII),
+                signature.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * 产物在本地文件系统中的路径，key 不能越出存储根目录
+     */
+    public Path resolve(String key) {
+        Path file = root.resolve(key).normalize();
+        if (!file.startsWith(root) || file.equals(root)) {
+            throw new IllegalArgumentException("非法的产物 key: " + key);
+        }
+        return file;
+    }
+
+    private String sign(String key, long expires, String filename) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(signingKey, "HmacSHA256"));
+            String payload = key + "\n" + expires + (filename != null ? "\n" + filename : "");
+            return HexFormat.of().formatHex(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+}
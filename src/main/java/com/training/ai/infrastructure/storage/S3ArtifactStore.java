@@ -0,0 +1,238 @@
+package com.training.ai.infrastructure.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * S3 兼容对象存储（AWS S3、MinIO、OSS/COS 的 S3 兼容接口），使用 path-style 地址。
+ * 直接调用 REST 接口并按 Signature V4 签名，不引入 SDK；
+ * 超过分片大小的内容使用分片上传，下载地址为预签名 URL，视频流量不经过应用节点
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "artifact.store.type", havingValue = "s3")
+public class S3ArtifactStore implements ArtifactStore {
+
+    /**
+     * S3 要求除最后一片外每片不小于 5MB
+     */
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    private static final Pattern UPLOAD_ID = Pattern.compile("<UploadId>(.+?)</UploadId>");
+
+    private final String endpoint;
+    private final String publicEndpoint;
+    private final String bucket;
+    private final int partSize;
+    private final Duration requestTimeout;
+    private final S3RequestSigner signer;
+    private final HttpClient httpClient;
+
+    public S3ArtifactStore(@Value("${artifact.s3.endpoint}") String endpoint,
+                           @Value("${artifact.s3.public-endpoint:}") String publicEndpoint,
+                           @Value("${artifact.s3.region:us-east-1}") String region,
+                           @Value("${artifact.s3.bucket}") String bucket,
+                           @Value("${artifact.s3.access-key}") String accessKey,
+                           @Value("${artifact.s3.secret-key}") String secretKey,
+                           @Value("${artifact.s3.part-size-mb:8}") int partSizeMb,
+                           @Value("${artifact.s3.timeout-ms:300000}") long timeoutMs) {
+        this.endpoint = trimSlash(endpoint);
+        // 内网地址与对外地址不同时，预签名 URL 必须使用客户端可访问的地址签名
+        this.publicEndpoint = publicEndpoint == null || publicEndpoint.isBlank() ? this.endpoint : trimSlash(publicEndpoint);
+        this.bucket = bucket;
+        this.partSize = Math.max(MIN_PART_SIZE, partSizeMb * 1024 * 1024);
+        this.requestTimeout = Duration.ofMillis(timeoutMs);
+        this.signer = new S3RequestSigner(accessKey, secretKey, region);
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    @Override
+    public void put(String key, Path file, String contentType) throws IOException {
+        if (Files.size(file) <= partSize) {
+            HttpResponse<String> response = send("PUT", key, Map.of(),
+                    HttpRequest.BodyPublishers.ofFile(file), contentType, HttpResponse.BodyHandlers.ofString());
+            check(response, "上传产物 " + key);
+            return;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            put(key, in, contentType);
+        }
+    }
+
+    @Override
+    public void put(String key, InputStream in, String contentType) throws IOException {
+        byte[] first = in.readNBytes(partSize);
+        if (first.length < partSize) {
+            HttpResponse<String> response = send("PUT", key, Map.of(),
+                    HttpRequest.BodyPublishers.ofByteArray(first), contentType, HttpResponse.BodyHandlers.ofString());
+            check(response, "上传产物 " + key);
+            return;
+        }
+
+        String uploadId = createMultipartUpload(key, contentType);
+        try {
+            List<String> etags = new ArrayList<>();
+            byte[] part = first;
+            while (part.length > 0) {
+                etags.add(uploadPart(key, uploadId, etags.size() + 1, part));
+                part = in.readNBytes(partSize);
+            }
+            completeMultipartUpload(key, uploadId, etags);
+        } catch (IOException | RuntimeException e) {
+            abortMultipartUpload(key, uploadId);
+            throw e;
+        }
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        HttpResponse<InputStream> response = send("GET", key, Map.of(),
+                HttpRequest.BodyPublishers.noBody(), null, HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() == 404) {
+            response.body().close();
+            throw new FileNotFoundException("产物不存在: " + key);
+        }
+        if (response.statusCode() / 100 != 2) {
+            String body = new String(response.body().readAllBytes(), StandardCharsets.UTF_8);
+            throw new IOException("读取产物 " + key + " 失败: HTTP " + response.statusCode() + " " + body);
+        }
+        return response.body();
+    }
+
+    @Override
+    public boolean exists(String key) {
+        try {
+            HttpResponse<Void> response = send("HEAD", key, Map.of(),
+                    HttpRequest.BodyPublishers.noBody(), null, HttpResponse.BodyHandlers.discarding());
+            return response.statusCode() / 100 == 2;
+        } catch (IOException e) {
+            log.warn("查询产物失败: {}", key, e);
+            return false;
+        }
+    }
+
+    @Override
+    public void delete(String key) {
+        try {
+            check(send("DELETE", key, Map.of(), HttpRequest.BodyPublishers.noBody(), null,
+                    HttpResponse.BodyHandlers.ofString()), "删除产物 " + key);
+        } catch (IOException e) {
+            log.warn("删除产物失败: {}", key, e);
+        }
+    }
+
+    @Override
+    public String presign(String key, Duration expiry, String filename) {
+        Map<String, String> query = new TreeMap<>();
+        String name = filename != null ? filename : key.substring(key.lastIndexOf('/') + 1);
+        query.put("response-content-disposition", "attachment; filename*=UTF-8''" + S3RequestSigner.uriEncode(name, true));
+        URI base = URI.create(publicEndpoint);
+        return signer.presign("GET", base, objectPath(key), query, Instant.now(), expiry);
+    }
+
+    private String createMultipartUpload(String key, String contentType) throws IOException {
+        HttpResponse<String> response = send("POST", key, Map.of("uploads", ""),
+                HttpRequest.BodyPublishers.noBody(), contentType, HttpResponse.BodyHandlers.ofString());
+        check(response, "创建分片上传 " + key);
+        Matcher matcher = UPLOAD_ID.matcher(response.body());
+        if (!matcher.find()) {
+            throw new IOException("创建分片上传 " + key + " 失败: 响应中没有 UploadId");
+        }
+        return matcher.group(1);
+    }
+
+    private String uploadPart(String key, String uploadId, int partNumber, byte[] data) throws IOException {
+        HttpResponse<String> response = send("PUT", key,
+                Map.of("partNumber", String.valueOf(partNumber), "uploadId", uploadId),
+                HttpRequest.BodyPublishers.ofByteArray(data), null, HttpResponse.BodyHandlers.ofString());
+        check(response, "上传分片 " + partNumber + " " + key);
+        return response.headers().firstValue("ETag")
+                .orElseThrow(() -> new IOException("上传分片 " + partNumber + " " + key + " 失败: 响应中没有 ETag"));
+    }
+
+    private void completeMultipartUpload(String key, String uploadId, List<String> etags) throws IOException {
+        StringBuilder xml = new StringBuilder("<CompleteMultipartUpload>");
+        for (int i = 0; i < etags.size(); i++) {
+            xml.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>")
+                    .append(etags.get(i)).append("</ETag></Part>");
+        }
+        xml.append("</CompleteMultipartUpload>");
+        HttpResponse<String> response = send("POST", key, Map.of("uploadId", uploadId),
+                HttpRequest.BodyPublishers.ofString(xml.toString()), "application/xml", HttpResponse.BodyHandlers.ofString());
+        check(response, "完成分片上传 " + key);
+        // 合并失败时 S3 仍可能返回 200，错误在响应体中
+        if (response.body() != null && response.body().contains("<Error>")) {
+            throw new IOException("完成分片上传 " + key + " 失败: " + response.body());
+        }
+        log.info("分片上传完成: key={}, parts={}", key, etags.size());
+    }
+
+    private void abortMultipartUpload(String key, String uploadId) {
+        try {
+            send("DELETE", key, Map.of("uploadId", uploadId), HttpRequest.BodyPublishers.noBody(), null,
+                    HttpResponse.BodyHandlers.discarding());
+        } catch (IOException e) {
+            log.warn("取消分片上传失败: key={}, uploadId={}", key, uploadId, e);
+        }
+    }
+
+    private <T> HttpResponse<T> send(String method, String key, Map<String, String> query,
+                                     HttpRequest.BodyPublisher body, String contentType,
+                                     HttpResponse.BodyHandler<T> handler) throws IOException {
+        URI base = URI.create(endpoint);
+        String path = objectPath(key);
+        Map<String, String> sortedQuery = new TreeMap<>(query);
+        Map<String, String> headers = signer.sign(method, base, path, sortedQuery, Instant.now());
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(endpoint + path + S3RequestSigner.queryString(sortedQuery)))
+                .timeout(requestTimeout)
+                .method(method, body);
+        headers.forEach(builder::header);
+        if (contentType != null) {
+            builder.header("Content-Type", contentType);
+        }
+        try {
+            return httpClient.send(builder.build(), handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("对象存储请求被中断", e);
+        }
+    }
+
+    private String objectPath(String key) {
+        return "/" + bucket + "/" + S3RequestSigner.uriEncode(key, false);
+    }
+
+    private static void check(HttpResponse<String> response, String action) throws IOException {
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException(action + " 失败: HTTP " + response.statusCode() + " " + response.body());
+        }
+    }
+
+    private static String trimSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
@@ -0,0 +1,159 @@
+package com.training.ai.infrastructure.storage;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * AWS Signature V4 签名（仅 S3 服务），请求体不参与签名（UNSIGNED-PAYLOAD），大文件上传时无需预先计算摘要
+ */
+class S3RequestSigner {
+
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
+
+    private final String accessKey;
+    private final String secretKey;
+    private final String region;
+
+    S3RequestSigner(String accessKey, String secretKey, String region) {
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.region = region;
+    }
+
+    /**
+     * 计算请求签名
+     *
+     * @param path  已编码的请求路径
+     * @param query 按 key 排序的查询参数（未编码）
+     * @return 需要附加到请求上的头（不含 Host，由 HttpClient 根据 URI 自动设置）
+     */
+    Map<String, String> sign(String method, URI endpoint, String path, Map<String, String> query, Instant now) {
+        String amzDate = AMZ_DATE.format(now);
+        String scope = DATE.format(now) + "/" + region + "/s3/aws4_request";
+        String signedHeaders = "host;x-amz-content-sha256;x-amz-date";
+        String canonicalHeaders = "host:" + host(endpoint) + "\n"
+                + "x-amz-content-sha256:" + UNSIGNED_PAYLOAD + "\n"
+                + "x-amz-date:" + amzDate + "\n";
+        String canonicalRequest = method + "\n" + path + "\n" + canonicalQuery(query) + "\n"
+                + canonicalHeaders + "\n" + signedHeaders + "\n" + UNSIGNED_PAYLOAD;
+        String signature = signature(now, amzDate, scope, canonicalRequest);
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("x-amz-content-sha256", UNSIGNED_PAYLOAD);
+        headers.put("x-amz-date", amzDate);
+        headers.put("Authorization", ALGORITHM + " Credential=" + accessKey + "/" + scope
+                + ", SignedHeaders=" + signedHeaders + ", Signature=" + signature);
+        return headers;
+    }
+
+    /**
+     * 生成预签名 URL，签名放在查询参数中
+     */
+    String presign(String method, URI endpoint, String path, Map<String, String> extraQuery, Instant now, Duration expiry) {
+        String amzDate = AMZ_DATE.format(now);
+        String scope = DATE.format(now) + "/" + region + "/s3/aws4_request";
+        Map<String, String> query = new TreeMap<>(extraQuery);
+        query.put("X-Amz-Algorithm", ALGORITHM);
+        query.put("X-Amz-Credential", accessKey + "/" + scope);
+        query.put("X-Amz-Date", amzDate);
+        // S3 预签名最长有效期为 7 天
+        query.put("X-Amz-Expires", String.valueOf(Math.min(expiry.toSeconds(), Duration.ofDays(7).toSeconds())));
+        query.put("X-Amz-SignedHeaders", "host");
+        String canonicalRequest = method + "\n" + path + "\n" + canonicalQuery(query) + "\n"
+                + "host:" + host(endpoint) + "\n\n" + "host\n" + UNSIGNED_PAYLOAD;
+        query.put("X-Amz-Signature", signature(now, amzDate, scope, canonicalRequest));
+        return endpoint.toString().replaceAll("/+$", "") + path + queryString(query);
+    }
+
+    /**
+     * 拼接实际请求的查询字符串，与签名使用的编码方式一致
+     */
+    static String queryString(Map<String, String> query) {
+        return query.isEmpty() ? "" : "?" + canonicalQuery(query);
+    }
+
+    /**
+     * 按 RFC 3986 编码，只保留非保留字符
+     *
+     * @param encodeSlash 路径中的 / 不编码
+     */
+    static String uriEncode(String value, boolean encodeSlash) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~' || (c == '/' && !encodeSlash)) {
+                sb.append(c);
+            } else {
+                sb.append('%').append(String.format("%02X", b & 0xff));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String canonicalQuery(Map<String, String> query) {
+        Map<String, String> sorted = query instanceof TreeMap ? query : new TreeMap<>(query);
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> entry : sorted.entrySet()) {
+            if (!sb.isEmpty()) {
+                sb.append('&');
+            }
+            sb.append(uriEncode(entry.getKey(), true)).append('=').append(uriEncode(entry.getValue(), true));
+        }
+        return sb.toString();
+    }
+
+    private String signature(Instant now, String amzDate, String scope, String canonicalRequest) {
+        String stringToSign = ALGORITHM + "\n" + amzDate + "\n" + scope + "\n" + hex(sha256(canonicalRequest));
+        byte[] key = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), DATE.format(now));
+        key = hmac(key, region);
+        key = hmac(key, "s3");
+        key = hmac(key, "aws4_request");
+        return hex(hmac(key, stringToSign));
+    }
+
+    private static String host(URI endpoint) {
+        int port = endpoint.getPort();
+        boolean defaultPort = port == -1
+                || ("http".equals(endpoint.getScheme()) && port == 80)
+                || ("https".equals(endpoint.getScheme()) && port == 443);
+        return defaultPort ? endpoint.getHost() : endpoint.getHost() + ":" + port;
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String value) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+}
@@ -0,0 +1,112 @@
+package com.training.ai.infrastructure.tts;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.training.ai.application.dto.TtsRequest;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.*;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 智谱 GLM-TTS (/audio/speech)
+ */
+@Slf4j
+@Component
+public class BigModelTtsProvider implements TtsProvider {
+
+    @Value("${ai.bigmodel.api-key}")
+    private String apiKey;
+
+    @Value("${ai.bigmodel.api-url}")
+    private String apiUrl;
+
+    @Getter
+    @Value("${tts.providers.bigmodel.enabled:true}")
+    private boolean enabled;
+
+    @Getter
+    @Value("${tts.providers.bigmodel.weight:10}")
+    private int weight;
+
+    @Getter
+    @Value("${tts.providers.bigmodel.max-concurrency:5}")
+    private int maxConcurrency;
+
+    @Value("${tts.providers.bigmodel.max-retries:5}")
+    private int maxRetries;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    public String getName() {
+        return "bigmodel";
+    }
+
+    @Override
+    public byte[] synthesize(TtsRequest request) {
+        try {
+            String url = apiUrl + "/api/paas/v4/audio/speech";
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.set("Authorization", "Bearer " + apiKey);
+
+            // glm-tts 仅支持 wav 等格式，mp3 会返回 "不支持当前response_format值"
+            Map<String, Object> body = new HashMap<>();
+            body.put("model", request.getModel() != null ? request.getModel() : "glm-tts");
+            body.put("input", request.getText());
+            body.put("voice", request.getVoice() != null ? request.getVoice() : "tongtong");
+            body.put("response_format", request.getFormat() != null ? request.getFormat() : "wav");
+            if (request.getSpeed() != null) {
+                body.put("speed", request.getSpeed());
+            }
+
+            HttpEntity<String> entity = new HttpEntity<>(
+                    objectMapper.writeValueAsString(body),
+                    headers
+            );
+
+            for (int i = 0; i < maxRetries; i++) {
+                try {
+                    ResponseEntity<byte[]> response = restTemplate.exchange(
+                            url,
+                            HttpMethod.POST,
+                            entity,
+                            byte[].class
+                    );
+
+                    if (!response.getStatusCode().is2xxSuccessful()) {
+                        throw new RuntimeException("语音合成失败，状态码: " + response.getStatusCode());
+                    }
+                    byte[] audioData = response.getBody();
+                    if (audioData == null || audioData.length == 0) {
+                        throw new RuntimeException("语音合成失败，未返回音频数据");
+                    }
+                    return audioData;
+                } catch (HttpClientErrorException.TooManyRequests e) {
+                    log.warn("触发速率限制 (429)，等待 {} 秒后重试 (第 {}/{} 次)", (i + 1) * 2, i + 1, maxRetries);
+                    if (i == maxRetries - 1) throw e;
+                    try {
+                        Thread.sleep(2000L * (i + 1));
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException("线程中断", ie);
+                    }
+                }
+            }
+            throw new RuntimeException("语音合成失败，重试次数已用尽");
+
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("BigModel TTS调用失败: " + e.getMessage(), e);
+        }
+    }
+}
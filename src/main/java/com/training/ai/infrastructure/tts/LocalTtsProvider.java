@@ -0,0 +1,97 @@
+package com.training.ai.infrastructure.tts;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.training.ai.application.dto.TtsRequest;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.*;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 本地部署的离线 TTS 引擎，兼容 OpenAI /v1/audio/speech 协议
+ * （如自建的 CosyVoice / Kokoro 服务或测试用的桩服务），用于故障兜底和高峰削峰
+ */
+@Slf4j
+@Component
+public class LocalTtsProvider implements TtsProvider {
+
+    @Value("${tts.providers.local.url:http://127.0.0.1:8880/v1/audio/speech}")
+    private String url;
+
+    @Value("${tts.providers.local.model:tts-1}")
+    private String model;
+
+    @Value("${tts.providers.local.voice:zh-CN}")
+    private String voice;
+
+    @Getter
+    @Value("${tts.providers.local.enabled:false}")
+    private boolean enabled;
+
+    @Getter
+    @Value("${tts.providers.local.weight:0}")
+    private int weight;
+
+    @Getter
+    @Value("${tts.providers.local.max-concurrency:2}")
+    private int maxConcurrency;
+
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public LocalTtsProvider(@Value("${tts.providers.local.timeout:60000}") int timeout) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(Math.min(timeout, 5000));
+        requestFactory.setReadTimeout(timeout);
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+
+    @Override
+    public String getName() {
+        return "local";
+    }
+
+    @Override
+    public byte[] synthesize(TtsRequest request) {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+
+            // 本地引擎使用自己的模型与音色，只沿用输出格式
+            Map<String, Object> body = new HashMap<>();
+            body.put("model", model);
+            body.put("input", request.getText());
+            body.put("voice", voice);
+            body.put("response_format", request.getFormat() != null ? request.getFormat() : "wav");
+
+            HttpEntity<String> entity = new HttpEntity<>(
+                    objectMapper.writeValueAsString(body),
+                    headers
+            );
+
+            ResponseEntity<byte[]> response = restTemplate.exchange(
+                    url,
+                    HttpMethod.POST,
+                    entity,
+                    byte[].class
+            );
+
+            byte[] audioData = response.getBody();
+            if (!response.getStatusCode().is2xxSuccessful() || audioData == null || audioData.length == 0) {
+                throw new RuntimeException("本地语音合成失败，状态码: " + response.getStatusCode());
+            }
+            return audioData;
+
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("本地 TTS调用失败: " + e.getMessage(), e);
+        }
+    }
+}
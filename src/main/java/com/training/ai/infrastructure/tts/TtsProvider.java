@@ -0,0 +1,25 @@
+package com.training.ai.infrastructure.tts;
+
+import com.training.ai.application.dto.TtsRequest;
+
+public interface TtsProvider {
+
+    /**
+     * 提供商名称，用于路由配置与监控指标
+     */
+    String getName();
+
+    /**
+     * 路由权重，0 表示仅在其他提供商不可用时兜底
+     */
+    int getWeight();
+
+    /**
+     * 同时进行中的最大请求数，超出后溢出到其他提供商
+     */
+    int getMaxConcurrency();
+
+    boolean isEnabled();
+
+    byte[] synthesize(TtsRequest request);
+}
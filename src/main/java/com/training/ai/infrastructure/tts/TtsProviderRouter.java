@@ -0,0 +1,211 @@
+package com.training.ai.infrastructure.tts;
+
+import com.training.ai.application.dto.TtsRequest;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * TTS 提供商路由：按权重分配请求，提供商并发打满时溢出到其他提供商，
+ * 连续失败的提供商会被熔断一段时间，期间请求自动切换到其他提供商
+ */
+@Slf4j
+@Component
+public class TtsProviderRouter {
+
+    private final List<ProviderState> states;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${tts.failover.failure-threshold:3}")
+    private int failureThreshold;
+
+    @Value("${tts.failover.cooldown-ms:30000}")
+    private long cooldownMs;
+
+    public TtsProviderRouter(List<TtsProvider> providers, MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.states = providers.stream()
+                .filter(TtsProvider::isEnabled)
+                .map(ProviderState::new)
+                .collect(Collectors.toList());
+
+        for (ProviderState state : states) {
+            String name = state.provider.getName();
+            Gauge.builder("tts.provider.healthy", state, s -> s.isHealthy() ? 1 : 0)
+                    .tag("provider", name)
+                    .register(meterRegistry);
+            Gauge.builder("tts.provider.in.flight", state, s -> s.inFlight.get())
+                    .tag("provider", name)
+                    .register(meterRegistry);
+            Gauge.builder("tts.provider.error.rate", state, ProviderState::getErrorRate)
+                    .tag("provider", name)
+                    .register(meterRegistry);
+        }
+        log.info("已启用 TTS 提供商: {}", states.stream().map(s -> s.provider.getName() + "(weight=" + s.provider.getWeight() + ")").collect(Collectors.toList()));
+    }
+
+    public byte[] synthesize(TtsRequest request) {
+        List<ProviderState> candidates = orderCandidates();
+        if (candidates.isEmpty()) {
+            throw new IllegalStateException("没有可用的 TTS 提供商");
+        }
+
+        RuntimeException lastError = null;
+        Set<ProviderState> tried = new HashSet<>();
+
+        // 第一轮：只使用还有空闲并发的提供商，首选打满时把突发流量分给其他提供商
+        for (ProviderState state : candidates) {
+            if (!state.permits.tryAcquire()) {
+                continue;
+            }
+            tried.add(state);
+            try {
+                return invoke(state, request);
+            } catch (RuntimeException e) {
+                lastError = e;
+            } finally {
+                state.permits.release();
+            }
+        }
+
+        // 第二轮：所有提供商都繁忙时，按优先级排队等待尚未尝试过的提供商
+        for (ProviderState state : candidates) {
+            if (tried.contains(state)) {
+                continue;
+            }
+            try {
+                state.permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("线程中断", e);
+            }
+            try {
+                return invoke(state, request);
+            } catch (RuntimeException e) {
+                lastError = e;
+            } finally {
+                state.permits.release();
+            }
+        }
+
+        throw new RuntimeException("所有 TTS 提供商均调用失败", lastError);
+    }
+
+    private byte[] invoke(ProviderState state, TtsRequest request) {
+        String name = state.provider.getName();
+        long start = System.nanoTime();
+        state.inFlight.incrementAndGet();
+        try {
+            byte[] audio = state.provider.synthesize(request);
+            state.recordSuccess();
+            record(name, "success", start);
+            return audio;
+        } catch (RuntimeException e) {
+            state.recordFailure();
+            record(name, "failure", start);
+            log.warn("TTS 提供商 {} 调用失败 (连续失败 {} 次): {}", name, state.consecutiveFailures.get(), e.getMessage());
+            throw e;
+        } finally {
+            state.inFlight.decrementAndGet();
+        }
+    }
+
+    private void record(String provider, String outcome, long startNanos) {
+        Timer.builder("tts.provider.latency")
+                .tag("provider", provider)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 健康且有权重的提供商按权重随机选出首选，其余按权重降序；
+     * 权重为 0 的兜底提供商排在其后，被熔断的提供商排在最后
+     */
+    private List<ProviderState> orderCandidates() {
+        List<ProviderState> weighted = new ArrayList<>();
+        List<ProviderState> fallback = new ArrayList<>();
+        List<ProviderState> unhealthy = new ArrayList<>();
+        for (ProviderState state : states) {
+            if (!state.isHealthy()) {
+                unhealthy.add(state);
+            } else if (state.provider.getWeight() > 0) {
+                weighted.add(state);
+            } else {
+                fallback.add(state);
+            }
+        }
+
+        weighted.sort(Comparator.comparingInt((ProviderState s) -> s.provider.getWeight()).reversed());
+        if (weighted.size() > 1) {
+            int totalWeight = weighted.stream().mapToInt(s -> s.provider.getWeight()).sum();
+            int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+            for (int i = 0; i < weighted.size(); i++) {
+                pick -= weighted.get(i).provider.getWeight();
+                if (pick < 0) {
+                    weighted.add(0, weighted.remove(i));
+                    break;
+                }
+            }
+        }
+
+        List<ProviderState> ordered = new ArrayList<>(weighted);
+        ordered.addAll(fallback);
+        ordered.addAll(unhealthy);
+        return ordered;
+    }
+
+    private class ProviderState {
+        private final TtsProvider provider;
+        private final Semaphore permits;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicLong openUntil = new AtomicLong();
+        /**
+         * 错误率的指数滑动平均，放大 1000 倍后存储
+         */
+        private final AtomicLong errorRatePermille = new AtomicLong();
+
+        private ProviderState(TtsProvider provider) {
+            this.provider = provider;
+            this.permits = new Semaphore(Math.max(1, provider.getMaxConcurrency()), true);
+        }
+
+        private boolean isHealthy() {
+            return System.currentTimeMillis() >= openUntil.get();
+        }
+
+        private double getErrorRate() {
+            return errorRatePermille.get() / 1000.0;
+        }
+
+        private void recordSuccess() {
+            consecutiveFailures.set(0);
+            errorRatePermille.updateAndGet(v -> v * 9 / 10);
+        }
+
+        private void recordFailure() {
+            errorRatePermille.updateAndGet(v -> v * 9 / 10 + 100);
+            if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+                openUntil.set(System.currentTimeMillis() + cooldownMs);
+                consecutiveFailures.set(0);
+                log.error("TTS 提供商 {} 连续失败，熔断 {} ms", provider.getName(), cooldownMs);
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.training.ai.infrastructure.webhook;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Dns;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.Proxy;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 任务结束回调：向调用方提供的地址 POST JSON，请求头 X-Webhook-Signature 为请求体的 HMAC-SHA256，
+ * 接收方可据此校验来源。回调由一个小线程池发送，失败后按退避时间重新调度（不占用发送线程等待），
+ * 一个不可达的地址不会阻塞其他任务的回调；待发送的回调超过 max-pending 时丢弃新的回调。
+ * 签名使用独立的 webhook.secret，未配置时不接受回调。回调地址由匿名调用方提供，只允许 webhook.allowed-hosts 中的主机（未配置时拒绝所有回调），
+ * 连接时由自定义 DNS 解析拒绝回环、内网、链路本地等地址，只连接校验过的地址（不存在 DNS 重绑定的间隙），不走代理，且不跟随重定向
+ */
+@Slf4j
+@Component
+public class WebhookClient {
+
+    private static final String SIGNATURE_HEADER = "X-Webhook-Signature";
+    private static final String ANY_HOST = "*";
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private final OkHttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final byte[] secret;
+    private final int maxAttempts;
+    private final long backoffMs;
+    private final int maxPending;
+    private final List<String> allowedHosts;
+    private final ScheduledExecutorService sender;
+    /**
+     * 已提交、尚未发送成功或放弃的回调数（含等待重试的）
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public WebhookClient(@Value("${webhook.secret:}") String secret,
+                         @Value("${webhook.timeout-ms:5000}") int timeoutMs,
+                         @Value("${webhook.max-attempts:3}") int maxAttempts,
+                         @Value("${webhook.backoff-ms:2000}") long backoffMs,
+                         @Value("${webhook.allowed-hosts:}") String allowedHosts,
+                         @Value("${webhook.concurrency:4}") int concurrency,
+                         @Value("${webhook.max-pending:1000}") int maxPending) {
+        this.httpClient = new OkHttpClient.Builder()
+                .connectTimeout(Duration.ofMillis(timeoutMs))
+                .readTimeout(Duration.ofMillis(timeoutMs))
+                .writeTimeout(Duration.ofMillis(timeoutMs))
+                .callTimeout(Duration.ofMillis(timeoutMs * 2L))
+                // 重定向可以把请求转到内网地址，绕过地址检查
+                .followRedirects(false)
+                .followSslRedirects(false)
+                // 经代理时由代理解析域名，自定义解析不起作用
+                .proxy(Proxy.NO_PROXY)
+                .dns(WebhookClient::lookup)
+                .retryOnConnectionFailure(false)
+                .build();
+        // 接收方需要持有签名密钥，不能复用 JWT 密钥（持有者可以签发登录令牌）
+        this.secret = secret.isBlank() ? null : secret.getBytes(StandardCharsets.UTF_8);
+        if (this.secret == null) {
+            log.warn("未配置 webhook.secret，任务回调已禁用");
+        }
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMs = backoffMs;
+        this.maxPending = Math.max(1, maxPending);
+        this.allowedHosts = Arrays.stream(allowedHosts.split(","))
+                .map(String::trim)
+                .filter(host -> !host.isEmpty())
+                .map(host -> host.toLowerCase(Locale.ROOT))
+                .toList();
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.sender = Executors.newScheduledThreadPool(Math.max(1, concurrency), r -> {
+            Thread thread = new Thread(r, "webhook-sender-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        sender.shutdown();
+        httpClient.connectionPool().evictAll();
+    }
+
+    /**
+     * 提交任务时校验回调地址：只允许 http/https 和 webhook.allowed-hosts 中的主机（* 表示任意公网主机），
+     * 解析后的地址不能是内网地址
+     */
+    public void validate(String url) {
+        if (secret == null) {
+            throw new IllegalArgumentException("服务器未配置回调签名密钥，不支持 callbackUrl");
+        }
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("回调地址格式错误: " + url);
+        }
+        String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase(Locale.ROOT);
+        if (!scheme.equals("http") && !scheme.equals("https") || uri.getHost() == null) {
+            throw new IllegalArgumentException("回调地址只支持 http/https: " + url);
+        }
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        if (!allowedHosts.contains(ANY_HOST) && !allowedHosts.contains(host)) {
+            throw new IllegalArgumentException("回调地址的主机不在允许列表中: " + uri.getHost());
+        }
+        try {
+            lookup(uri.getHost());
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /**
+     * 解析主机并拒绝回环、内网（含 IPv6 ULA）、链路本地（含云厂商元数据地址）、通配和组播地址。
+     * 发送时作为 HTTP 客户端的 DNS 解析使用，连接的就是这里校验过的地址
+     *
+     * @throws UnknownHostException 主机无法解析或解析到不允许的地址
+     */
+    private static List<InetAddress> lookup(String host) throws UnknownHostException {
+        List<InetAddress> addresses;
+        try {
+            addresses = Dns.SYSTEM.lookup(host);
+        } catch (UnknownHostException e) {
+            throw new UnknownHostException("回调地址的主机无法解析: " + host);
+        }
+        for (InetAddress address : addresses) {
+            if (address.isLoopbackAddress() || address.isSiteLocalAddress() || address.isLinkLocalAddress()
+                    || address.isAnyLocalAddress() || address.isMulticastAddress()
+                    || address instanceof Inet6Address && (address.getAddress()[0] & 0xFE) == 0xFC) {
+                throw new UnknownHostException("回调地址不能指向内网地址: " + host);
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * 异步发送回调
+     */
+    public void post(String url, Map<String, Object> payload) {
+        if (secret == null) {
+            return;
+        }
+        String body;
+        try {
+            body = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            log.error("回调内容序列化失败: {}", payload, e);
+            return;
+        }
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            log.warn("待发送的回调超过上限 {}，丢弃: url={}", maxPending, url);
+            return;
+        }
+        Request request = new Request.Builder()
+                .url(url)
+                .header(SIGNATURE_HEADER, sign(body))
+                .post(RequestBody.create(body, JSON))
+                .build();
+        schedule(request, 1, 0);
+    }
+
+    private void schedule(Request request, int attempt, long delayMs) {
+        try {
+            sender.schedule(() -> send(request, attempt), delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // 应用关闭中
+            pending.decrementAndGet();
+        }
+    }
+
+    private void send(Request request, int attempt) {
+        String error;
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (response.isSuccessful()) {
+                log.info("回调发送成功: url={}", request.url());
+                pending.decrementAndGet();
+                return;
+            }
+            error = "HTTP " + response.code();
+        } catch (UnknownHostException e) {
+            // 地址不允许或无法解析，重试也不会成功
+            log.warn("回调地址不允许，放弃发送: url={}, error={}", request.url(), e.getMessage());
+            pending.decrementAndGet();
+            return;
+        } catch (IOException e) {
+            error = e.getMessage();
+        }
+        log.warn("回调发送失败 (第 {}/{} 次): url={}, error={}", attempt, maxAttempts, request.url(), error);
+        if (attempt < maxAttempts) {
+            schedule(request, attempt + 1, backoffMs * attempt);
+        } else {
+            pending.decrementAndGet();
+        }
+    }
+
+    private String sign(String body) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            return HexFormat.of().formatHex(mac.doFinal(body.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
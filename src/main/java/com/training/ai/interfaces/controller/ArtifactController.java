@@ -0,0 +1,70 @@
+package com.training.ai.interfaces.controller;
+
+import com.training.ai.application.service.StorageManager;
+import com.training.ai.application.service.VideoPreviewService;
+import com.training.ai.infrastructure.storage.ArtifactStore;
+import com.training.ai.infrastructure.storage.LocalArtifactStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 本地产物存储的下载入口，只接受 {@link LocalArtifactStore#presign} 生成的签名地址。
+ * 使用对象存储时下载地址直接指向对象存储，不经过这里
+ */
+@Slf4j
+@RestController
+@RequestMapping("/artifacts")
+@RequiredArgsConstructor
+public class ArtifactController {
+
+    private final ArtifactStore artifactStore;
+    private final StorageManager storageManager;
+
+    @GetMapping("/download")
+    public ResponseEntity<Resource> download(@RequestParam("key") String key,
+                                             @RequestParam("expires") long expires,
+                                             @RequestParam("signature") String signature,
+                                             @RequestParam(value = "filename", required = false) String filename) {
+        if (!(artifactStore instanceof LocalArtifactStore localStore)) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!localStore.verify(key, expires, filename, signature)) {
+            log.warn("产物下载地址无效或已过期: key={}", key);
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        Path file = localStore.resolve(key);
+        if (!Files.isRegularFile(file)) {
+            // 产物已按保留策略清理
+            return ResponseEntity.status(HttpStatus.GONE).build();
+        }
+        // 预览图与视频在同一清理单元（key 的第二层）中，被下载后清理会连带删除视频和其他预览图，
+        // 只有主产物的下载触发延迟清理
+        if (!VideoPreviewService.isPreviewFile(file.getFileName().toString())) {
+            storageManager.markDownloaded(file);
+        }
+
+        String name = filename != null ? filename : file.getFileName().toString();
+        MediaType contentType = MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(name, StandardCharsets.UTF_8).build().toString())
+                .contentType(contentType)
+                .body(new FileSystemResource(file));
+    }
+}
@@ -1,21 +1,51 @@
 package com.training.ai.interfaces.controller;
 
+import com.training.ai.application.job.FFmpegJobService;
+import com.training.ai.application.job.JobEventBroadcaster;
+import com.training.ai.application.job.JobQueue;
+import com.training.ai.application.job.JobStore;
+import com.training.ai.application.job.TaskStatus;
 import com.training.ai.application.service.FFmpegService;
+import com.training.ai.application.service.FFmpegService.CompressOptions;
+import com.training.ai.application.service.FFmpegService.Keyframe;
 import com.training.ai.application.service.FFmpegService.VideoInfo;
 import com.training.ai.common.result.Result;
+import com.training.ai.application.service.StorageManager;
+import com.training.ai.application.service.VideoPreviewService;
+import com.training.ai.application.util.MediaStreams;
+import com.training.ai.infrastructure.storage.ArtifactStore;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.util.FileSystemUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
 
 @Slf4j
 @RestController
@@ -24,57 +54,183 @@ import java.util.Map;
 public class FFmpegController {
 
     private final FFmpegService ffmpegService;
+    private final FFmpegJobService ffmpegJobService;
+    private final JobQueue jobQueue;
+    private final JobStore jobStore;
+    private final JobEventBroadcaster jobEventBroadcaster;
+    private final StorageManager storageManager;
+    private final ArtifactStore artifactStore;
+    private final VideoPreviewService videoPreviewService;
     private static final String UPLOAD_DIR = "uploads";
     private static final String OUTPUT_DIR = "outputs";
+    /**
+     * 流式上传的读缓冲，同时用于判断格式时的预读
+     */
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_KEYFRAMES = 500;
+    private static final int MAX_CONCAT_SEGMENTS = 20;
+    private static final int MAX_FILENAME_LENGTH = 100;
 
+    @Value("${artifact.presign-expiry-minutes:60}")
+    private long presignExpiryMinutes;
+
+    @Value("${job.queue.retry-after-seconds:30}")
+    private int retryAfterSeconds;
+
+    /**
+     * 转换容器格式，默认在编码兼容时直接转封装，transcode=true 时强制重新编码
+     */
     @PostMapping(value = "/convert", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public Result<Map<String, String>> convertVideo(
+    public ResponseEntity<Result<Map<String, String>>> convertVideo(
             @RequestParam("file") MultipartFile file,
-            @RequestParam("format") String format) throws IOException {
-        
-        String inputPath = saveUploadedFile(file);
-        String outputPath = OUTPUT_DIR + "/" + System.currentTimeMillis() + "." + format;
-        
-        String resultPath = ffmpegService.convertVideo(inputPath, outputPath, format);
-        
-        Map<String, String> response = new HashMap<>();
-        response.put("inputPath", inputPath);
-        response.put("outputPath", resultPath);
+            @RequestParam("format") String format,
+            @RequestParam(value = "transcode", defaultValue = "false") boolean transcode,
+            @RequestParam(value = "callbackUrl", required = false) String callbackUrl,
+            Authentication authentication, HttpServletRequest request) throws IOException {
         
-        return Result.success(response);
+        return submit("convert", file, callbackUrl, authentication, request, inputPath -> {
+            String outputPath = OUTPUT_DIR + "/" + System.currentTimeMillis() + "." + format;
+            String resultPath = ffmpegService.convertVideo(inputPath, outputPath, format, !transcode);
+            Map<String, String> result = new HashMap<>();
+            putOutput(result, resultPath);
+            return result;
+        });
     }
 
+    /**
+     * 提取音轨，不解码视频。源音频编码与目标格式兼容（如 AAC → m4a）且不做响度归一化时直接复制，不重新编码
+     */
     @PostMapping(value = "/extract-audio", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public Result<Map<String, String>> extractAudio(@RequestParam("file") MultipartFile file) throws IOException {
-        
-        String inputPath = saveUploadedFile(file);
-        String outputPath = OUTPUT_DIR + "/" + System.currentTimeMillis() + ".mp3";
-        
-        String resultPath = ffmpegService.extractAudio(inputPath, outputPath);
-        
-        Map<String, String> response = new HashMap<>();
-        response.put("inputPath", inputPath);
-        response.put("outputPath", resultPath);
+    public ResponseEntity<Result<Map<String, String>>> extractAudio(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "format", defaultValue = "mp3") String format,
+            @RequestParam(value = "loudnorm", defaultValue = "false") boolean loudnorm,
+            @RequestParam(value = "callbackUrl", required = false) String callbackUrl,
+            Authentication authentication, HttpServletRequest request) throws IOException {
         
-        return Result.success(response);
+        return submit("extract-audio", file, callbackUrl, authentication, request, inputPath -> {
+            String outputPath = OUTPUT_DIR + "/" + System.currentTimeMillis() + "." + format;
+            String resultPath = ffmpegService.extractAudio(inputPath, outputPath, format, loudnorm);
+            Map<String, String> result = new HashMap<>();
+            putOutput(result, resultPath);
+            return result;
+        });
     }
 
+    /**
+     * 压缩视频：指定 targetSizeMb 时结果不超过目标大小（必要时自动降低分辨率，多次降低码率后仍超出则任务失败），
+     * 指定 crf 时按固定质量压缩，都未指定时按 quality（源码率的比例）压缩
+     */
     @PostMapping(value = "/compress", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public Result<Map<String, String>> compressVideo(
+    public ResponseEntity<Result<Map<String, String>>> compressVideo(
             @RequestParam("file") MultipartFile file,
-            @RequestParam(value = "quality", defaultValue = "0.7") double quality) throws IOException {
-        
-        String inputPath = saveUploadedFile(file);
-        String outputPath = OUTPUT_DIR + "/" + System.currentTimeMillis() + "_compressed.mp4";
-        
-        String resultPath = ffmpegService.compressVideo(inputPath, outputPath, quality);
-        
-        Map<String, String> response = new HashMap<>();
-        response.put("inputPath", inputPath);
-        response.put("outputPath", resultPath);
-        response.put("quality", String.valueOf(quality));
+            @RequestParam(value = "quality", defaultValue = "0.7") double quality,
+            @RequestParam(value = "targetSizeMb", required = false) Double targetSizeMb,
+            @RequestParam(value = "crf", required = false) Integer crf,
+            @RequestParam(value = "twoPass", defaultValue = "false") boolean twoPass,
+            @RequestParam(value = "maxHeight", defaultValue = "0") int maxHeight,
+            @RequestParam(value = "callbackUrl", required = false) String callbackUrl,
+            Authentication authentication, HttpServletRequest request) throws IOException {
         
-        return Result.success(response);
+        if (crf != null && (crf < 0 || crf > 51)) {
+            return ResponseEntity.badRequest().body(Result.error("crf 取值范围为 0-51"));
+        }
+        CompressOptions options = CompressOptions.builder()
+                .targetBytes(targetSizeMb != null ? (long) (targetSizeMb * 1024 * 1024) : null)
+                .crf(crf)
+                .ratio(quality)
+                .twoPass(twoPass)
+                .maxHeight(maxHeight)
+                .build();
+        return submit("compress", file, callbackUrl, authentication, request, inputPath -> {
+            String outputPath = OUTPUT_DIR + "/" + System.currentTimeMillis() + "_compressed.mp4";
+            String resultPath = ffmpegService.compressVideo(inputPath, outputPath, options);
+            Map<String, String> result = new HashMap<>();
+            result.put("size", String.valueOf(Files.size(Paths.get(resultPath))));
+            putOutput(result, resultPath);
+            return result;
+        });
+    }
+
+    /**
+     * 提取关键帧（只解码关键帧），生成雪碧图、WebVTT 预览索引和封面，单帧图片也保存在同一前缀下。
+     * interval 为取帧间隔（秒），0 表示取出全部关键帧
+     */
+    @PostMapping(value = "/keyframes", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Result<Map<String, String>>> extractKeyframes(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "interval", defaultValue = "10") double interval,
+            @RequestParam(value = "maxFrames", defaultValue = "100") int maxFrames,
+            @RequestParam(value = "width", defaultValue = "320") int width,
+            @RequestParam(value = "callbackUrl", required = false) String callbackUrl,
+            Authentication authentication, HttpServletRequest request) throws IOException {
+
+        if (maxFrames < 1 || maxFrames > MAX_KEYFRAMES) {
+            return ResponseEntity.badRequest().body(Result.error("maxFrames 取值范围为 1-" + MAX_KEYFRAMES));
+        }
+        return submit("keyframes", file, callbackUrl, authentication, request, inputPath -> {
+            File outputDir = new File(OUTPUT_DIR, "keyframes_" + System.currentTimeMillis());
+            try {
+                List<Keyframe> keyframes = ffmpegService.extractKeyframes(inputPath, outputDir, interval, maxFrames, width);
+                if (keyframes.isEmpty()) {
+                    throw new IllegalArgumentException("没有读取到关键帧");
+                }
+                double duration = ffmpegService.getVideoInfo(inputPath).getDuration();
+                String keyPrefix = "ffmpeg/" + UUID.randomUUID() + "/";
+                List<VideoPreviewService.PreviewFrame> frames = new ArrayList<>();
+                List<String> times = new ArrayList<>();
+                for (int i = 0; i < keyframes.size(); i++) {
+                    Keyframe keyframe = keyframes.get(i);
+                    double end = i + 1 < keyframes.size() ? keyframes.get(i + 1).getTime()
+                            : Math.max(duration, keyframe.getTime() + interval);
+                    File image = new File(keyframe.getPath());
+                    frames.add(new VideoPreviewService.PreviewFrame(image, keyframe.getTime(), end));
+                    artifactStore.put(keyPrefix + image.getName(), image.toPath(), MediaType.IMAGE_JPEG_VALUE);
+                    times.add(String.format(Locale.ROOT, "%.3f", keyframe.getTime()));
+                }
+                VideoPreviewService.Preview preview = videoPreviewService.createPreview(frames, keyPrefix);
+
+                Map<String, String> result = new HashMap<>();
+                result.put("outputPath", preview.getThumbnailsKey());
+                result.put("posterUrl", artifactStore.presign(preview.getPosterKey(), Duration.ofMinutes(presignExpiryMinutes), null));
+                result.put("spriteUrl", artifactStore.presign(preview.getSpriteKey(), Duration.ofMinutes(presignExpiryMinutes), null));
+                result.put("keyframes", String.join(",", times));
+                return result;
+            } finally {
+                FileSystemUtils.deleteRecursively(outputDir);
+            }
+        });
+    }
+
+    /**
+     * 按上传顺序拼接视频（如片头 + 正片 + 片尾），输出 mp4。编码参数与正片一致的片段直接复制数据包，
+     * 只有不一致的片段按正片的编码器设置重新编码；仍无法直接拼接时任务失败，
+     * reencode 为 true 时改为把所有片段（包括正片）统一重新编码
+     */
+    @PostMapping(value = "/concat", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Result<Map<String, String>>> concatVideos(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(value = "reencode", defaultValue = "false") boolean reencode,
+            @RequestParam(value = "callbackUrl", required = false) String callbackUrl,
+            Authentication authentication, HttpServletRequest request) throws IOException {
+
+        if (files.size() < 2 || files.size() > MAX_CONCAT_SEGMENTS) {
+            return ResponseEntity.badRequest().body(Result.error("视频片段数量应为 2-" + MAX_CONCAT_SEGMENTS));
+        }
+        String owner = RequestOwner.of(authentication, request);
+        ResponseEntity<Result<Map<String, String>>> rejection = admit(owner);
+        if (rejection != null) {
+            return rejection;
+        }
+        return enqueue("concat", files.getFirst().getOriginalFilename(), owner, callbackUrl,
+                () -> saveUploadedFiles(files), inputDir -> {
+                    List<String> segments;
+                    try (Stream<Path> paths = Files.list(Paths.get(inputDir))) {
+                        segments = paths.map(Path::toString).sorted().toList();
+                    }
+                    String outputPath = OUTPUT_DIR + "/" + System.currentTimeMillis() + ".mp4";
+                    return output(ffmpegService.concatVideos(segments, outputPath, reencode));
+                });
     }
 
     @GetMapping("/info")
@@ -97,19 +253,298 @@ public class FFmpegController {
     }
 
     @PostMapping(value = "/convert-audio", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public Result<Map<String, String>> convertAudio(
+    public ResponseEntity<Result<Map<String, String>>> convertAudio(
             @RequestParam("file") MultipartFile file,
-            @RequestParam("format") String format) throws IOException {
-        
-        String inputPath = saveUploadedFile(file);
-        File audioFile = ffmpegService.convertToAudioFile(inputPath, format);
+            @RequestParam("format") String format,
+            @RequestParam(value = "loudnorm", defaultValue = "false") boolean loudnorm,
+            @RequestParam(value = "callbackUrl", required = false) String callbackUrl,
+            Authentication authentication, HttpServletRequest request) throws IOException {
         
+        String outputPath = OUTPUT_DIR + "/" + System.currentTimeMillis() + "." + format;
+        return submit("convert-audio", file, callbackUrl, authentication, request, inputPath -> {
+            File audioFile = ffmpegService.convertToAudioFile(inputPath, outputPath, format, loudnorm);
+            Map<String, String> result = new HashMap<>();
+            putOutput(result, audioFile.getAbsolutePath());
+            result.put("format", format);
+            return result;
+        });
+    }
+
+    /**
+     * 流式上传：请求体直接是媒体数据（不使用 multipart，multipart 会先被容器完整写入临时文件），
+     * 在请求线程中边接收边转码，结束后返回结果。operation 为 convert、extract-audio 或 convert-audio。
+     * 需要 seek 才能解码的输入（索引在末尾的 mp4/mov、avi 等）先写入 uploads/，再按异步任务处理并返回 202
+     */
+    @PostMapping("/stream/{operation}")
+    public ResponseEntity<Result<Map<String, String>>> streamConvert(
+            @PathVariable("operation") String operation,
+            @RequestParam(value = "format", required = false) String format,
+            @RequestParam(value = "filename", defaultValue = "upload") String rawFilename,
+            @RequestParam(value = "transcode", defaultValue = "false") boolean transcode,
+            @RequestParam(value = "loudnorm", defaultValue = "false") boolean loudnorm,
+            @RequestParam(value = "callbackUrl", required = false) String callbackUrl,
+            Authentication authentication, HttpServletRequest request) throws IOException {
+
+        String filename = sanitizeFilename(rawFilename);
+
+        Operation fileOperation;
+        StreamOperation streamOperation;
+        switch (operation) {
+            case "convert", "convert-audio" -> {
+                if (format == null || format.isBlank()) {
+                    return ResponseEntity.badRequest().body(Result.error("缺少 format 参数"));
+                }
+                String outputPath = OUTPUT_DIR + "/" + System.currentTimeMillis() + "." + format;
+                if ("convert".equals(operation)) {
+                    fileOperation = inputPath -> output(ffmpegService.convertVideo(inputPath, outputPath, format, !transcode));
+                    streamOperation = input -> output(ffmpegService.convertVideo(input, outputPath, format, !transcode));
+                } else {
+                    fileOperation = inputPath -> output(ffmpegService.convertToAudioFile(inputPath, outputPath, format, loudnorm).getAbsolutePath());
+                    streamOperation = input -> output(ffmpegService.convertToAudioFile(input, outputPath, format, loudnorm).getAbsolutePath());
+                }
+            }
+            case "extract-audio" -> {
+                String audioFormat = format == null || format.isBlank() ? "mp3" : format;
+                String outputPath = OUTPUT_DIR + "/" + System.currentTimeMillis() + "." + audioFormat;
+                fileOperation = inputPath -> output(ffmpegService.extractAudio(inputPath, outputPath, audioFormat, loudnorm));
+                streamOperation = input -> output(ffmpegService.extractAudio(input, outputPath, audioFormat, loudnorm));
+            }
+            default -> {
+                return ResponseEntity.badRequest().body(Result.error("不支持的操作: " + operation));
+            }
+        }
+
+        String owner = RequestOwner.of(authentication, request);
+        ResponseEntity<Result<Map<String, String>>> rejection = admit(owner);
+        if (rejection != null) {
+            return rejection;
+        }
+        BufferedInputStream input;
+        boolean streamable;
+        try {
+            Files.createDirectories(Paths.get(OUTPUT_DIR));
+            input = new BufferedInputStream(request.getInputStream(), STREAM_BUFFER_SIZE);
+            streamable = MediaStreams.isStreamable(input);
+        } catch (IOException | RuntimeException e) {
+            jobQueue.release(owner);
+            throw e;
+        }
+        if (!streamable) {
+            log.info("上传的格式需要 seek，先写入磁盘: filename={}, operation={}", filename, operation);
+            return enqueue(operation, filename, owner, callbackUrl, () -> saveUploadedStream(input, filename), fileOperation);
+        }
+
+        FFmpegJobService.Outcome outcome;
+        try {
+            outcome = ffmpegJobService.runInline(operation, filename, owner, callbackUrl, input, streamOperation::run);
+        } catch (IllegalArgumentException e) {
+            jobQueue.release(owner);
+            return ResponseEntity.badRequest().body(Result.error(e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            // 请求线程不等待编码名额，客户端稍后重试
+            jobQueue.release(owner);
+            return rejected(HttpStatus.SERVICE_UNAVAILABLE, "本节点编码繁忙，请稍后重试");
+        } catch (RuntimeException e) {
+            jobQueue.release(owner);
+            throw e;
+        }
         Map<String, String> response = new HashMap<>();
-        response.put("inputPath", inputPath);
-        response.put("outputPath", audioFile.getAbsolutePath());
-        response.put("format", format);
-        
-        return Result.success(response);
+        response.put("jobId", outcome.getJobId());
+        response.put("statusUrl", "/ffmpeg/jobs/" + outcome.getJobId());
+        if (TaskStatus.COMPLETED.equals(outcome.getStatus())) {
+            response.putAll(outcome.getResult());
+            return ResponseEntity.ok(Result.success(response));
+        }
+        HttpStatus status = TaskStatus.CANCELLED.equals(outcome.getStatus())
+                ? HttpStatus.CONFLICT : HttpStatus.INTERNAL_SERVER_ERROR;
+        Result<Map<String, String>> body = Result.error(status.value(), outcome.getMessage());
+        body.setData(response);
+        return ResponseEntity.status(status).body(body);
+    }
+
+    /**
+     * 查询转码任务状态，传入上次返回的 cursor 作为 since 时只返回新增日志
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<TaskStatus> getJob(@PathVariable("jobId") String jobId,
+                                             @RequestParam(value = "since", defaultValue = "0") long since) {
+        TaskStatus task = jobStore.get(jobId, since);
+        if (task == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(task);
+    }
+
+    /**
+     * 通过 SSE 推送转码任务进度
+     */
+    @GetMapping(value = "/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribeJob(@PathVariable("jobId") String jobId,
+                                                   @RequestParam(value = "since", defaultValue = "0") long since) {
+        SseEmitter emitter = jobEventBroadcaster.subscribe(jobId, since);
+        if (emitter == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * 关键帧任务的 WebVTT 预览索引，雪碧图地址为限时下载地址
+     */
+    @GetMapping("/jobs/{jobId}/thumbnails")
+    public ResponseEntity<String> getJobThumbnails(@PathVariable("jobId") String jobId) throws IOException {
+        TaskStatus task = jobStore.get(jobId);
+        if (task == null || !TaskStatus.COMPLETED.equals(task.getStatus()) || task.getResultPath() == null
+                || !task.getResultPath().endsWith("/" + VideoPreviewService.THUMBNAILS)) {
+            return ResponseEntity.notFound().build();
+        }
+        String keyPrefix = task.getResultPath().substring(0, task.getResultPath().length() - VideoPreviewService.THUMBNAILS.length());
+        try {
+            String vtt = videoPreviewService.thumbnailsVtt(keyPrefix, Duration.ofMinutes(presignExpiryMinutes));
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("text/vtt;charset=UTF-8"))
+                    .body(vtt);
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * 下载转码结果，重定向到产物存储的限时地址
+     */
+    @GetMapping("/jobs/{jobId}/download")
+    public ResponseEntity<Void> downloadJobOutput(@PathVariable("jobId") String jobId) {
+        TaskStatus task = jobStore.get(jobId);
+        if (task == null || !TaskStatus.COMPLETED.equals(task.getStatus()) || task.getResultPath() == null) {
+            return ResponseEntity.notFound().build();
+        }
+        String url = artifactStore.presign(task.getResultPath(), Duration.ofMinutes(presignExpiryMinutes), null);
+        return ResponseEntity.status(HttpStatus.FOUND)
+                .header(HttpHeaders.LOCATION, url)
+                .build();
+    }
+
+    /**
+     * 取消排队中或执行中的转码任务，执行中的任务在下一帧停止
+     */
+    @PostMapping("/jobs/{jobId}/cancel")
+    public ResponseEntity<Result<Void>> cancelJob(@PathVariable("jobId") String jobId) {
+        if (jobStore.getStatus(jobId) == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!ffmpegJobService.cancel(jobId)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Result.error("任务已结束"));
+        }
+        return ResponseEntity.accepted().body(Result.success());
+    }
+
+    /**
+     * 保存上传文件并提交转码任务，返回 202 和任务 ID。
+     * 本节点磁盘超过配额或转码队列已满返回 503，用户未结束任务数（与 PPT 任务合并计算）超限返回 429
+     */
+    private ResponseEntity<Result<Map<String, String>>> submit(String type, MultipartFile file, String callbackUrl,
+                                                               Authentication authentication, HttpServletRequest request,
+                                                               Operation operation) throws IOException {
+        String owner = RequestOwner.of(authentication, request);
+        ResponseEntity<Result<Map<String, String>>> rejection = admit(owner);
+        if (rejection != null) {
+            return rejection;
+        }
+        return enqueue(type, file.getOriginalFilename(), owner, callbackUrl, () -> saveUploadedFile(file), operation);
+    }
+
+    /**
+     * 检查存储配额并占用 owner 的任务名额，通过时返回 null
+     */
+    private ResponseEntity<Result<Map<String, String>>> admit(String owner) {
+        if (storageManager.isOverQuota()) {
+            return rejected(HttpStatus.SERVICE_UNAVAILABLE, "服务器存储空间不足，请稍后重试");
+        }
+        JobQueue.Admission admission = jobQueue.tryAcquire(owner);
+        if (admission == JobQueue.Admission.QUEUE_FULL) {
+            return rejected(HttpStatus.SERVICE_UNAVAILABLE, "服务繁忙，排队任务已满，请稍后重试");
+        }
+        if (admission == JobQueue.Admission.USER_LIMIT) {
+            return rejected(HttpStatus.TOO_MANY_REQUESTS, "您的未完成任务数已达上限，请等待已有任务完成");
+        }
+        return null;
+    }
+
+    /**
+     * 把上传内容写入 uploads/ 后提交异步任务，上传文件在任务结束后删除，转码输出写入 outputs/。调用方已占用 owner 的名额
+     */
+    private ResponseEntity<Result<Map<String, String>>> enqueue(String type, String originalFilename, String owner,
+                                                                String callbackUrl, Staging staging,
+                                                                Operation operation) throws IOException {
+        String jobId;
+        try {
+            Files.createDirectories(Paths.get(OUTPUT_DIR));
+            String inputPath = staging.save();
+            jobId = ffmpegJobService.submit(type, new File(inputPath), originalFilename, owner, callbackUrl,
+                    () -> operation.run(inputPath));
+        } catch (IllegalArgumentException e) {
+            jobQueue.release(owner);
+            return ResponseEntity.badRequest().body(Result.error(e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            // 任务已记为失败，但没有执行，名额直接归还
+            jobQueue.release(owner);
+            return rejected(HttpStatus.SERVICE_UNAVAILABLE, "转码任务排队已满，请稍后重试");
+        } catch (IOException | RuntimeException e) {
+            jobQueue.release(owner);
+            throw e;
+        }
+
+        Map<String, String> response = new HashMap<>();
+        response.put("jobId", jobId);
+        response.put("statusUrl", "/ffmpeg/jobs/" + jobId);
+        return ResponseEntity.accepted().body(Result.success(response));
+    }
+
+    private ResponseEntity<Result<Map<String, String>>> rejected(HttpStatus status, String message) {
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(Result.error(message));
+    }
+
+    /**
+     * 在任务线程中执行的转码操作，参数为上传文件路径，返回结果中的 outputPath 为产物 key
+     */
+    @FunctionalInterface
+    private interface Operation {
+        Map<String, String> run(String inputPath) throws Exception;
+    }
+
+    /**
+     * 在请求线程中读取请求体并转码，返回结果中的 outputPath 为产物 key
+     */
+    @FunctionalInterface
+    private interface StreamOperation {
+        Map<String, String> run(InputStream input) throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface Staging {
+        String save() throws IOException;
+    }
+
+    private Map<String, String> output(String localPath) throws IOException {
+        Map<String, String> result = new HashMap<>();
+        putOutput(result, localPath);
+        return result;
+    }
+
+    /**
+     * 把输出文件保存到产物存储并删除本地文件，响应中返回产物 key 和限时下载地址
+     */
+    private void putOutput(Map<String, String> response, String localPath) throws IOException {
+        Path file = Paths.get(localPath);
+        String key = "ffmpeg/" + UUID.randomUUID() + "/" + file.getFileName();
+        MediaType contentType = MediaTypeFactory.getMediaType(file.getFileName().toString())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+        artifactStore.put(key, file, contentType.toString());
+        Files.deleteIfExists(file);
+        response.put("outputPath", key);
+        response.put("outputUrl", artifactStore.presign(key, Duration.ofMinutes(presignExpiryMinutes), null));
     }
 
     private String saveUploadedFile(MultipartFile file) throws IOException {
@@ -124,4 +559,47 @@ public class FFmpegController {
         
         return filePath.toString();
     }
+
+    /**
+     * 多个上传文件按顺序写入 uploads/ 下的同一目录，文件名带序号前缀
+     */
+    private String saveUploadedFiles(List<MultipartFile> files) throws IOException {
+        Path dir = Paths.get(UPLOAD_DIR, System.currentTimeMillis() + "_" + UUID.randomUUID());
+        Files.createDirectories(dir);
+        for (int i = 0; i < files.size(); i++) {
+            MultipartFile file = files.get(i);
+            String name = file.getOriginalFilename() == null ? "segment.mp4" : Paths.get(file.getOriginalFilename()).getFileName().toString();
+            file.transferTo(dir.resolve(String.format(Locale.ROOT, "%03d_%s", i, name)).toFile());
+        }
+        return dir.toString();
+    }
+
+    /**
+     * 客户端传入的文件名只保留最后一段中的字母、数字、'.'、'-'、'_'，其余替换为 '_'
+     */
+    private static String sanitizeFilename(String filename) {
+        String name = filename.substring(Math.max(filename.lastIndexOf('/'), filename.lastIndexOf('\\')) + 1)
+                .replaceAll("[^\\w.-]", "_")
+                .replaceAll("^\\.+", "");
+        if (name.length() > MAX_FILENAME_LENGTH) {
+            name = name.substring(name.length() - MAX_FILENAME_LENGTH);
+        }
+        return name.isEmpty() ? "upload" : name;
+    }
+
+    /**
+     * 把请求体（包括判断格式时预读的部分）写入 uploads/，filename 已经过 {@link #sanitizeFilename}
+     */
+    private String saveUploadedStream(InputStream input, String filename) throws IOException {
+        Path uploadPath = Paths.get(UPLOAD_DIR);
+        if (!Files.exists(uploadPath)) {
+            Files.createDirectories(uploadPath);
+        }
+
+        Path filePath = uploadPath.resolve(System.currentTimeMillis() + "_" + filename);
+        try (InputStream in = input) {
+            Files.copy(in, filePath);
+        }
+        return filePath.toString();
+    }
 }
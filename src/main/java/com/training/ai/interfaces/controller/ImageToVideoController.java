@@ -2,13 +2,22 @@ package com.training.ai.interfaces.controller;
 
 import com.training.ai.application.service.ImageToVideoService;
 import com.training.ai.application.service.ImageToVideoService.VideoCreationResult;
+import com.training.ai.application.service.VideoPreviewService;
 import com.training.ai.common.result.Result;
+import com.training.ai.infrastructure.storage.ArtifactStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -20,6 +29,11 @@ import java.util.Map;
 public class ImageToVideoController {
 
     private final ImageToVideoService imageToVideoService;
+    private final ArtifactStore artifactStore;
+    private final VideoPreviewService videoPreviewService;
+
+    @Value("${artifact.presign-expiry-minutes:60}")
+    private long presignExpiryMinutes;
 
     @PostMapping(value = "/create", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public Result<Map<String, Object>> createVideo(
@@ -48,6 +62,8 @@ public class ImageToVideoController {
 
             Map<String, Object> response = new HashMap<>();
             response.put("videoPath", result.getVideoPath());
+            response.put("videoUrl", artifactStore.presign(result.getVideoPath(), Duration.ofMinutes(presignExpiryMinutes), null));
+            putPreview(response, result);
             response.put("totalDuration", result.getTotalDuration());
             response.put("slidesCount", result.getSlides().size());
             response.put("slides", result.getSlides());
@@ -82,6 +98,8 @@ public class ImageToVideoController {
 
             Map<String, Object> response = new HashMap<>();
             response.put("videoPath", result.getVideoPath());
+            response.put("videoUrl", artifactStore.presign(result.getVideoPath(), Duration.ofMinutes(presignExpiryMinutes), null));
+            putPreview(response, result);
             response.put("totalDuration", result.getTotalDuration());
             response.put("slidesCount", result.getSlides().size());
 
@@ -109,4 +127,36 @@ public class ImageToVideoController {
         
         return Result.success(status);
     }
+
+    /**
+     * 拖动预览的 WebVTT 索引，videoPath 为创建接口返回的视频 key
+     */
+    @GetMapping("/thumbnails")
+    public ResponseEntity<String> getThumbnails(@RequestParam("videoPath") String videoPath) throws IOException {
+        if (!videoPath.startsWith(ImageToVideoService.KEY_PREFIX) || videoPath.contains("..")) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            String vtt = videoPreviewService.thumbnailsVtt(ImageToVideoService.previewPrefixOf(videoPath),
+                    Duration.ofMinutes(presignExpiryMinutes));
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("text/vtt;charset=UTF-8"))
+                    .body(vtt);
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * 返回封面的限时地址和预览索引的接口地址，预览图生成失败时不返回
+     */
+    private void putPreview(Map<String, Object> response, VideoCreationResult result) {
+        if (result.getPosterPath() != null) {
+            response.put("posterUrl", artifactStore.presign(result.getPosterPath(), Duration.ofMinutes(presignExpiryMinutes), null));
+        }
+        if (result.getThumbnailsPath() != null) {
+            response.put("thumbnailsUrl", "/image-to-video/thumbnails?videoPath="
+                    + URLEncoder.encode(result.getVideoPath(), StandardCharsets.UTF_8));
+        }
+    }
 }
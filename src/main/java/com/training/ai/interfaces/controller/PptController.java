@@ -1,21 +1,36 @@
 package com.training.ai.interfaces.controller;
 
+import com.training.ai.application.job.BatchStatus;
+import com.training.ai.application.job.BatchStore;
+import com.training.ai.application.job.JobEventBroadcaster;
+import com.training.ai.application.job.JobPriority;
+import com.training.ai.application.job.JobQueue;
+import com.training.ai.application.job.JobStore;
+import com.training.ai.application.job.TaskStatus;
+import com.training.ai.application.service.PptBatchService;
 import com.training.ai.application.service.PptService;
 import com.training.ai.application.service.PptToVideoService;
+import com.training.ai.application.service.StorageManager;
+import com.training.ai.application.service.VideoPreviewService;
 import com.training.ai.application.util.PptUtil;
+import com.training.ai.infrastructure.storage.ArtifactStore;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
 import java.net.URLEncoder;
@@ -30,6 +45,20 @@ public class PptController {
 
     private final PptService pptService;
     private final PptToVideoService pptToVideoService;
+    private final JobQueue jobQueue;
+    private final JobStore jobStore;
+    private final JobEventBroadcaster jobEventBroadcaster;
+    private final BatchStore batchStore;
+    private final PptBatchService pptBatchService;
+    private final StorageManager storageManager;
+    private final ArtifactStore artifactStore;
+    private final VideoPreviewService videoPreviewService;
+
+    @Value("${artifact.presign-expiry-minutes:60}")
+    private long presignExpiryMinutes;
+
+    @Value("${job.queue.retry-after-seconds:30}")
+    private int retryAfterSeconds;
 
     @PostMapping("/upload")
     public ResponseEntity<List<String>> uploadPpt(@RequestParam("file") MultipartFile file) {
@@ -49,14 +78,8 @@ public class PptController {
     public ResponseEntity<org.springframework.core.io.Resource> pptToVideo(@RequestParam("file") MultipartFile file) {
         log.info("收到PPT转视频请求: {}", file.getOriginalFilename());
         try {
-            String videoPath = pptToVideoService.generateVideoFromPpt(file);
-            java.io.File videoFile = new java.io.File(videoPath);
-            
-            if (!videoFile.exists()) {
-                return ResponseEntity.internalServerError().body(new ByteArrayResource(("视频生成失败: 文件不存在 " + videoPath).getBytes()));
-            }
-
-            org.springframework.core.io.Resource resource = new org.springframework.core.io.FileSystemResource(videoFile);
+            String videoKey = pptToVideoService.generateVideoFromPpt(file);
+            org.springframework.core.io.Resource resource = new org.springframework.core.io.InputStreamResource(artifactStore.open(videoKey));
             
             String originalFilename = file.getOriginalFilename();
             String videoFilename = (originalFilename != null ? originalFilename.substring(0, originalFilename.lastIndexOf(".")) : "video") + ".mp4";
@@ -65,7 +88,6 @@ public class PptController {
             return ResponseEntity.ok()
                     .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + encodedFilename + "\"")
                     .contentType(MediaType.parseMediaType("video/mp4"))
-                    .contentLength(videoFile.length())
                     .body(resource);
                     
         } catch (IOException e) {
@@ -79,12 +101,15 @@ public class PptController {
         }
     }
 
+    /**
+     * 返回 PDF 的限时下载地址
+     */
     @PostMapping("/to-pdf")
     public ResponseEntity<String> pptToPdf(@RequestParam("file") MultipartFile file) {
         log.info("收到PPT转PDF请求: {}", file.getOriginalFilename());
         try {
-            String pdfPath = pptService.convertToPdf(file);
-            return ResponseEntity.ok(pdfPath);
+            String pdfKey = pptService.convertToPdf(file);
+            return ResponseEntity.ok(artifactStore.presign(pdfKey, java.time.Duration.ofMinutes(presignExpiryMinutes), null));
         } catch (IOException e) {
             log.error("PPT转PDF失败", e);
             return ResponseEntity.internalServerError().body("PDF生成失败: " + e.getMessage());
@@ -146,62 +171,38 @@ public class PptController {
 
     // --- 异步处理相关 ---
 
-    private final java.util.Map<String, TaskStatus> tasks = new java.util.concurrent.ConcurrentHashMap<>();
-
-    @lombok.Data
-    public static class TaskStatus {
-        private String taskId;
-        private volatile String status; // PROCESSING, COMPLETED, FAILED
-        private volatile int percent;
-        // Use CopyOnWriteArrayList to avoid ConcurrentModificationException during iteration (e.g. JSON serialization)
-        private final List<String> logs = new java.util.concurrent.CopyOnWriteArrayList<>();
-        private volatile String resultPath;
-        private volatile String error;
-
-        public TaskStatus(String taskId) {
-            this.taskId = taskId;
-            this.status = "PROCESSING";
-            this.percent = 0;
+    /**
+     * 异步转换，priority 为 interactive（讲师等待预览）或 normal，批量导入请使用 /async/batch
+     */
+    @PostMapping("/async/to-video")
+    public ResponseEntity<java.util.Map<String, String>> uploadAsync(@RequestParam("file") MultipartFile file,
+                                                                    @RequestParam(value = "priority", defaultValue = "normal") String priority,
+                                                                    Authentication authentication,
+                                                                    HttpServletRequest request) {
+        JobPriority jobPriority;
+        try {
+            jobPriority = JobPriority.from(priority);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (jobPriority == JobPriority.BULK) {
+            return ResponseEntity.badRequest().build();
         }
 
-        public void addLog(String log) {
-            this.logs.add(log);
+        String owner = RequestOwner.of(authentication, request);
+        ResponseEntity<java.util.Map<String, String>> rejected = admit(owner);
+        if (rejected != null) {
+            return rejected;
         }
-    }
 
-    @PostMapping("/async/to-video")
-    public ResponseEntity<java.util.Map<String, String>> uploadAsync(@RequestParam("file") MultipartFile file) {
         String taskId = java.util.UUID.randomUUID().toString();
-        TaskStatus task = new TaskStatus(taskId);
-        tasks.put(taskId, task);
-
+        boolean created = false;
         try {
-            // 保存临时文件供异步线程使用
-            String originalFilename = file.getOriginalFilename();
-            String extension = originalFilename != null && originalFilename.contains(".") ? originalFilename.substring(originalFilename.lastIndexOf(".")) : ".pptx";
-            java.io.File tempFile = java.io.File.createTempFile("upload_", extension);
-            file.transferTo(tempFile);
-
-            java.util.concurrent.CompletableFuture.runAsync(() -> {
-                try {
-                    String videoPath = pptToVideoService.generateVideoFromPptFile(tempFile, originalFilename, (percent, msg) -> {
-                        task.setPercent(percent);
-                        task.addLog(msg);
-                    });
-                    task.setResultPath(videoPath);
-                    task.setStatus("COMPLETED");
-                } catch (Exception e) {
-                    log.error("异步任务失败", e);
-                    task.setStatus("FAILED");
-                    task.setError(e.getMessage());
-                    task.addLog("错误: " + e.getMessage());
-                } finally {
-                    // 清理上传的临时文件
-                    if (tempFile.exists()) {
-                        tempFile.delete();
-                    }
-                }
-            });
+            // 上传文件直接保存到任务目录，由任意节点的 worker 从队列领取执行
+            pptToVideoService.stageTask(file, taskId);
+            jobStore.create(taskId, file.getOriginalFilename(), owner, jobPriority, null);
+            created = true;
+            jobQueue.submit(taskId, jobPriority);
 
             java.util.Map<String, String> response = new java.util.HashMap<>();
             response.put("taskId", taskId);
@@ -209,28 +210,182 @@ public class PptController {
 
         } catch (IOException e) {
             log.error("文件上传失败", e);
+            abandon(taskId, owner, created);
+            return ResponseEntity.internalServerError().build();
+        } catch (IllegalArgumentException e) {
+            abandon(taskId, owner, created);
+            return ResponseEntity.badRequest().build();
+        } catch (RuntimeException e) {
+            // Redis 不可用等，任务没有进入队列
+            abandon(taskId, owner, created);
+            throw e;
+        }
+    }
+
+    /**
+     * 提交失败时删除已保存的任务目录并归还名额；任务记录已创建时标记为失败，避免一直停在排队中
+     */
+    private void abandon(String taskId, String owner, boolean created) {
+        pptToVideoService.discardTask(taskId);
+        try {
+            if (created) {
+                jobStore.markFailed(taskId, "提交任务失败");
+            }
+        } catch (RuntimeException e) {
+            log.warn("标记任务 {} 失败状态时出错: {}", taskId, e.getMessage());
+        } finally {
+            jobQueue.release(owner);
+        }
+    }
+
+    /**
+     * 批量提交：多个 files 或一个 zip 包（archive），整个批次占用提交者的一个并发名额
+     */
+    @PostMapping("/async/batch")
+    public ResponseEntity<java.util.Map<String, String>> uploadBatch(@RequestParam(value = "files", required = false) List<MultipartFile> files,
+                                                                    @RequestParam(value = "archive", required = false) MultipartFile archive,
+                                                                    Authentication authentication,
+                                                                    HttpServletRequest request) {
+        String owner = RequestOwner.of(authentication, request);
+        ResponseEntity<java.util.Map<String, String>> rejected = admit(owner);
+        if (rejected != null) {
+            return rejected;
+        }
+
+        try {
+            String batchId = pptBatchService.submit(files, archive, owner);
+            java.util.Map<String, String> response = new java.util.HashMap<>();
+            response.put("batchId", batchId);
+            return ResponseEntity.ok(response);
+        } catch (IOException e) {
+            log.error("批量上传失败", e);
+            jobQueue.release(owner);
             return ResponseEntity.internalServerError().build();
+        } catch (IllegalArgumentException e) {
+            jobQueue.release(owner);
+            java.util.Map<String, String> response = new java.util.HashMap<>();
+            response.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (RuntimeException e) {
+            // Redis 不可用等，批次已撤销
+            jobQueue.release(owner);
+            throw e;
+        }
+    }
+
+    /**
+     * 查询批次汇总进度
+     */
+    @org.springframework.web.bind.annotation.GetMapping("/async/batch/{batchId}")
+    public ResponseEntity<BatchStatus> getBatchStatus(@org.springframework.web.bind.annotation.PathVariable("batchId") String batchId) {
+        BatchStatus batch = batchStore.get(batchId);
+        if (batch == null) {
+            return ResponseEntity.notFound().build();
         }
+        return ResponseEntity.ok(batch);
     }
 
+    /**
+     * 从检查点重试失败或中断的任务，已完成的阶段不会重复执行
+     */
+    @PostMapping("/async/retry/{taskId}")
+    public ResponseEntity<java.util.Map<String, String>> retryAsync(@org.springframework.web.bind.annotation.PathVariable("taskId") String taskId,
+                                                                   Authentication authentication,
+                                                                   HttpServletRequest request) {
+        TaskStatus existing = jobStore.get(taskId);
+        if (existing != null && !existing.isFinished()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        if (!pptToVideoService.isResumable(taskId)) {
+            return ResponseEntity.notFound().build();
+        }
+
+        String owner = RequestOwner.of(authentication, request);
+        ResponseEntity<java.util.Map<String, String>> rejected = admit(owner);
+        if (rejected != null) {
+            return rejected;
+        }
+
+        // 手动重试的任务不再属于原批次，批量任务以普通优先级重新执行
+        JobPriority priority = existing != null && existing.priorityOrDefault() == JobPriority.INTERACTIVE
+                ? JobPriority.INTERACTIVE : JobPriority.NORMAL;
+        jobStore.requeue(taskId, existing != null ? existing.getOriginalFilename() : null, owner, priority);
+        jobQueue.submit(taskId, priority);
+
+        java.util.Map<String, String> response = new java.util.HashMap<>();
+        response.put("taskId", taskId);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 队列已满或本节点磁盘超过配额返回 503，用户并发任务数超限返回 429，均带 Retry-After；准入通过时返回 null
+     */
+    private ResponseEntity<java.util.Map<String, String>> admit(String owner) {
+        if (storageManager.isOverQuota()) {
+            java.util.Map<String, String> response = new java.util.HashMap<>();
+            response.put("error", "服务器存储空间不足，请稍后重试");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                    .body(response);
+        }
+        JobQueue.Admission admission = jobQueue.tryAcquire(owner);
+        if (admission == JobQueue.Admission.ACCEPTED) {
+            return null;
+        }
+        java.util.Map<String, String> response = new java.util.HashMap<>();
+        HttpStatus status;
+        if (admission == JobQueue.Admission.QUEUE_FULL) {
+            status = HttpStatus.SERVICE_UNAVAILABLE;
+            response.put("error", "服务繁忙，排队任务已满，请稍后重试");
+        } else {
+            status = HttpStatus.TOO_MANY_REQUESTS;
+            response.put("error", "您的未完成任务数已达上限，请等待已有任务完成");
+        }
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(response);
+    }
+
+    /**
+     * 查询任务状态，传入上次返回的 cursor 作为 since 时只返回新增日志
+     */
     @org.springframework.web.bind.annotation.GetMapping("/async/status/{taskId}")
-    public ResponseEntity<TaskStatus> getTaskStatus(@org.springframework.web.bind.annotation.PathVariable("taskId") String taskId) {
-        TaskStatus task = tasks.get(taskId);
+    public ResponseEntity<TaskStatus> getTaskStatus(@org.springframework.web.bind.annotation.PathVariable("taskId") String taskId,
+                                                    @RequestParam(value = "since", defaultValue = "0") long since) {
+        TaskStatus task = jobStore.get(taskId, since);
         if (task == null) {
             return ResponseEntity.notFound().build();
         }
         return ResponseEntity.ok(task);
     }
 
+    /**
+     * 通过 SSE 推送任务进度，每个事件只包含新增日志，事件 ID 为游标，断线重连时浏览器会通过 Last-Event-ID 续传
+     */
+    @org.springframework.web.bind.annotation.GetMapping(value = "/async/events/{taskId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribeTask(@org.springframework.web.bind.annotation.PathVariable("taskId") String taskId,
+                                                    @RequestParam(value = "since", defaultValue = "0") long since,
+                                                    @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        long cursor = since;
+        if (lastEventId != null && lastEventId.matches("\\d+")) {
+            cursor = Long.parseLong(lastEventId);
+        }
+        SseEmitter emitter = jobEventBroadcaster.subscribe(taskId, cursor);
+        if (emitter == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
     @org.springframework.web.bind.annotation.GetMapping("/async/download/{taskId}")
     public ResponseEntity<org.springframework.core.io.Resource> downloadVideo(@org.springframework.web.bind.annotation.PathVariable("taskId") String taskId) {
         log.info("收到视频下载请求: taskId={}", taskId);
-        TaskStatus task = tasks.get(taskId);
+        TaskStatus task = jobStore.get(taskId);
         if (task == null) {
             log.error("下载失败: 任务不存在 taskId={}", taskId);
             return ResponseEntity.notFound().build();
         }
-        if (!"COMPLETED".equals(task.getStatus())) {
+        if (!TaskStatus.COMPLETED.equals(task.getStatus())) {
             log.error("下载失败: 任务未完成 status={}", task.getStatus());
             return ResponseEntity.notFound().build();
         }
@@ -239,21 +394,55 @@ public class PptController {
             return ResponseEntity.notFound().build();
         }
 
-        java.io.File videoFile = new java.io.File(task.getResultPath());
-        if (!videoFile.exists()) {
-            log.error("下载失败: 文件不存在 path={}", task.getResultPath());
-            return ResponseEntity.internalServerError().body(new ByteArrayResource(("视频生成失败: 文件不存在 " + task.getResultPath()).getBytes()));
+        String videoFilename = "video_" + taskId + ".mp4";
+        java.io.File legacyFile = new java.io.File(task.getResultPath());
+        if (legacyFile.isAbsolute()) {
+            // 升级前完成的任务记录的是本地路径
+            if (!legacyFile.exists()) {
+                return ResponseEntity.status(HttpStatus.GONE).build();
+            }
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + videoFilename + "\"")
+                    .contentType(MediaType.parseMediaType("video/mp4"))
+                    .contentLength(legacyFile.length())
+                    .body(new org.springframework.core.io.FileSystemResource(legacyFile));
         }
 
-        org.springframework.core.io.Resource resource = new org.springframework.core.io.FileSystemResource(videoFile);
-        
-        String videoFilename = "video_" + taskId + ".mp4";
-        
-        log.info("开始下载视频: {}", videoFile.getAbsolutePath());
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + videoFilename + "\"")
-                .contentType(MediaType.parseMediaType("video/mp4"))
-                .contentLength(videoFile.length())
-                .body(resource);
+        // 重定向到产物存储的限时地址，视频内容不经过应用节点
+        String url = artifactStore.presign(task.getResultPath(), java.time.Duration.ofMinutes(presignExpiryMinutes), videoFilename);
+        log.info("重定向到视频下载地址: taskId={}", taskId);
+        return ResponseEntity.status(HttpStatus.FOUND)
+                .header(HttpHeaders.LOCATION, url)
+                .build();
+    }
+
+    /**
+     * 拖动预览的 WebVTT 索引（雪碧图），任务完成后可用
+     */
+    @org.springframework.web.bind.annotation.GetMapping("/async/thumbnails/{taskId}")
+    public ResponseEntity<String> getThumbnails(@org.springframework.web.bind.annotation.PathVariable("taskId") String taskId) throws IOException {
+        try {
+            String vtt = videoPreviewService.thumbnailsVtt(PptToVideoService.previewPrefix(taskId),
+                    java.time.Duration.ofMinutes(presignExpiryMinutes));
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("text/vtt;charset=UTF-8"))
+                    .body(vtt);
+        } catch (java.io.FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * 视频封面，重定向到产物存储的限时地址
+     */
+    @org.springframework.web.bind.annotation.GetMapping("/async/poster/{taskId}")
+    public ResponseEntity<Void> getPoster(@org.springframework.web.bind.annotation.PathVariable("taskId") String taskId) {
+        String key = PptToVideoService.previewPrefix(taskId) + VideoPreviewService.POSTER;
+        if (!artifactStore.exists(key)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.status(HttpStatus.FOUND)
+                .header(HttpHeaders.LOCATION, artifactStore.presign(key, java.time.Duration.ofMinutes(presignExpiryMinutes), null))
+                .build();
     }
 }
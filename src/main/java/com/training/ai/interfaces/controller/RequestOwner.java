@@ -0,0 +1,23 @@
+package com.training.ai.interfaces.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.security.core.Authentication;
+
+/**
+ * 任务名额的归属：登录用户按用户 ID，匿名请求按客户端 IP。
+ * 客户端 IP 取 {@link HttpServletRequest#getRemoteAddr()}，不直接读取 X-Forwarded-For：
+ * 经过反向代理时由容器（server.forward-headers-strategy=native）在直连地址属于
+ * server.tomcat.remoteip.internal-proxies 时才采用转发头，客户端无法伪造 IP 绕过名额限制
+ */
+final class RequestOwner {
+
+    private RequestOwner() {
+    }
+
+    static String of(Authentication authentication, HttpServletRequest request) {
+        if (authentication != null && authentication.getPrincipal() instanceof Long userId) {
+            return "user:" + userId;
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+}
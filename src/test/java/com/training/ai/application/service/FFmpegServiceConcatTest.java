@@ -0,0 +1,168 @@
+package com.training.ai.application.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.nio.ShortBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用生成的短片段验证拼接：音频参数不同的片段先按正片转码，没有音轨的片段音频留空，
+ * 输出中每条流的 dts 严格递增
+ */
+class FFmpegServiceConcatTest {
+
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+    private static final int FRAME_RATE = 25;
+
+    @TempDir
+    Path tempDir;
+
+    private FFmpegService ffmpegService;
+
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        NativeResources nativeResources = new NativeResources(registry);
+        MediaProbe mediaProbe = new MediaProbe(10, registry);
+        ffmpegService = new FFmpegService(new TranscodeEngine(nativeResources), mediaProbe, nativeResources);
+        ReflectionTestUtils.setField(ffmpegService, "defaultCrf", 26);
+        ReflectionTestUtils.setField(ffmpegService, "concatPreset", "ultrafast");
+    }
+
+    @Test
+    void concatsSegmentsWithMismatchedAndMissingAudio() throws Exception {
+        String main = clip("main.mp4", 2.0, 44100, 2);
+        String intro = clip("intro.mp4", 1.0, 22050, 1);
+        String outro = clip("outro.mp4", 1.0, 0, 0);
+        String output = tempDir.resolve("out.mp4").toString();
+
+        ffmpegService.concatVideos(List.of(intro, main, outro), output);
+
+        Streams streams = readPackets(output);
+        assertTrue(streams.hasAudio);
+        assertEquals(4 * FRAME_RATE, streams.videoPackets);
+        assertEquals(4.0, streams.duration, 0.2);
+        assertTrue(streams.audioPackets > 0);
+    }
+
+    @Test
+    void dropsAudioWhenMainSegmentHasNone() throws Exception {
+        String main = clip("main.mp4", 2.0, 0, 0);
+        String intro = clip("intro.mp4", 1.0, 44100, 2);
+        String output = tempDir.resolve("out.mp4").toString();
+
+        ffmpegService.concatVideos(List.of(intro, main), output);
+
+        Streams streams = readPackets(output);
+        assertFalse(streams.hasAudio);
+        assertEquals(3 * FRAME_RATE, streams.videoPackets);
+        assertEquals(3.0, streams.duration, 0.2);
+    }
+
+    @Test
+    void copiesMatchingSegmentsWithIncreasingTimestamps() throws Exception {
+        String first = clip("a.mp4", 1.0, 44100, 2);
+        String second = clip("b.mp4", 1.6, 44100, 2);
+        String output = tempDir.resolve("out.mp4").toString();
+
+        ffmpegService.concatVideos(List.of(first, second, first), output);
+
+        Streams streams = readPackets(output);
+        assertTrue(streams.hasAudio);
+        assertEquals(90, streams.videoPackets);
+        assertEquals(3.6, streams.duration, 0.2);
+    }
+
+    /**
+     * 生成 H.264 + AAC 的 mp4 片段，sampleRate 为 0 时没有音轨
+     */
+    private String clip(String name, double seconds, int sampleRate, int channels) throws Exception {
+        String path = tempDir.resolve(name).toString();
+        int frames = (int) Math.round(seconds * FRAME_RATE);
+        try (FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(path, WIDTH, HEIGHT, channels);
+             Java2DFrameConverter converter = new Java2DFrameConverter()) {
+            recorder.setFormat("mp4");
+            recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
+            recorder.setFrameRate(FRAME_RATE);
+            if (sampleRate > 0) {
+                recorder.setAudioCodec(avcodec.AV_CODEC_ID_AAC);
+                recorder.setSampleRate(sampleRate);
+            }
+            recorder.start();
+            int samplesPerFrame = sampleRate / FRAME_RATE;
+            for (int i = 0; i < frames; i++) {
+                BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+                Graphics2D graphics = image.createGraphics();
+                graphics.setColor(Color.ORANGE);
+                graphics.fillRect(i * 4 % WIDTH, 40, 30, 30);
+                graphics.dispose();
+                recorder.record(converter.convert(image));
+                if (sampleRate > 0) {
+                    ShortBuffer samples = ShortBuffer.allocate(samplesPerFrame * channels);
+                    for (int s = 0; s < samplesPerFrame * channels; s++) {
+                        samples.put((short) (Math.sin((i * samplesPerFrame + s / channels) * 0.05) * 8000));
+                    }
+                    samples.flip();
+                    recorder.recordSamples(sampleRate, channels, samples);
+                }
+            }
+        }
+        return path;
+    }
+
+    /**
+     * 读取所有数据包，检查每条流的 dts 严格递增（mp4 的要求），统计包数和时长
+     */
+    private static Streams readPackets(String path) throws Exception {
+        Streams streams = new Streams();
+        try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(path)) {
+            grabber.start();
+            streams.hasAudio = grabber.hasAudio();
+            streams.duration = grabber.getLengthInTime() / 1_000_000.0;
+            long lastVideoDts = Long.MIN_VALUE;
+            long lastAudioDts = Long.MIN_VALUE;
+            AVPacket packet;
+            while ((packet = grabber.grabPacket()) != null) {
+                try {
+                    if (packet.stream_index() == grabber.getVideoStream()) {
+                        assertTrue(packet.dts() > lastVideoDts, "视频 dts 未递增: " + packet.dts());
+                        lastVideoDts = packet.dts();
+                        streams.videoPackets++;
+                    } else if (streams.hasAudio && packet.stream_index() == grabber.getAudioStream()) {
+                        assertTrue(packet.dts() > lastAudioDts, "音频 dts 未递增: " + packet.dts());
+                        lastAudioDts = packet.dts();
+                        streams.audioPackets++;
+                    }
+                } finally {
+                    avcodec.av_packet_unref(packet);
+                }
+            }
+        }
+        return streams;
+    }
+
+    private static class Streams {
+        private boolean hasAudio;
+        private double duration;
+        private int videoPackets;
+        private int audioPackets;
+    }
+}
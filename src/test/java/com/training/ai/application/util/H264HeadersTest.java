@@ -0,0 +1,228 @@
+package com.training.ai.application.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class H264HeadersTest {
+
+    /**
+     * libopenh264 编码 64x48 视频时写入 mp4 的 avcC：Constrained Baseline，level 1.2，1 个参考帧，CAVLC
+     */
+    private static final String OPENH264_AVCC = "0142c00cffe1000d6742c00c8c8d423900f08846a001000468ce3c80";
+
+    @Test
+    void parsesAvcCFromEncoder() {
+        H264Headers.Info info = H264Headers.parse(HexFormat.of().parseHex(OPENH264_AVCC));
+
+        assertNotNull(info);
+        assertEquals(66, info.getProfileIdc());
+        assertEquals(12, info.getLevelIdc());
+        assertEquals(1, info.getMaxRefFrames());
+        assertFalse(info.isCabac());
+    }
+
+    @Test
+    void parsesHighProfileWithScalingLists() {
+        byte[] sps = highProfileSps(true);
+        byte[] pps = pps(true);
+
+        assertHighProfile(H264Headers.parse(avcC(sps, pps)));
+        assertHighProfile(H264Headers.parse(annexB(sps, pps)));
+    }
+
+    @Test
+    void parsesAnnexBWithOtherNalUnitsAndThreeByteStartCodes() {
+        byte[] aud = {0x09, (byte) 0xf0};
+        byte[] data = concat(new byte[]{0, 0, 1}, aud, new byte[]{0, 0, 0, 1}, highProfileSps(false),
+                new byte[]{0, 0, 1}, pps(false), new byte[]{0, 0, 1}, pps(true));
+
+        H264Headers.Info info = H264Headers.parse(data);
+
+        assertNotNull(info);
+        assertEquals(100, info.getProfileIdc());
+        assertEquals(3, info.getMaxRefFrames());
+        // 只取第一个 PPS
+        assertFalse(info.isCabac());
+    }
+
+    @Test
+    void removesEmulationPreventionBytes() {
+        // poc_type 1 时 offset_for_non_ref_pic = -2^24 编码为 25 个连续 0 比特，转义后会插入 00 00 03
+        byte[] sps = escape(new BitWriter()
+                .bits(0x67, 8).bits(77, 8).bits(0, 8).bits(31, 8)
+                .ue(0)
+                .ue(0)
+                .ue(1).bits(0, 1).se(-(1 << 24)).se(2).ue(1).se(-1)
+                .ue(4)
+                .bits(0, 1).ue(79).ue(44).bits(1, 1).bits(1, 1).bits(0, 1).bits(0, 1)
+                .trailing());
+        assertTrue(containsEscape(sps));
+
+        H264Headers.Info info = H264Headers.parse(avcC(sps, pps(true)));
+
+        assertNotNull(info);
+        assertEquals(77, info.getProfileIdc());
+        assertEquals(31, info.getLevelIdc());
+        assertEquals(4, info.getMaxRefFrames());
+        assertTrue(info.isCabac());
+    }
+
+    @Test
+    void returnsNullForMissingOrTruncatedParameterSets() {
+        byte[] avcC = avcC(highProfileSps(true), pps(true));
+
+        assertNull(H264Headers.parse(null));
+        assertNull(H264Headers.parse(new byte[4]));
+        // avcC 在 SPS 中间截断
+        assertNull(H264Headers.parse(Arrays.copyOf(avcC, 14)));
+        // avcC 没有 PPS
+        assertNull(H264Headers.parse(Arrays.copyOf(HexFormat.of().parseHex(OPENH264_AVCC), 21)));
+        // Annex B 只有 SPS
+        assertNull(H264Headers.parse(concat(new byte[]{0, 0, 0, 1}, highProfileSps(true))));
+        // SPS 在缩放矩阵中间截断
+        byte[] sps = highProfileSps(true);
+        assertNull(H264Headers.parse(annexB(Arrays.copyOf(sps, 8), pps(true))));
+    }
+
+    private static void assertHighProfile(H264Headers.Info info) {
+        assertNotNull(info);
+        assertEquals(100, info.getProfileIdc());
+        assertEquals(40, info.getLevelIdc());
+        assertEquals(3, info.getMaxRefFrames());
+        assertTrue(info.isCabac());
+    }
+
+    /**
+     * High profile 1920x1088 的 SPS，可带 seq_scaling_matrix：4x4 列表中一个提前结束（delta 使 next 为 0），
+     * 8x8 列表带完整的 64 个 delta
+     */
+    private static byte[] highProfileSps(boolean scalingLists) {
+        BitWriter sps = new BitWriter()
+                .bits(0x67, 8).bits(100, 8).bits(0, 8).bits(40, 8)
+                .ue(0)
+                // chroma_format_idc, bit_depth_luma_minus8, bit_depth_chroma_minus8, qpprime_y_zero_transform_bypass
+                .ue(1).ue(0).ue(0).bits(0, 1)
+                .bits(scalingLists ? 1 : 0, 1);
+        if (scalingLists) {
+            for (int i = 0; i < 8; i++) {
+                boolean present = i == 0 || i == 3 || i == 6;
+                sps.bits(present ? 1 : 0, 1);
+                if (!present) {
+                    continue;
+                }
+                if (i == 3) {
+                    // next = (8 + 4) % 256 = 12，然后 next = (12 - 12) = 0，列表结束
+                    sps.se(4).se(-12);
+                } else {
+                    for (int j = 0; j < (i < 6 ? 16 : 64); j++) {
+                        sps.se(j % 2 == 0 ? 3 : -2);
+                    }
+                }
+            }
+        }
+        // log2_max_frame_num_minus4, pic_order_cnt_type, log2_max_pic_order_cnt_lsb_minus4, max_num_ref_frames
+        return escape(sps.ue(0).ue(0).ue(2).ue(3)
+                .bits(0, 1).ue(119).ue(67).bits(1, 1).bits(1, 1).bits(0, 1).bits(0, 1)
+                .trailing());
+    }
+
+    private static byte[] pps(boolean cabac) {
+        return escape(new BitWriter().bits(0x68, 8).ue(0).ue(0).bits(cabac ? 1 : 0, 1).bits(0, 1).ue(0)
+                .trailing());
+    }
+
+    private static byte[] avcC(byte[] sps, byte[] pps) {
+        return concat(new byte[]{1, sps[1], sps[2], sps[3], (byte) 0xff, (byte) 0xe1},
+                length(sps), sps, new byte[]{1}, length(pps), pps);
+    }
+
+    private static byte[] annexB(byte[] sps, byte[] pps) {
+        return concat(new byte[]{0, 0, 0, 1}, sps, new byte[]{0, 0, 0, 1}, pps);
+    }
+
+    private static byte[] length(byte[] nal) {
+        return new byte[]{(byte) (nal.length >> 8), (byte) nal.length};
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 插入防竞争字节：00 00 后面是 00~03 时先写 03
+     */
+    private static byte[] escape(byte[] rbsp) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int zeros = 0;
+        for (byte b : rbsp) {
+            if (zeros >= 2 && (b & 0xff) <= 3) {
+                out.write(3);
+                zeros = 0;
+            }
+            out.write(b);
+            zeros = b == 0 ? zeros + 1 : 0;
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean containsEscape(byte[] nal) {
+        for (int i = 0; i + 2 < nal.length; i++) {
+            if (nal[i] == 0 && nal[i + 1] == 0 && nal[i + 2] == 3) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class BitWriter {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int current;
+        private int count;
+
+        private BitWriter bits(long value, int length) {
+            for (int i = length - 1; i >= 0; i--) {
+                current = (current << 1) | (int) ((value >> i) & 1);
+                if (++count == 8) {
+                    out.write(current);
+                    current = 0;
+                    count = 0;
+                }
+            }
+            return this;
+        }
+
+        private BitWriter ue(long value) {
+            long code = value + 1;
+            int length = 64 - Long.numberOfLeadingZeros(code);
+            return bits(0, length - 1).bits(code, length);
+        }
+
+        private BitWriter se(long value) {
+            return ue(value > 0 ? 2 * value - 1 : -2 * value);
+        }
+
+        /**
+         * rbsp_stop_one_bit 加补齐
+         */
+        private byte[] trailing() {
+            bits(1, 1);
+            while (count != 0) {
+                bits(0, 1);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.training.ai.application.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextSegmenterTest {
+
+    @Test
+    void splitsOnChinesePunctuationAndKeepsTrailingMarks() {
+        List<String> sentences = TextSegmenter.splitSentences("第一句。第二句！！第三句？“引用。”最后没有标点");
+
+        assertEquals(List.of("第一句。", "第二句！！", "第三句？", "“引用。”", "最后没有标点"), sentences);
+    }
+
+    @Test
+    void splitsOnAsciiPunctuationWithoutBreakingDecimalsOrUrls() {
+        List<String> sentences = TextSegmenter.splitSentences("Version 3.14 is out. See example.com now! Really?");
+
+        assertEquals(List.of("Version 3.14 is out.", "See example.com now!", "Really?"), sentences);
+    }
+
+    @Test
+    void splitsOnNewlinesAndDropsBlankSentences() {
+        List<String> sentences = TextSegmenter.splitSentences("标题\n\n  正文内容。  \n");
+
+        assertEquals(List.of("标题", "正文内容。"), sentences);
+        assertTrue(TextSegmenter.splitSentences(null).isEmpty());
+        assertTrue(TextSegmenter.splitSentences("").isEmpty());
+    }
+
+    @Test
+    void packsShortSentencesUpToLimit() {
+        List<String> segments = TextSegmenter.pack(List.of("One.", "Two.", "Three.", "四。", "五。"), 12);
+
+        assertEquals(List.of("One. Two.", "Three.四。五。"), segments);
+        segments.forEach(segment -> assertTrue(segment.length() <= 12, segment));
+    }
+
+    @Test
+    void splitsOverLongSentenceAtClauseBoundary() {
+        String sentence = "这是一个非常长的句子，后面还有很多内容需要朗读，最后才结束。";
+
+        List<String> segments = TextSegmenter.split(sentence, 16);
+
+        assertEquals(List.of("这是一个非常长的句子，", "后面还有很多内容需要朗读，", "最后才结束。"), segments);
+    }
+
+    @Test
+    void splitsOverLongSentenceAtWhitespaceThenHardCut() {
+        List<String> byWord = TextSegmenter.split("alpha beta gamma delta epsilon", 12);
+        List<String> hardCut = TextSegmenter.split("abcdefghijklmnopqrstuvwxyz", 10);
+
+        assertEquals(List.of("alpha beta", "gamma delta", "epsilon"), byWord);
+        assertEquals(List.of("abcdefghij", "klmnopqrst", "uvwxyz"), hardCut);
+    }
+
+    @Test
+    void mergesShortPagesIntoOneBatchWithTerminators() {
+        List<TextSegmenter.TtsBatch> batches = TextSegmenter.planBatches(List.of("第一页", "第二页。", "", "第四页"), 100, true);
+
+        assertEquals(1, batches.size());
+        TextSegmenter.TtsBatch batch = batches.get(0);
+        assertTrue(batch.isMerged());
+        assertEquals(List.of(0, 1, 3), batch.getParts().stream().map(TextSegmenter.TtsPart::getPageIndex).toList());
+        assertEquals("第一页。第二页。第四页。", batch.getText());
+    }
+
+    @Test
+    void longPagesGetTheirOwnBatchesAndFlushPendingMerge() {
+        String longPage = "第一部分内容。第二部分内容。";
+        List<TextSegmenter.TtsBatch> batches = TextSegmenter.planBatches(List.of("短页", longPage, "结尾"), 8, true);
+
+        assertEquals(4, batches.size());
+        assertEquals("短页。", batches.get(0).getText());
+        assertEquals(new TextSegmenter.TtsPart(1, 0, "第一部分内容。"), batches.get(1).getParts().get(0));
+        assertEquals(new TextSegmenter.TtsPart(1, 1, "第二部分内容。"), batches.get(2).getParts().get(0));
+        assertEquals(new TextSegmenter.TtsPart(2, 0, "结尾。"), batches.get(3).getParts().get(0));
+        batches.forEach(batch -> assertFalse(batch.isMerged()));
+    }
+
+    @Test
+    void mergedBatchStaysWithinLimit() {
+        List<TextSegmenter.TtsBatch> batches = TextSegmenter.planBatches(List.of("一二三四", "五六七八", "九十"), 12, true);
+
+        assertEquals(2, batches.size());
+        assertEquals(2, batches.get(0).getParts().size());
+        batches.forEach(batch -> assertTrue(batch.getText().length() <= 12, batch.getText()));
+    }
+
+    @Test
+    void doesNotMergeWhenBatchingDisabled() {
+        List<TextSegmenter.TtsBatch> batches = TextSegmenter.planBatches(List.of("第一页", "第二页"), 100, false);
+
+        assertEquals(2, batches.size());
+        assertEquals("第一页", batches.get(0).getText());
+        assertEquals("第二页", batches.get(1).getText());
+    }
+}
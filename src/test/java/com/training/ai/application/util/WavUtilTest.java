@@ -0,0 +1,141 @@
+package com.training.ai.application.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WavUtilTest {
+
+    private static final int RATE = 16000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void cutsInsideTheSilenceNearEstimate() throws Exception {
+        // 1.0s 声音 + 0.4s 静音 + 1.4s 声音：按权重 1:1 预估的切分点落在第二段声音里，实际应移到静音中
+        File source = wav("source.wav", tone(1.0), silence(0.4), tone(1.4));
+        List<File> outputs = List.of(tempDir.resolve("a.wav").toFile(), tempDir.resolve("b.wav").toFile());
+
+        List<Double> durations = WavUtil.splitAtSilence(source, List.of(1, 1), outputs);
+
+        assertEquals(2, durations.size());
+        assertTrue(durations.get(0) > 1.0 && durations.get(0) < 1.4, "切分点应在静音区间内: " + durations);
+        assertEquals(2.8, durations.get(0) + durations.get(1), 1e-9);
+        assertEquals(durations.get(0), WavUtil.getDuration(outputs.get(0)), 1e-6);
+        assertEquals(durations.get(1), WavUtil.getDuration(outputs.get(1)), 1e-6);
+    }
+
+    @Test
+    void splitsAudioWithoutSilenceNearEstimatedPoints() throws Exception {
+        File source = wav("tone.wav", tone(3.0));
+        List<File> outputs = outputs(3);
+
+        List<Double> durations = WavUtil.splitAtSilence(source, List.of(1, 1, 1), outputs);
+
+        assertEquals(3, durations.size());
+        assertEquals(3.0, durations.stream().mapToDouble(Double::doubleValue).sum(), 1e-9);
+        // 没有静音时切分点仍在预估点的搜索范围内
+        durations.forEach(duration -> assertTrue(duration > 0 && duration <= 2.5, "时长异常: " + durations));
+    }
+
+    @Test
+    void weightsThatDoNotDivideEvenlyCoverEveryFrame() throws Exception {
+        // 总帧数 16001 不能被权重和 7 整除，0 权重按 1 计
+        byte[] data = tone(1.0 + 1.0 / RATE);
+        File source = wav("odd.wav", data);
+        List<File> outputs = outputs(4);
+
+        List<Double> durations = WavUtil.splitAtSilence(source, List.of(3, 0, 2, 1), outputs);
+
+        long frames = 0;
+        for (File output : outputs) {
+            try (AudioInputStream in = AudioSystem.getAudioInputStream(output)) {
+                frames += in.getFrameLength();
+            }
+        }
+        assertEquals(data.length / 2, frames);
+        assertEquals(4, durations.size());
+        durations.forEach(duration -> assertTrue(duration >= 0, "时长异常: " + durations));
+    }
+
+    @Test
+    void tooShortAudioFallsBackToEstimatedCuts() throws Exception {
+        // 10ms 的音频比静音检测窗口还短，无法搜索，直接按预估点切分
+        File source = wav("short.wav", tone(0.01));
+
+        List<Double> durations = WavUtil.splitAtSilence(source, List.of(1, 1), outputs(2));
+
+        assertEquals(0.01, durations.get(0) + durations.get(1), 1e-9);
+        assertEquals(0.005, durations.get(0), 1e-9);
+    }
+
+    @Test
+    void rejectsMismatchedOutputsAndNonPcmSource() throws Exception {
+        File source = wav("tone.wav", tone(0.5));
+        assertThrows(IllegalArgumentException.class,
+                () -> WavUtil.splitAtSilence(source, List.of(1, 1), outputs(1)));
+
+        AudioFormat eightBit = new AudioFormat(RATE, 8, 1, true, false);
+        File unsupported = tempDir.resolve("8bit.wav").toFile();
+        byte[] samples = new byte[RATE / 10];
+        try (AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(samples), eightBit, samples.length)) {
+            AudioSystem.write(in, AudioFileFormat.Type.WAVE, unsupported);
+        }
+        assertThrows(UnsupportedAudioFileException.class,
+                () -> WavUtil.splitAtSilence(unsupported, List.of(1, 1), outputs(2)));
+    }
+
+    private List<File> outputs(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> tempDir.resolve("out/" + i + ".wav").toFile())
+                .toList();
+    }
+
+    private File wav(String name, byte[]... parts) throws IOException {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (byte[] part : parts) {
+            buffer.put(part);
+        }
+        AudioFormat format = new AudioFormat(RATE, 16, 1, true, false);
+        File file = tempDir.resolve(name).toFile();
+        try (AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(buffer.array()), format, length / 2)) {
+            AudioSystem.write(in, AudioFileFormat.Type.WAVE, file);
+        }
+        return file;
+    }
+
+    private static byte[] tone(double seconds) {
+        int frames = (int) Math.round(seconds * RATE);
+        ByteBuffer buffer = ByteBuffer.allocate(frames * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames; i++) {
+            buffer.putShort((short) (Math.sin(2 * Math.PI * 440 * i / RATE) * 12000));
+        }
+        return buffer.array();
+    }
+
+    private static byte[] silence(double seconds) {
+        return new byte[(int) Math.round(seconds * RATE) * 2];
+    }
+}
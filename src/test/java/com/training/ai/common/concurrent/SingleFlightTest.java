@@ -0,0 +1,182 @@
+package com.training.ai.common.concurrent;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    private final SingleFlight<String, String> flight = new SingleFlight<>();
+    private final ExecutorService pool = Executors.newFixedThreadPool(CALLERS);
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void concurrentCallersShareOneExecution() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<SingleFlight.Result<String>>> futures = submitAll("key", () -> {
+            executions.incrementAndGet();
+            await(release);
+            return "value";
+        });
+        awaitWaiters();
+        release.countDown();
+
+        int shared = 0;
+        for (Future<SingleFlight.Result<String>> future : futures) {
+            SingleFlight.Result<String> result = future.get(5, TimeUnit.SECONDS);
+            assertEquals("value", result.getValue());
+            if (result.isShared()) {
+                shared++;
+            }
+        }
+        assertEquals(1, executions.get());
+        assertEquals(CALLERS - 1, shared);
+        assertEquals(0, flight.size());
+    }
+
+    @Test
+    void differentKeysDoNotWaitForEachOther() {
+        CountDownLatch release = new CountDownLatch(1);
+        pool.submit(() -> flight.execute("slow", () -> {
+            await(release);
+            return "slow";
+        }));
+        try {
+            SingleFlight.Result<String> result = flight.execute("fast", () -> "fast");
+
+            assertEquals("fast", result.getValue());
+            assertFalse(result.isShared());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void failureReachesEveryWaiterAndKeyIsRemoved() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("boom");
+
+        List<Future<SingleFlight.Result<String>>> futures = submitAll("key", () -> {
+            executions.incrementAndGet();
+            await(release);
+            throw failure;
+        });
+        awaitWaiters();
+        release.countDown();
+
+        for (Future<SingleFlight.Result<String>> future : futures) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertSame(failure, e.getCause());
+        }
+        assertEquals(1, executions.get());
+        assertEquals(0, flight.size());
+
+        // 失败后不缓存，下一次调用重新执行
+        SingleFlight.Result<String> retry = flight.execute("key", () -> "recovered");
+        assertEquals("recovered", retry.getValue());
+        assertFalse(retry.isShared());
+    }
+
+    @Test
+    void errorReachesWaiters() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AssertionError error = new AssertionError("fatal");
+
+        List<Future<SingleFlight.Result<String>>> futures = submitAll("key", () -> {
+            await(release);
+            throw error;
+        });
+        awaitWaiters();
+        release.countDown();
+
+        for (Future<SingleFlight.Result<String>> future : futures) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertSame(error, e.getCause());
+        }
+        assertEquals(0, flight.size());
+    }
+
+    /**
+     * 所有调用方在同一时刻进入 execute，第一个进入的执行 loader
+     */
+    private List<Future<SingleFlight.Result<String>>> submitAll(String key, Supplier<String> loader)
+            throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(CALLERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<SingleFlight.Result<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            futures.add(pool.submit(() -> {
+                ready.countDown();
+                await(start);
+                return flight.execute(key, loader);
+            }));
+        }
+        assertTrue(ready.await(5, TimeUnit.SECONDS));
+        start.countDown();
+        return futures;
+    }
+
+    /**
+     * 等待其余调用方都挂到进行中的请求上（线程阻塞在 join 中）
+     */
+    private void awaitWaiters() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (waitingThreads() < CALLERS - 1) {
+            if (System.nanoTime() > deadline) {
+                fail("调用方未全部进入等待");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static long waitingThreads() {
+        return Thread.getAllStackTraces().entrySet().stream()
+                .filter(entry -> entry.getKey().getState() == Thread.State.WAITING)
+                .filter(entry -> {
+                    for (StackTraceElement frame : entry.getValue()) {
+                        if (frame.getClassName().equals(SingleFlight.class.getName()) && frame.getMethodName().equals("await")) {
+                            return true;
+                        }
+                    }
+                    return false;
+                })
+                .count();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("等待超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}